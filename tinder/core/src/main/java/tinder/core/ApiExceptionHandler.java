@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.ExceptionHandler;
+
+/**
+ * Maps ApiException to its ApiMessage, as json.
+ * The http status is the code of the message when that is an http error code (4xx or 5xx), otherwise it's a 500.
+ * Installed by the TinderModule, and used also for the failures of the async resources.
+ *
+ * @author Raffaele Ragni
+ */
+public class ApiExceptionHandler implements ExceptionHandler<ApiException> {
+
+  public static final int DEFAULT_STATUS = 500;
+
+  @Override
+  public void handle(ApiException exception, Context ctx) {
+    ApiMessage message = exception.getApiMessage();
+    ctx.status(statusOf(message));
+    ctx.json(message);
+  }
+
+  /**
+   * @param message the api message
+   * @return the http status to use for the message
+   */
+  public static int statusOf(ApiMessage message) {
+    Integer code = message.code();
+    if (code != null && code >= 400 && code < 600) {
+      return code;
+    }
+    return DEFAULT_STATUS;
+  }
+
+}
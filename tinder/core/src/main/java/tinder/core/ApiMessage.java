@@ -15,6 +15,8 @@
  */
 package tinder.core;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import javax.annotation.Nullable;
 import org.immutables.value.Value.Immutable;
 
@@ -23,6 +25,8 @@ import org.immutables.value.Value.Immutable;
  * @author Raffaele Ragni
  */
 @Immutable
+@JsonSerialize(as = ImmutableApiMessage.class)
+@JsonDeserialize(as = ImmutableApiMessage.class)
 public interface ApiMessage {
   @Nullable Long id();
   @Nullable Integer code();
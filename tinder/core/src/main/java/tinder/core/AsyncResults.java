@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.json.JavalinJson;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Async responses for the resources returning a CompletionStage.
+ * The request thread is released right away, and the response is written when the stage completes.
+ * Results are written as json, or in the format negotiated for the resources declaring @Produces, and a null
+ * result as the json null. Failures are written as the ApiMessage json, the same way the ApiExceptionHandler does:
+ * ApiException with its message, javalin http exceptions with their status, a 503 on timeout and a 500 for
+ * anything else.
+ *
+ * @author Raffaele Ragni
+ */
+public final class AsyncResults {
+
+  public static final int TIMEOUT_STATUS = 503;
+
+  private static final String ASYNC_PREFIX = "Async :: ";
+  private static final String CONTENT_TYPE_JSON = "application/json";
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncResults.class);
+
+  private AsyncResults() {
+  }
+
+  /**
+   * Responds with the result of the stage, without a timeout.
+   * @param ctx the request context
+   * @param stage the result
+   */
+  public static void respond(Context ctx, CompletionStage<?> stage) {
+    respond(ctx, stage, 0);
+  }
+
+  /**
+   * Responds with the result of the stage.
+   * @param ctx the request context
+   * @param stage the result
+   * @param timeoutMillis the timeout in milliseconds, 0 for none
+   */
+  public static void respond(Context ctx, CompletionStage<?> stage, long timeoutMillis) {
+    respond(ctx, stage, timeoutMillis, null);
+  }
+
+  /**
+   * Responds with the result of the stage, in the format negotiated with the Accept header.
+   * @param ctx the request context
+   * @param stage the result
+   * @param timeoutMillis the timeout in milliseconds, 0 for none
+   * @param produces the negotiation of the response format, null for json
+   */
+  public static void respond(Context ctx, CompletionStage<?> stage, long timeoutMillis, ContentNegotiation produces) {
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    if (stage == null) {
+      result.complete(null);
+    } else {
+      stage.whenComplete((value, ex) -> {
+        if (ex == null) {
+          result.complete(value);
+        } else {
+          result.completeExceptionally(ex);
+        }
+      });
+    }
+
+    if (timeoutMillis > 0 && !result.isDone()) {
+      ScheduledFuture<?> timeout = Timer.INSTANCE.schedule(
+          () -> result.completeExceptionally(new TimeoutException("Timed out after " + timeoutMillis + "ms")),
+          timeoutMillis, TimeUnit.MILLISECONDS);
+      result.whenComplete((v, ex) -> timeout.cancel(false));
+    }
+
+    // The future given to javalin never fails, failures are turned into responses here.
+    // Javalin would pass them to its exception mappers still wrapped in a CompletionException.
+    ctx.result(result.handle((value, ex) -> {
+      if (ex == null) {
+        try {
+          return body(ctx, value, produces);
+        } catch (RuntimeException bodyEx) {
+          return failure(ctx, bodyEx);
+        }
+      }
+      Throwable cause = unwrap(ex);
+      if (cause instanceof TimeoutException) {
+        // Nobody is waiting for the result anymore
+        cancel(stage);
+      }
+      return failure(ctx, cause);
+    }));
+  }
+
+  private static Object body(Context ctx, Object value, ContentNegotiation produces) {
+    if (produces != null) {
+      return produces.render(ctx, value);
+    }
+    ctx.contentType(CONTENT_TYPE_JSON);
+    // JavalinJson does not take nulls
+    return value == null ? "null" : JavalinJson.toJson(value);
+  }
+
+  private static String failure(Context ctx, Throwable cause) {
+    ApiMessage message = toApiMessage(cause);
+    ctx.contentType(CONTENT_TYPE_JSON);
+    ctx.status(ApiExceptionHandler.statusOf(message));
+    return JavalinJson.toJson(message);
+  }
+
+  private static void cancel(CompletionStage<?> stage) {
+    if (stage == null) {
+      return;
+    }
+    try {
+      stage.toCompletableFuture().cancel(true);
+    } catch (UnsupportedOperationException ex) {
+      // Not all the stages can be cancelled, the result will be ignored anyway
+    }
+  }
+
+  static ApiMessage toApiMessage(Throwable ex) {
+    if (ex instanceof ApiException) {
+      return ((ApiException) ex).getApiMessage();
+    }
+    if (ex instanceof HttpResponseException) {
+      HttpResponseException httpException = (HttpResponseException) ex;
+      return ImmutableApiMessage.builder()
+          .code(httpException.getStatus())
+          .message(httpException.getMessage())
+          .build();
+    }
+    if (ex instanceof TimeoutException) {
+      return ImmutableApiMessage.builder()
+          .code(TIMEOUT_STATUS)
+          .message(ex.getMessage())
+          .build();
+    }
+    LOG.error(ASYNC_PREFIX+"Async resource failed", ex);
+    return ImmutableApiMessage.builder()
+        .code(ApiExceptionHandler.DEFAULT_STATUS)
+        .message("Internal server error")
+        .build();
+  }
+
+  static Throwable unwrap(Throwable ex) {
+    Throwable result = ex;
+    while ((result instanceof CompletionException || result instanceof ExecutionException) && result.getCause() != null) {
+      result = result.getCause();
+    }
+    // A stage cancelled by someone else is reported as a timeout too, the result is not coming anyway.
+    if (result instanceof CancellationException) {
+      return new TimeoutException("Cancelled");
+    }
+    return result;
+  }
+
+  /**
+   * Single daemon thread for all the timeouts, it only completes futures.
+   */
+  private static final class Timer {
+    static final ScheduledExecutorService INSTANCE;
+    static {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "tinder-async-timeouts");
+        thread.setDaemon(true);
+        return thread;
+      });
+      // Most timeouts never fire, don't keep them around until their time.
+      executor.setRemoveOnCancelPolicy(true);
+      INSTANCE = executor;
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import java.lang.annotation.Documented;
+import static java.lang.annotation.ElementType.METHOD;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the responses of a GET resource method in memory, see ResponseCache.
+ * Responses are keyed by path, query string and the listed headers: anything else the method reads from the
+ * request (such as the user of the session) is not part of the key.
+ * The Accept header is added to the key by itself when the method produces more than one media type.
+ * @author Raffaele Ragni
+ */
+@Target({METHOD})
+@Retention(RUNTIME)
+@Documented
+public @interface Cached {
+
+  /**
+   * @return how long a response stays cached, in the given unit
+   */
+  long ttl();
+
+  /**
+   * @return the unit of the ttl, default is seconds
+   */
+  TimeUnit unit() default TimeUnit.SECONDS;
+
+  /**
+   * @return the maximum number of responses kept for the route
+   */
+  int maxEntries() default 1000;
+
+  /**
+   * @return the request headers that are part of the cache key
+   */
+  String[] headers() default {};
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.Javalin;
+import static java.util.Collections.emptyMap;
+import tinder.patterns.limits.AdaptiveLimit;
+
+/**
+ * Limits the requests served at the same time, adapting the limit to the latency of the responses.
+ *
+ * Requests over the limit get a 503 right away, and do not reach the handler. The latency is taken from the before
+ * filters to the after filters, so async responses count until they complete. Responses with a 5xx status count as
+ * dropped, and cut the limit.
+ *
+ * TinderModule installs it when the configuration has an httpConcurrencyLimit.
+ *
+ * @author Raffaele Ragni
+ */
+public final class ConcurrencyLimit {
+
+  public static final int SERVICE_UNAVAILABLE = 503;
+
+  static final String ATTRIBUTE_START = "tinder.concurrency.start";
+
+  private ConcurrencyLimit() {
+  }
+
+  /**
+   * Sets up the limit for all the routes of the javalin instance.
+   * Install it before the other filters, so that the refused requests do not go through them.
+   * @param javalin the javalin instance
+   * @param limit the limit
+   */
+  public static void install(Javalin javalin, AdaptiveLimit limit) {
+    javalin.before(ctx -> before(limit, ctx));
+    javalin.after(ctx -> after(limit, ctx));
+  }
+
+  static void before(AdaptiveLimit limit, Context ctx) {
+    if (!limit.tryAcquire()) {
+      throw new HttpResponseException(SERVICE_UNAVAILABLE, "Service unavailable", emptyMap());
+    }
+    ctx.attribute(ATTRIBUTE_START, System.nanoTime());
+  }
+
+  static void after(AdaptiveLimit limit, Context ctx) {
+    Long start = ctx.attribute(ATTRIBUTE_START);
+    if (start == null) {
+      // Refused in the before filter
+      return;
+    }
+    ctx.attribute(ATTRIBUTE_START, null);
+    if (ctx.status() >= 500) {
+      limit.drop();
+    } else {
+      limit.release(System.nanoTime() - start);
+    }
+  }
+
+}
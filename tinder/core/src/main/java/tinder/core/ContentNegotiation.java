@@ -0,0 +1,345 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.json.JavalinJackson;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import static java.util.Collections.emptyMap;
+
+/**
+ * Content negotiation for the resources declaring @Produces or @Consumes.
+ * The response format is picked from the Accept header among the produced ones, and the request body is read in
+ * the format of its Content-Type among the consumed ones.
+ *
+ * Supported are json, the binary formats smile, cbor and messagepack, all through jackson, and text types, which
+ * are written with toString() and read only into strings.
+ * The binary mappers take the configuration, modules included, of the javalin json mapper as set up by the
+ * TinderModule. They are made at first use, and made again when javalin is given another json mapper.
+ *
+ * Instances are immutable, and the generated resources keep one per set of media types.
+ *
+ * @author Raffaele Ragni
+ */
+public final class ContentNegotiation {
+
+  public static final String JSON = "application/json";
+  public static final String SMILE = "application/x-jackson-smile";
+  public static final String CBOR = "application/cbor";
+  public static final String MSGPACK = "application/x-msgpack";
+  public static final String TEXT = "text/plain";
+
+  public static final int NOT_ACCEPTABLE = 406;
+  public static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+  private static final List<String> JACKSON_TYPES = Collections.unmodifiableList(Arrays.asList(JSON, SMILE, CBOR, MSGPACK));
+  // The mappers and writers derived from the current javalin json mapper
+  private static volatile Formats formats;
+
+  private final List<String> mediaTypes;
+
+  private ContentNegotiation(List<String> mediaTypes) {
+    this.mediaTypes = mediaTypes;
+  }
+
+  /**
+   * @param mediaTypes the media types as in @Produces/@Consumes, in order of preference. None for all the jackson
+   *    formats, json first
+   * @return the negotiation among those types
+   * @throws IllegalArgumentException for types not supported
+   */
+  public static ContentNegotiation of(String... mediaTypes) {
+    Set<String> result = new LinkedHashSet<>();
+    for (String value: mediaTypes) {
+      // A single value can also be a list, as in the jax-rs annotations
+      for (String type: value.split(",")) {
+        String mediaType = mediaType(type);
+        if (mediaType == null) {
+          continue;
+        }
+        if (!isSupported(mediaType)) {
+          throw new IllegalArgumentException("Media type not supported: " + mediaType);
+        }
+        result.add(mediaType);
+      }
+    }
+    if (result.isEmpty()) {
+      result.addAll(JACKSON_TYPES);
+    }
+    return new ContentNegotiation(Collections.unmodifiableList(new ArrayList<>(result)));
+  }
+
+  /**
+   * @param mediaType the media type, without parameters
+   * @return true if it can be read or written
+   */
+  public static boolean isSupported(String mediaType) {
+    return JACKSON_TYPES.contains(mediaType) || isText(mediaType);
+  }
+
+  /**
+   * @return the media types, in order of preference
+   */
+  public List<String> mediaTypes() {
+    return mediaTypes;
+  }
+
+  /**
+   * Picks the response type, by the quality values of the accept header and then by the order of the types.
+   * @param accept the Accept header, a missing header accepts anything
+   * @return the media type, or null if none is acceptable
+   */
+  public String negotiate(String accept) {
+    if (accept == null || accept.trim().isEmpty()) {
+      return mediaTypes.get(0);
+    }
+    String result = null;
+    double resultQuality = 0;
+    for (String range: accept.split(",")) {
+      double quality = quality(range);
+      if (quality <= resultQuality) {
+        continue;
+      }
+      String match = match(mediaType(range));
+      if (match != null) {
+        result = match;
+        resultQuality = quality;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes the value in the format negotiated with the Accept header.
+   * @param ctx the request context
+   * @param value the value to write
+   */
+  public void write(Context ctx, Object value) {
+    ctx.result(render(ctx, value));
+  }
+
+  /**
+   * Sets the content type negotiated with the Accept header and serializes the value in it.
+   * @param ctx the request context
+   * @param value the value to write
+   * @return the body
+   */
+  InputStream render(Context ctx, Object value) {
+    String type = negotiate(ctx.header("Accept"));
+    if (type == null) {
+      throw new HttpResponseException(NOT_ACCEPTABLE, "Not acceptable, available are: " + String.join(", ", mediaTypes), emptyMap());
+    }
+    ctx.contentType(type);
+    if (isText(type)) {
+      return new ByteArrayInputStream((value == null ? "" : value.toString()).getBytes(charset(ctx)));
+    }
+    try {
+      return new ByteArrayInputStream(writer(type, value).writeValueAsBytes(value));
+    } catch (JsonProcessingException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Reads the body in the format of its Content-Type, the first of the types when not specified.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param type the class of the body
+   * @return the body, null if the request has no body
+   */
+  public <T> T read(Context ctx, Class<T> type) {
+    return read(ctx, JavalinJackson.getObjectMapper().constructType(type));
+  }
+
+  /**
+   * Reads the body in the format of its Content-Type, for generic types.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param type the type of the body
+   * @return the body, null if the request has no body
+   */
+  public <T> T read(Context ctx, TypeReference<T> type) {
+    return read(ctx, JavalinJackson.getObjectMapper().getTypeFactory().constructType(type));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T read(Context ctx, JavaType type) {
+    String contentType = mediaType(ctx.req.getContentType());
+    if (contentType == null) {
+      contentType = mediaTypes.get(0);
+    }
+    if (!mediaTypes.contains(contentType)) {
+      throw unsupported(contentType);
+    }
+    RequestBody body = RequestBody.of(ctx);
+    if (isText(contentType)) {
+      if (!type.hasRawClass(String.class)) {
+        throw unsupported(contentType);
+      }
+      return (T) body.string(ctx);
+    }
+    return body.read(ctx, mapper(contentType), type);
+  }
+
+  private HttpResponseException unsupported(String contentType) {
+    return new HttpResponseException(UNSUPPORTED_MEDIA_TYPE,
+        "Unsupported media type " + contentType + ", accepted are: " + String.join(", ", mediaTypes), emptyMap());
+  }
+
+  private String match(String range) {
+    if (range == null) {
+      return null;
+    }
+    if (range.equals("*/*")) {
+      return mediaTypes.get(0);
+    }
+    if (range.endsWith("/*")) {
+      String prefix = range.substring(0, range.length() - 1);
+      return mediaTypes.stream().filter(t -> t.startsWith(prefix)).findFirst().orElse(null);
+    }
+    return mediaTypes.contains(range) ? range : null;
+  }
+
+  private static ObjectWriter writer(String mediaType, Object value) {
+    Formats current = formats();
+    ObjectMapper mapper = current.mapper(mediaType);
+    if (value == null) {
+      return mapper.writer();
+    }
+    return current.writers.computeIfAbsent(mediaType, t -> new ClassValue<ObjectWriter>() {
+      @Override
+      protected ObjectWriter computeValue(Class<?> c) {
+        return mapper.writerFor(c);
+      }
+    }).get(value.getClass());
+  }
+
+  /**
+   * @param mediaType the media type
+   * @return the mapper for one of the jackson formats
+   */
+  static ObjectMapper mapper(String mediaType) {
+    return formats().mapper(mediaType);
+  }
+
+  private static Formats formats() {
+    ObjectMapper json = JavalinJackson.getObjectMapper();
+    Formats result = formats;
+    if (result == null || result.json != json) {
+      result = new Formats(json);
+      formats = result;
+    }
+    return result;
+  }
+
+  /**
+   * The modules are not listed by the mapper, what they registered is taken from its factories and configuration.
+   */
+  private static ObjectMapper binaryMapper(String mediaType, ObjectMapper json) {
+    JsonFactory factory;
+    switch (mediaType) {
+      case SMILE: factory = new SmileFactory(); break;
+      case CBOR: factory = new CBORFactory(); break;
+      case MSGPACK: factory = new MessagePackFactory(); break;
+      default: throw new IllegalArgumentException("Not a jackson format: " + mediaType);
+    }
+    ObjectMapper mapper = new ObjectMapper(factory, null,
+        new DefaultDeserializationContext.Impl(json.getDeserializationContext().getFactory()));
+    mapper.setSerializerFactory(json.getSerializerFactory());
+    mapper.setTypeFactory(json.getTypeFactory());
+    mapper.setSubtypeResolver(json.getSubtypeResolver());
+    mapper.setConfig(json.getSerializationConfig());
+    mapper.setConfig(json.getDeserializationConfig());
+    return mapper;
+  }
+
+  private static final class Formats {
+    final ObjectMapper json;
+    final Map<String, ObjectMapper> binaryMappers = new ConcurrentHashMap<>();
+    // Writers of each format for each class of value, resolved once as JsonBinding does
+    final Map<String, ClassValue<ObjectWriter>> writers = new ConcurrentHashMap<>();
+
+    Formats(ObjectMapper json) {
+      this.json = json;
+    }
+
+    ObjectMapper mapper(String mediaType) {
+      if (JSON.equals(mediaType)) {
+        return json;
+      }
+      return binaryMappers.computeIfAbsent(mediaType, t -> binaryMapper(t, json));
+    }
+  }
+
+  // The charset of the response, as ctx.result(String) takes it
+  private static Charset charset(Context ctx) {
+    try {
+      return Charset.forName(ctx.res.getCharacterEncoding());
+    } catch (IllegalArgumentException ex) {
+      return Charset.defaultCharset();
+    }
+  }
+
+  private static boolean isText(String mediaType) {
+    return mediaType.startsWith("text/");
+  }
+
+  private static String mediaType(String value) {
+    if (value == null) {
+      return null;
+    }
+    int semicolon = value.indexOf(';');
+    String result = (semicolon < 0 ? value : value.substring(0, semicolon)).trim().toLowerCase();
+    return result.isEmpty() ? null : result;
+  }
+
+  private static double quality(String range) {
+    for (String param: range.split(";")) {
+      String p = param.trim();
+      if (p.startsWith("q=")) {
+        try {
+          return Double.parseDouble(p.substring(2).trim());
+        } catch (NumberFormatException ex) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+}
@@ -109,8 +109,47 @@ public final class JDBILoader {
    * @param metricRegistry metric registry for the connection pool
    * @return Jdbi instance
    */
-  @SuppressWarnings("unchecked")
   public static Jdbi load(String name, Optional<String> username, Optional<String> password, Optional<MetricRegistry> metricRegistry) {
+    HikariDataSource ds = new HikariDataSource(loadConfig(name, username, password));
+    metricRegistry.ifPresent(m -> ds.setMetricRegistry(m));
+    return Jdbi.create(ds);
+  }
+
+  /**
+   * Creates a new Jdbi instance, without starting the connection pool.
+   * The configuration is read and validated right away, but the pool and its first connections will only be opened
+   * at the first use of the instance. Useful for keeping the database out of the startup time.
+   *
+   * @param name config name. This will lookup for name.y[a]ml in all known paths including the current folder
+   * @param metricRegistry metric registry for the connection pool
+   * @return Jdbi instance
+   */
+  public static Jdbi loadLazy(String name, Optional<MetricRegistry> metricRegistry) {
+    return loadLazy(name, empty(), empty(), metricRegistry);
+  }
+
+  /**
+   * Same as the load() with dynamic user and password, but the connection pool is only started at first use.
+   *
+   * @param name config name. This will lookup for name.y[a]ml in all known paths including the current folder
+   * @param username dynamic username, if empty then the config file will be read for the username
+   * @param password dynamic password, if empty then the config file will be read for the password
+   * @param metricRegistry metric registry for the connection pool
+   * @return Jdbi instance
+   */
+  public static Jdbi loadLazy(String name, Optional<String> username, Optional<String> password, Optional<MetricRegistry> metricRegistry) {
+    HikariConfig config = loadConfig(name, username, password);
+    // Fail early on a bad configuration, even if the pool is not started yet.
+    config.validate();
+    // The no-args data source only starts the pool at the first getConnection()
+    HikariDataSource ds = new HikariDataSource();
+    config.copyStateTo(ds);
+    metricRegistry.ifPresent(m -> ds.setMetricRegistry(m));
+    return Jdbi.create(ds);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HikariConfig loadConfig(String name, Optional<String> username, Optional<String> password) {
 
     HikariConfig config = new HikariConfig();
 
@@ -172,9 +211,7 @@ public final class JDBILoader {
       }
     }
 
-    HikariDataSource ds = new HikariDataSource(config);
-    metricRegistry.ifPresent(m -> ds.setMetricRegistry(m));
-    return Jdbi.create(ds);
+    return config;
   }
 
   private static String getJarPath() {
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.javalin.Context;
+import io.javalin.json.JavalinJackson;
+import java.io.ByteArrayInputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+import tinder.core.helpers.Lazy;
+
+/**
+ * Json reader and writer of a declared type, resolved once instead of at every request.
+ * The generated resources keep one per parameter and return type, in place of ctx.json() and the body binding,
+ * which look up the serializers of the value at each call.
+ *
+ * The writer is built for the declared type when that fully describes the values: final classes and containers.
+ * For the other types the values can be of any subclass, so a writer is built for each class of value met.
+ * Both are created at first use, from the javalin jackson mapper as configured at that point.
+ *
+ * @param <T> the type bound
+ * @author Raffaele Ragni
+ */
+public final class JsonBinding<T> {
+
+  private static final String CONTENT_TYPE_JSON = "application/json";
+
+  private final Function<ObjectMapper, JavaType> type;
+  private final Lazy<ObjectReader> reader;
+  private final Lazy<Function<Object, ObjectWriter>> writer;
+
+  private JsonBinding(Function<ObjectMapper, JavaType> type) {
+    this.type = type;
+    this.reader = Lazy.of(() -> mapper().readerFor(type.apply(mapper())));
+    this.writer = Lazy.of(this::writerFunction);
+  }
+
+  /**
+   * @param <T> the type bound
+   * @param type the class bound
+   * @return the binding for the class
+   */
+  public static <T> JsonBinding<T> of(Class<T> type) {
+    return new JsonBinding<>(mapper -> mapper.constructType(type));
+  }
+
+  /**
+   * @param <T> the type bound
+   * @param type the generic type bound
+   * @return the binding for the type
+   */
+  public static <T> JsonBinding<T> of(TypeReference<T> type) {
+    return new JsonBinding<>(mapper -> mapper.getTypeFactory().constructType(type));
+  }
+
+  /**
+   * Writes the value as the json response.
+   * @param ctx the request context
+   * @param value the value
+   */
+  public void write(Context ctx, T value) {
+    ctx.contentType(CONTENT_TYPE_JSON);
+    try {
+      ctx.result(new ByteArrayInputStream(writer(value).writeValueAsBytes(value)));
+    } catch (JsonProcessingException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Reads the json body, with the limits of the RequestBody.
+   * @param ctx the request context
+   * @return the body, null if the request has no body
+   */
+  public T read(Context ctx) {
+    return RequestBody.of(ctx).read(ctx, reader.get());
+  }
+
+  /**
+   * @param value the value to write
+   * @return the writer for the value
+   */
+  ObjectWriter writer(Object value) {
+    return writer.get().apply(value);
+  }
+
+  private Function<Object, ObjectWriter> writerFunction() {
+    ObjectMapper mapper = mapper();
+    JavaType javaType = type.apply(mapper);
+    if (Modifier.isFinal(javaType.getRawClass().getModifiers()) || javaType.isContainerType()) {
+      ObjectWriter result = mapper.writerFor(javaType);
+      return value -> result;
+    }
+    ClassValue<ObjectWriter> writers = new ClassValue<ObjectWriter>() {
+      @Override
+      protected ObjectWriter computeValue(Class<?> c) {
+        return mapper.writerFor(c);
+      }
+    };
+    ObjectWriter nulls = mapper.writer();
+    return value -> value == null ? nulls : writers.get(value.getClass());
+  }
+
+  private static ObjectMapper mapper() {
+    return JavalinJackson.getObjectMapper();
+  }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.javalin.Context;
+import io.javalin.InternalServerErrorResponse;
+import io.javalin.json.JavalinJackson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.eclipse.jetty.server.Request;
+import org.jdbi.v3.core.result.ResultIterable;
+import org.jdbi.v3.core.result.ResultIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes sequences of items as json, one item at a time, straight into the response output stream.
+ * Nothing is collected in memory, so big results don't need to fit in the heap and the first bytes go out
+ * before the last item is produced. A slow client slows down the reading, as the writes block on the socket.
+ *
+ * The output is either a json array or newline delimited json (one item per line, "application/x-ndjson").
+ * The source is always closed at the end, also when the client goes away in the middle of it,
+ * so that database cursors are released.
+ *
+ * When an item fails to serialize, or the source fails, the error is answered as any other if nothing went out yet.
+ * Otherwise the 200 and part of the body are already sent: the connection is cut, so that the client sees the
+ * response as broken and not as a shorter one.
+ *
+ * @author Raffaele Ragni
+ */
+public final class JsonStreaming {
+
+  public static final String CONTENT_TYPE_JSON = "application/json";
+  public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+
+  private static final String JSON_PREFIX = "Json :: ";
+
+  private static final Logger LOG = LoggerFactory.getLogger(JsonStreaming.class);
+
+  private JsonStreaming() {
+  }
+
+  /**
+   * Writes the stream as a json array.
+   * @param ctx the request context
+   * @param stream the items, closed at the end
+   */
+  public static void write(Context ctx, Stream<?> stream) {
+    write(ctx, stream, false);
+  }
+
+  /**
+   * Writes the stream.
+   * @param ctx the request context
+   * @param stream the items, closed at the end
+   * @param newlineDelimited true for ndjson, false for a json array
+   */
+  public static void write(Context ctx, Stream<?> stream, boolean newlineDelimited) {
+    if (stream == null) {
+      writeNull(ctx);
+      return;
+    }
+    try (Stream<?> s = stream) {
+      writeItems(ctx, s.iterator(), newlineDelimited);
+    }
+  }
+
+  /**
+   * Writes the iterator as a json array.
+   * @param ctx the request context
+   * @param iterator the items, closed at the end if it is closeable
+   */
+  public static void write(Context ctx, Iterator<?> iterator) {
+    write(ctx, iterator, false);
+  }
+
+  /**
+   * Writes the iterator.
+   * @param ctx the request context
+   * @param iterator the items, closed at the end if it is closeable
+   * @param newlineDelimited true for ndjson, false for a json array
+   */
+  public static void write(Context ctx, Iterator<?> iterator, boolean newlineDelimited) {
+    if (iterator == null) {
+      writeNull(ctx);
+      return;
+    }
+    try {
+      writeItems(ctx, iterator, newlineDelimited);
+    } finally {
+      closeIfPossible(iterator);
+    }
+  }
+
+  /**
+   * Writes the jdbi results as a json array.
+   * @param ctx the request context
+   * @param results the results, their cursor is closed at the end
+   */
+  public static void write(Context ctx, ResultIterable<?> results) {
+    write(ctx, results, false);
+  }
+
+  /**
+   * Writes the jdbi results.
+   * @param ctx the request context
+   * @param results the results, their cursor is closed at the end
+   * @param newlineDelimited true for ndjson, false for a json array
+   */
+  public static void write(Context ctx, ResultIterable<?> results, boolean newlineDelimited) {
+    if (results == null) {
+      writeNull(ctx);
+      return;
+    }
+    try (ResultIterator<?> iterator = results.iterator()) {
+      writeItems(ctx, iterator, newlineDelimited);
+    }
+  }
+
+  private static void writeItems(Context ctx, Iterator<?> iterator, boolean newlineDelimited) {
+    ctx.contentType(newlineDelimited ? CONTENT_TYPE_NDJSON : CONTENT_TYPE_JSON);
+    ObjectMapper mapper = JavalinJackson.getObjectMapper();
+    // Flushing is left to the buffers, except for ndjson where each line is meant to be consumed on its own.
+    ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    ClientOutputStream out;
+    try {
+      out = new ClientOutputStream(ctx.res.getOutputStream());
+    } catch (IOException ex) {
+      LOG.debug(JSON_PREFIX+"Streaming of the response interrupted", ex);
+      return;
+    }
+    // The response stream stays open, after handlers may still need it.
+    // A failure must not be closed into valid json, it would look like a complete result.
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)) {
+      if (newlineDelimited) {
+        generator.setRootValueSeparator(null);
+        while (iterator.hasNext()) {
+          writer.writeValue(generator, iterator.next());
+          generator.writeRaw('\n');
+          generator.flush();
+        }
+      } else {
+        generator.writeStartArray();
+        while (iterator.hasNext()) {
+          writer.writeValue(generator, iterator.next());
+        }
+        generator.writeEndArray();
+      }
+    } catch (IOException ex) {
+      if (out.failed) {
+        // The client went away, nothing else to send to it.
+        LOG.debug(JSON_PREFIX+"Streaming of the response interrupted", ex);
+        return;
+      }
+      LOG.error(JSON_PREFIX+"Serialization of the response failed", ex);
+      abort(ctx, new InternalServerErrorResponse());
+    } catch (RuntimeException ex) {
+      if (ctx.res.isCommitted()) {
+        LOG.error(JSON_PREFIX+"Source of the response failed while streaming", ex);
+      }
+      abort(ctx, ex);
+    }
+  }
+
+  private static void abort(Context ctx, RuntimeException failure) {
+    if (!ctx.res.isCommitted()) {
+      // Nothing went out yet
+      ctx.res.resetBuffer();
+      throw failure;
+    }
+    Request request = Request.getBaseRequest(ctx.req);
+    if (request == null) {
+      // Not in jetty, the container decides
+      throw failure;
+    }
+    request.getHttpChannel().abort(failure);
+  }
+
+  // ctx.json() does not accept nulls.
+  private static void writeNull(Context ctx) {
+    ctx.contentType(CONTENT_TYPE_JSON).result("null");
+  }
+
+  /**
+   * Tells the failures of the client connection from the ones of the serialization.
+   */
+  private static final class ClientOutputStream extends OutputStream {
+
+    final OutputStream out;
+    boolean failed;
+
+    ClientOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      try {
+        out.write(b);
+      } catch (IOException ex) {
+        failed = true;
+        throw ex;
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      try {
+        out.write(b, off, len);
+      } catch (IOException ex) {
+        failed = true;
+        throw ex;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        out.flush();
+      } catch (IOException ex) {
+        failed = true;
+        throw ex;
+      }
+    }
+  }
+
+  private static void closeIfPossible(Iterator<?> iterator) {
+    if (!(iterator instanceof AutoCloseable)) {
+      return;
+    }
+    try {
+      ((AutoCloseable) iterator).close();
+    } catch (RuntimeException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import java.lang.annotation.Documented;
+import static java.lang.annotation.ElementType.METHOD;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests of a resource method, see RouteRateLimit.
+ * Requests over the limit get a 429 with a Retry-After header.
+ * @author Raffaele Ragni
+ */
+@Target({METHOD})
+@Retention(RUNTIME)
+@Documented
+public @interface RateLimited {
+
+  /**
+   * What the limit is counted on.
+   */
+  enum Key {
+    /** One limit for the whole route. */
+    ROUTE,
+    /** A limit per value of the header(). */
+    HEADER,
+    /** A limit per authenticated user, the email set by the AuthenticationFilter. */
+    USER,
+    /** A limit per client ip. */
+    IP
+  }
+
+  /**
+   * @return the requests allowed in a period, also the most that can be done at once
+   */
+  long value();
+
+  /**
+   * @return the period, default is 1
+   */
+  long period() default 1;
+
+  /**
+   * @return the unit of the period, default is seconds
+   */
+  TimeUnit unit() default TimeUnit.SECONDS;
+
+  /**
+   * @return what the limit is counted on, default is the whole route
+   */
+  Key key() default Key.ROUTE;
+
+  /**
+   * @return the header, when the key is HEADER
+   */
+  String header() default "";
+
+}
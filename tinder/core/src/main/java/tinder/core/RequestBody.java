@@ -0,0 +1,277 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.Javalin;
+import io.javalin.json.JavalinJackson;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import static java.util.Collections.emptyMap;
+
+/**
+ * Binding of request bodies, reading from the request stream instead of materializing the body first.
+ * Json is deserialized while it is read, using the same jackson mapper of javalin.
+ * All the methods enforce the max body size: a request declaring a bigger Content-Length is refused upfront,
+ * otherwise the reading stops as soon as the limit is passed. In both cases the response is a 413.
+ *
+ * The generated resources use this for their body parameters, the instance is taken from the javalin attributes
+ * (see install()), or a default one is used if not installed.
+ *
+ * @author Raffaele Ragni
+ */
+public final class RequestBody {
+
+  public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024;
+
+  public static final int PAYLOAD_TOO_LARGE = 413;
+
+  private static final RequestBody DEFAULT = new RequestBody(DEFAULT_MAX_SIZE);
+
+  final long maxSize;
+
+  public RequestBody(long maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive.");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Sets up the body binding for all the routes of the javalin instance.
+   * @param javalin the javalin instance
+   * @param maxSize max size of the body in bytes
+   */
+  public static void install(Javalin javalin, long maxSize) {
+    javalin.attribute(RequestBody.class, new RequestBody(maxSize));
+  }
+
+  /**
+   * @param ctx the request context
+   * @return the body binding installed on the javalin of the request, or a default one
+   */
+  public static RequestBody of(Context ctx) {
+    RequestBody installed = ctx.appAttribute(RequestBody.class);
+    return installed == null ? DEFAULT : installed;
+  }
+
+  /**
+   * @return the max size of the body in bytes
+   */
+  public long maxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Deserializes the json body.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param type the class of the body
+   * @return the body, null if the request has no body
+   */
+  public <T> T json(Context ctx, Class<T> type) {
+    ObjectMapper mapper = JavalinJackson.getObjectMapper();
+    return withParser(ctx, mapper.getFactory(), parser -> mapper.readValue(parser, type));
+  }
+
+  /**
+   * Deserializes the json body, for generic types.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param type the type of the body
+   * @return the body, null if the request has no body
+   */
+  public <T> T json(Context ctx, TypeReference<T> type) {
+    ObjectMapper mapper = JavalinJackson.getObjectMapper();
+    return withParser(ctx, mapper.getFactory(), parser -> mapper.readValue(parser, type));
+  }
+
+  /**
+   * Deserializes the body with the given mapper, for the formats other than json.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param mapper the mapper of the body format
+   * @param type the type of the body
+   * @return the body, null if the request has no body
+   */
+  public <T> T read(Context ctx, ObjectMapper mapper, JavaType type) {
+    return withParser(ctx, mapper.getFactory(), parser -> mapper.readValue(parser, type));
+  }
+
+  /**
+   * Deserializes the body with a reader already made for its type.
+   * @param <T> the type of the body
+   * @param ctx the request context
+   * @param reader the reader of the body type
+   * @return the body, null if the request has no body
+   */
+  public <T> T read(Context ctx, ObjectReader reader) {
+    return withParser(ctx, reader.getFactory(), reader::readValue);
+  }
+
+  /**
+   * Reads the body as a string, in the request encoding or UTF-8 if not specified.
+   * @param ctx the request context
+   * @return the body
+   */
+  public String string(Context ctx) {
+    String encoding = ctx.req.getCharacterEncoding();
+    Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+    try (InputStream in = stream(ctx)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), charset);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * The raw body stream, limited to the max size.
+   * @param ctx the request context
+   * @return the body stream
+   */
+  public InputStream stream(Context ctx) {
+    return limitedStream(ctx);
+  }
+
+  /**
+   * The raw body as a channel, limited to the max size.
+   * @param ctx the request context
+   * @return the body channel
+   */
+  public ReadableByteChannel channel(Context ctx) {
+    return Channels.newChannel(stream(ctx));
+  }
+
+  private LimitedInputStream limitedStream(Context ctx) {
+    if (ctx.req.getContentLengthLong() > maxSize) {
+      throw tooLarge();
+    }
+    try {
+      return new LimitedInputStream(ctx.req.getInputStream(), maxSize);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private <T> T withParser(Context ctx, JsonFactory factory, ParserReader<T> fn) {
+    try (JsonParser parser = factory.createParser(limitedStream(ctx))) {
+      // An empty body binds to null, as it did for the empty strings before
+      if (parser.nextToken() == null) {
+        return null;
+      }
+      return fn.read(parser);
+    } catch (JsonProcessingException ex) {
+      throw responseOf(ex);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * The 413 of the limit when it is the cause, as jackson wraps it in the middle of a bean, otherwise a 400.
+   */
+  private static HttpResponseException responseOf(JsonProcessingException ex) {
+    for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpResponseException) {
+        return (HttpResponseException) cause;
+      }
+    }
+    return new BadRequestResponse(ex.getOriginalMessage());
+  }
+
+  private HttpResponseException tooLarge() {
+    return new HttpResponseException(PAYLOAD_TOO_LARGE, "Payload too large, max is " + maxSize + " bytes", emptyMap());
+  }
+
+  @FunctionalInterface
+  private interface ParserReader<T> {
+    T read(JsonParser parser) throws IOException;
+  }
+
+  /**
+   * Fails with a 413 as soon as more than max bytes are read.
+   * It is unchecked, so the jackson parser lets it through as it is, but the deserializers of beans wrap it.
+   */
+  private final class LimitedInputStream extends FilterInputStream {
+
+    long remaining;
+
+    LimitedInputStream(InputStream in, long max) {
+      super(in);
+      this.remaining = max;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(long n) {
+      remaining -= n;
+      if (remaining < 0) {
+        throw tooLarge();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import io.javalin.Context;
+import io.javalin.Handler;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import tinder.core.routing.RouteHandler;
+
+/**
+ * In memory cache of the responses of a GET route, used by the resources with @Cached.
+ *
+ * Responses are keyed by path, query string and the selected request headers, and only the 200 ones with a
+ * plain (not async) result are kept, with their body and content type. Other headers set by the handler are not.
+ * Every cached response has an ETag, and requests with a matching If-None-Match get a 304 without body.
+ *
+ * On a miss only the first request runs the handler, the concurrent ones with the same key wait for its
+ * response instead of all going to the backend at once. When that response turns out not to be cacheable, they
+ * run the handler on their own.
+ *
+ * When the cache is full the expired entries are dropped first, then the ones closest to expire.
+ * Hits and misses are counted in the metric registry as "tinder.cache.[name].hits" and "tinder.cache.[name].misses".
+ *
+ * @author Raffaele Ragni
+ */
+public final class ResponseCache {
+
+  public static final String METRIC_PREFIX = "tinder.cache.";
+
+  static final String HEADER_ETAG = "ETag";
+  static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+  static final int OK = 200;
+  static final int NOT_MODIFIED = 304;
+
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final String[] headers;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+  private final Counter hits;
+  private final Counter misses;
+
+  private ResponseCache(long ttlMillis, int maxEntries, String[] headers, Counter hits, Counter misses) {
+    if (ttlMillis <= 0) {
+      throw new IllegalArgumentException("ttl must be positive: " + ttlMillis);
+    }
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+    }
+    this.ttlNanos = ttlMillis * 1_000_000L;
+    this.maxEntries = maxEntries;
+    this.headers = headers.clone();
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  /**
+   * Creates a cache not counting its hits and misses.
+   * @param ttlMillis how long a response stays cached, in milliseconds
+   * @param maxEntries the maximum number of responses kept
+   * @param headers the request headers that are part of the key
+   * @return the cache
+   */
+  public static ResponseCache of(long ttlMillis, int maxEntries, String... headers) {
+    return new ResponseCache(ttlMillis, maxEntries, headers, new Counter(), new Counter());
+  }
+
+  /**
+   * Creates a cache counting its hits and misses in the registry.
+   * Caches with the same name share the counters.
+   * @param metricRegistry the registry, when null the cache is not counted
+   * @param name the name of the cache in the metrics
+   * @param ttlMillis how long a response stays cached, in milliseconds
+   * @param maxEntries the maximum number of responses kept
+   * @param headers the request headers that are part of the key
+   * @return the cache
+   */
+  public static ResponseCache of(MetricRegistry metricRegistry, String name, long ttlMillis, int maxEntries, String... headers) {
+    if (metricRegistry == null) {
+      return of(ttlMillis, maxEntries, headers);
+    }
+    return new ResponseCache(ttlMillis, maxEntries, headers,
+        metricRegistry.counter(METRIC_PREFIX + name + ".hits"),
+        metricRegistry.counter(METRIC_PREFIX + name + ".misses"));
+  }
+
+  /**
+   * @param handler the route handler
+   * @return the same handler, with its responses cached
+   */
+  public RouteHandler cached(RouteHandler handler) {
+    return (ctx, params) -> handle(ctx, () -> handler.handle(ctx, params));
+  }
+
+  /**
+   * @param handler the javalin handler
+   * @return the same handler, with its responses cached
+   */
+  public Handler cached(Handler handler) {
+    return ctx -> handle(ctx, () -> handler.handle(ctx));
+  }
+
+  /**
+   * @return the number of responses in the cache, expired ones included until they get dropped
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Drops all the responses.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  private void handle(Context ctx, Call call) throws Exception {
+    String key = key(ctx);
+    Entry entry = entries.get(key);
+    if (entry != null && !entry.isExpired(System.nanoTime())) {
+      hits.inc();
+      entry.writeTo(ctx);
+      return;
+    }
+
+    CompletableFuture<Entry> load = new CompletableFuture<>();
+    CompletableFuture<Entry> running = loading.putIfAbsent(key, load);
+    if (running != null) {
+      // Someone else is already loading it
+      entry = running.join();
+      if (entry == null) {
+        call.run();
+      } else {
+        hits.inc();
+        entry.writeTo(ctx);
+      }
+      return;
+    }
+
+    misses.inc();
+    entry = null;
+    try {
+      call.run();
+      entry = toEntry(ctx);
+      if (entry != null) {
+        put(key, entry);
+        entry.writeTo(ctx);
+      }
+    } finally {
+      loading.remove(key, load);
+      load.complete(entry);
+    }
+  }
+
+  private String key(Context ctx) {
+    StringBuilder key = new StringBuilder(ctx.req.getRequestURI());
+    String query = ctx.req.getQueryString();
+    if (query != null) {
+      key.append('?').append(query);
+    }
+    for (String header: headers) {
+      key.append('\n').append(ctx.header(header));
+    }
+    return key.toString();
+  }
+
+  private Entry toEntry(Context ctx) throws IOException {
+    if (ctx.status() != OK || ctx.resultFuture() != null) {
+      return null;
+    }
+    byte[] body = readAll(ctx.resultStream());
+    return new Entry(body, ctx.res.getContentType(), etag(body), System.nanoTime() + ttlNanos);
+  }
+
+  private void put(String key, Entry entry) {
+    if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+      evict();
+    }
+    entries.put(key, entry);
+  }
+
+  /**
+   * Makes room for one entry, going through all of them: it happens only on misses when the cache is full.
+   */
+  private synchronized void evict() {
+    long now = System.nanoTime();
+    entries.values().removeIf(e -> e.isExpired(now));
+    while (entries.size() >= maxEntries) {
+      Map.Entry<String, Entry> oldest = null;
+      for (Map.Entry<String, Entry> e: entries.entrySet()) {
+        if (oldest == null || e.getValue().expiresAt - oldest.getValue().expiresAt < 0) {
+          oldest = e;
+        }
+      }
+      if (oldest == null) {
+        return;
+      }
+      entries.remove(oldest.getKey(), oldest.getValue());
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    if (in == null) {
+      return new byte[0];
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  static String etag(byte[] body) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+      StringBuilder etag = new StringBuilder(digest.length * 2 + 2).append('"');
+      for (byte b: digest) {
+        etag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return etag.append('"').toString();
+    } catch (NoSuchAlgorithmException ex) {
+      // MD5 is there in every JVM
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * If-None-Match uses the weak comparison: W/ prefixes do not count.
+   */
+  static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag: ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @FunctionalInterface
+  private interface Call {
+    void run() throws Exception;
+  }
+
+  private static final class Entry {
+    final byte[] body;
+    final String contentType;
+    final String etag;
+    final long expiresAt;
+
+    Entry(byte[] body, String contentType, String etag, long expiresAt) {
+      this.body = body;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return now - expiresAt >= 0;
+    }
+
+    void writeTo(Context ctx) {
+      ctx.header(HEADER_ETAG, etag);
+      if (matches(ctx.header(HEADER_IF_NONE_MATCH), etag)) {
+        ctx.status(NOT_MODIFIED);
+        ctx.result("");
+        return;
+      }
+      ctx.status(OK);
+      if (contentType != null) {
+        ctx.contentType(contentType);
+      }
+      ctx.result(new ByteArrayInputStream(body));
+    }
+  }
+
+}
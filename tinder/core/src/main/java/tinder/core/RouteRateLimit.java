@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.Handler;
+import io.javalin.HttpResponseException;
+import static java.util.Collections.emptyMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import tinder.core.auth.AuthenticationFilter;
+import tinder.core.routing.RouteHandler;
+import tinder.patterns.limits.TokenBucket;
+import tinder.patterns.limits.TokenBuckets;
+
+/**
+ * Rate limit of a route, used by the resources with @RateLimited.
+ *
+ * The limit is a token bucket, for the whole route or per key: a header, the authenticated user or the client ip.
+ * Requests without the key (no header, or no user logged in) are counted on their ip instead.
+ * Requests over the limit get a 429 with the seconds to wait in Retry-After, and do not reach the handler.
+ *
+ * @author Raffaele Ragni
+ */
+public final class RouteRateLimit {
+
+  public static final int TOO_MANY_REQUESTS = 429;
+
+  static final String HEADER_RETRY_AFTER = "Retry-After";
+
+  private final ToLongFunction<Context> acquire;
+
+  private RouteRateLimit(ToLongFunction<Context> acquire) {
+    this.acquire = acquire;
+  }
+
+  /**
+   * @param permits the requests allowed in a period, also the most that can be done at once
+   * @param periodMillis the period in milliseconds
+   * @param key what the limit is counted on
+   * @param header the header, when the key is HEADER
+   * @return the rate limit
+   */
+  public static RouteRateLimit of(long permits, long periodMillis, RateLimited.Key key, String header) {
+    if (key == RateLimited.Key.ROUTE) {
+      TokenBucket bucket = TokenBucket.of(permits, periodMillis, TimeUnit.MILLISECONDS);
+      return new RouteRateLimit(ctx -> bucket.tryAcquire(1));
+    }
+    if (key == RateLimited.Key.HEADER && (header == null || header.isEmpty())) {
+      throw new IllegalArgumentException("header is required for the HEADER key");
+    }
+    TokenBuckets<String> buckets = TokenBuckets.of(permits, periodMillis, TimeUnit.MILLISECONDS);
+    return new RouteRateLimit(ctx -> buckets.tryAcquire(key(ctx, key, header), 1));
+  }
+
+  /**
+   * @param handler the route handler
+   * @return the same handler, called only within the limit
+   */
+  public RouteHandler limited(RouteHandler handler) {
+    return (ctx, params) -> {
+      check(ctx);
+      handler.handle(ctx, params);
+    };
+  }
+
+  /**
+   * @param handler the javalin handler
+   * @return the same handler, called only within the limit
+   */
+  public Handler limited(Handler handler) {
+    return ctx -> {
+      check(ctx);
+      handler.handle(ctx);
+    };
+  }
+
+  /**
+   * Takes a permit for the request.
+   * @param ctx the request context
+   * @throws HttpResponseException with 429 when over the limit
+   */
+  public void check(Context ctx) {
+    long waitNanos = acquire.applyAsLong(ctx);
+    if (waitNanos > 0) {
+      ctx.header(HEADER_RETRY_AFTER, String.valueOf((waitNanos + 999_999_999L) / 1_000_000_000L));
+      throw new HttpResponseException(TOO_MANY_REQUESTS, "Too many requests", emptyMap());
+    }
+  }
+
+  private static String key(Context ctx, RateLimited.Key key, String header) {
+    String value = null;
+    if (key == RateLimited.Key.HEADER) {
+      value = ctx.header(header);
+    } else if (key == RateLimited.Key.USER) {
+      value = ctx.attribute(AuthenticationFilter.REQ_USER);
+    }
+    // Prefixed, so that a key cannot take the place of an ip
+    return value == null ? "ip:" + ctx.ip() : "key:" + value;
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import java.lang.annotation.Documented;
+import static java.lang.annotation.ElementType.METHOD;
+import java.lang.annotation.Retention;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeout for resource methods returning a CompletionStage.
+ * When the time passes without a result, the response is a 503 and the stage is cancelled.
+ * Keep in mind that the async timeout of the server (30 seconds for jetty) still applies.
+ * @author Raffaele Ragni
+ */
+@Target({METHOD})
+@Retention(RUNTIME)
+@Documented
+public @interface Timeout {
+
+  /**
+   * @return the timeout, in the given unit
+   */
+  long value();
+
+  /**
+   * @return the unit of the timeout, default is milliseconds
+   */
+  TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+}
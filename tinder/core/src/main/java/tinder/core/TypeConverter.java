@@ -15,9 +15,6 @@
  */
 package tinder.core;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 /**
  * Simple type converter for basic types.
  * @author Raffaele Ragni
@@ -51,17 +48,9 @@ public interface TypeConverter {
 
     // If the type has a valueOf with a string as a parameter, just go with that one
     // All the base java types have it.
-    try {
-      Method valueOf = clazz.getMethod("valueOf", String.class);
-      return (T) valueOf.invoke(null, value);
-    } catch (NoSuchMethodException
-        | SecurityException
-        | IllegalAccessException
-        | IllegalArgumentException
-        | InvocationTargetException ex) {
-      // Warning or nothing?
-      throw new RuntimeException(ex);
-    }
+    // The generated resources already call the common types directly, this is for the custom ones:
+    // the method is looked up once per type and then cached.
+    return (T) ValueOfHandles.valueOf(clazz, value);
   }
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+
+/**
+ * Cache of the valueOf(String) method handles, one per type, used by the default TypeConverter.
+ * The lookup happens only the first time a type is converted, the failure too is cached so that types
+ * without a valueOf don't go through the lookup at every request.
+ *
+ * @author Raffaele Ragni
+ */
+final class ValueOfHandles {
+
+  private static final MethodType CONVERSION_TYPE = MethodType.methodType(Object.class, String.class);
+
+  private static final ClassValue<ValueOfHandles> CACHE = new ClassValue<ValueOfHandles>() {
+    @Override
+    protected ValueOfHandles computeValue(Class<?> type) {
+      try {
+        MethodHandle handle = MethodHandles.publicLookup()
+            .unreflect(type.getMethod("valueOf", String.class))
+            .asType(CONVERSION_TYPE);
+        return new ValueOfHandles(handle, null);
+      } catch (NoSuchMethodException
+          | SecurityException
+          | IllegalAccessException
+          | WrongMethodTypeException ex) {
+        // Also instance methods named valueOf end up here, as they can't be adapted to the conversion type.
+        return new ValueOfHandles(null, ex);
+      }
+    }
+  };
+
+  final MethodHandle handle;
+  final Exception failure;
+
+  private ValueOfHandles(MethodHandle handle, Exception failure) {
+    this.handle = handle;
+    this.failure = failure;
+  }
+
+  static Object valueOf(Class<?> type, String value) {
+    ValueOfHandles entry = CACHE.get(type);
+    if (entry.failure != null) {
+      throw new RuntimeException(entry.failure);
+    }
+    try {
+      return entry.handle.invokeExact(value);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+}
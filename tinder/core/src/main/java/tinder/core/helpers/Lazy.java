@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.helpers;
+
+import java.util.function.Supplier;
+
+/**
+ * Memoizing supplier: the value is created at the first get() and then always returned as is.
+ * Use it for things that are costly to create and that may never be used at all.
+ *
+ * @param <T> the type of the value
+ *
+ * @author Raffaele Ragni
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+  private final Supplier<T> factory;
+  private volatile T value;
+
+  private Lazy(Supplier<T> factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Wraps a factory so that it gets called only once, and only when needed.
+   * @param <T> the type of the value
+   * @param factory the function that creates the value, must not return null
+   * @return the lazy supplier
+   */
+  public static <T> Lazy<T> of(Supplier<T> factory) {
+    if (factory == null) {
+      throw new IllegalArgumentException("factory is required.");
+    }
+    return new Lazy<>(factory);
+  }
+
+  @Override
+  public T get() {
+    // Double checked locking, the volatile read is the only cost once the value is there.
+    T result = value;
+    if (result == null) {
+      synchronized (this) {
+        result = value;
+        if (result == null) {
+          result = factory.get();
+          value = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return if the value was already created.
+   */
+  public boolean isInitialized() {
+    return value != null;
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.limits;
+
+import java.sql.Connection;
+import java.util.Optional;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tinder.patterns.limits.PermitStore;
+
+/**
+ * The budgets of the distributed limits (LeasedRateLimiter) in the database, one row per key and window.
+ *
+ * Permits are leased within a transaction that locks the row of the window, so the nodes never lease more than the
+ * limit between them. The row of a new window replaces the older ones of the same key, so the table holds at most
+ * one row per key.
+ *
+ * @author Raffaele Ragni
+ */
+public final class JdbiPermitStore implements PermitStore {
+
+  private static final String PREFIX_LIMITS = "Limits :: ";
+  private static final Logger LOG = LoggerFactory.getLogger(JdbiPermitStore.class);
+
+  // This path is hard coded so careful if you move that resource away...
+  private static final String LIMITS_CHANGELOG = "tinder/core/limits/tinder-limits-liquibase.xml";
+
+  private final Jdbi jdbi;
+
+  public JdbiPermitStore(Jdbi jdbi) {
+    this.jdbi = jdbi;
+  }
+
+  /**
+   * Creates the table of the permits.
+   * This operation is incremental as liquibase keeps track of DDL changes.
+   * @throws liquibase.exception.DatabaseException
+   */
+  public void upgradeByLiquibase() throws DatabaseException, LiquibaseException {
+    jdbi.withHandle(h -> {
+      LOG.info(PREFIX_LIMITS+"Upgrading limits tables through liquibase");
+      h.begin();
+      Connection con = h.getConnection();
+      Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(con));
+      Liquibase liquibase = new liquibase.Liquibase(LIMITS_CHANGELOG, new ClassLoaderResourceAccessor(), database);
+      liquibase.update(new Contexts(), new LabelExpression());
+      h.commit();
+      return null;
+    });
+  }
+
+  @Override
+  public long lease(String key, long window, long permits, long limit) {
+    try {
+      return jdbi.inTransaction(h -> lease(h, key, window, permits, limit));
+    } catch (UnableToExecuteStatementException ex) {
+      // Another node created the row of the window in the meantime, which is there now
+      LOG.debug(PREFIX_LIMITS+"Leasing again for {}: {}", key, ex.getMessage());
+      return jdbi.inTransaction(h -> lease(h, key, window, permits, limit));
+    }
+  }
+
+  private static long lease(Handle h, String key, long window, long permits, long limit) {
+    Optional<Long> used = h.createQuery(
+        "SELECT used FROM tinder_permits WHERE permit_key = :key AND permit_window = :window FOR UPDATE")
+        .bind("key", key)
+        .bind("window", window)
+        .mapTo(Long.class)
+        .findFirst();
+
+    if (!used.isPresent()) {
+      long granted = Math.min(permits, limit);
+      h.createUpdate("DELETE FROM tinder_permits WHERE permit_key = :key AND permit_window < :window")
+          .bind("key", key)
+          .bind("window", window)
+          .execute();
+      h.createUpdate("INSERT INTO tinder_permits (permit_key, permit_window, used) VALUES (:key, :window, :used)")
+          .bind("key", key)
+          .bind("window", window)
+          .bind("used", granted)
+          .execute();
+      return granted;
+    }
+
+    long granted = Math.max(0, Math.min(permits, limit - used.get()));
+    if (granted > 0) {
+      h.createUpdate("UPDATE tinder_permits SET used = used + :granted WHERE permit_key = :key AND permit_window = :window")
+          .bind("granted", granted)
+          .bind("key", key)
+          .bind("window", window)
+          .execute();
+    }
+    return granted;
+  }
+
+}
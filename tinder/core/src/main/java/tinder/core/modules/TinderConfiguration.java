@@ -20,6 +20,8 @@ import java.util.function.Consumer;
 import org.eclipse.jetty.server.Server;
 import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
+import tinder.core.RequestBody;
+import tinder.patterns.limits.AdaptiveLimit;
 
 /**
  *
@@ -85,6 +87,30 @@ public interface TinderConfiguration {
    */
   Optional<String> httpStaticFilesLocation();
 
+  /**
+   * Max size in bytes of the request bodies bound to the parameters of the generated resources.
+   * Bigger requests are refused with a 413.
+   * Default is 10MB.
+   * @return the max body size in bytes
+   */
+  @Default default long httpMaxBodySize() { return RequestBody.DEFAULT_MAX_SIZE; }
+
+  /**
+   * Limits the requests served at the same time, to what the application can take as seen from its latency.
+   * Requests over the limit get a 503. Ex. AdaptiveLimit.of(20, 1, 1000).
+   * Default empty(), no limit.
+   * @return the concurrency limit of the http requests
+   */
+  Optional<AdaptiveLimit> httpConcurrencyLimit();
+
+  /**
+   * Registers the jackson afterburner module, which replaces the reflection of the (de)serializers with
+   * generated bytecode. It must be decided before any json is read or written.
+   * Default is false.
+   * @return if to use the afterburner module
+   */
+  @Default default boolean useJacksonAfterburner() { return false; }
+
   /**
    * The prefix to use for sending statsd metrics.
    * default is "api"
@@ -128,4 +154,15 @@ public interface TinderConfiguration {
    */
   @Default default String jdbiInstanceName() { return "jdbi"; }
 
+  /**
+   * Fast startup mode.
+   * Subsystems that are not needed for serving the first request are initialized lazily or in background:
+   * the statsd client is created at first use, the http server is created in parallel with the rest of the setup,
+   * the JMX reporter is started in background and the jdbi connection pool is warmed up while the port is bound.
+   * Timings of each startup phase are available from the module startupTimeline() and in the metric registry.
+   * Default is false.
+   * @return if to use the fast startup mode
+   */
+  @Default default boolean useFastStartup() { return false; }
+
 }
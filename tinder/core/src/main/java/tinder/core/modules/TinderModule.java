@@ -15,26 +15,39 @@
  */
 package tinder.core.modules;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.timgroup.statsd.NonBlockingStatsDClient;
 import com.timgroup.statsd.StatsDClient;
 import io.javalin.Context;
 import io.javalin.Javalin;
+import io.javalin.JavalinEvent;
 import io.javalin.json.JavalinJackson;
 import static java.util.Optional.of;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import org.eclipse.jetty.server.Server;
 import org.jdbi.v3.core.Jdbi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import tinder.core.ApiException;
+import tinder.core.ApiExceptionHandler;
+import tinder.core.ConcurrencyLimit;
 import tinder.core.JDBILoader;
+import tinder.core.RequestBody;
+import tinder.core.helpers.Lazy;
 import tinder.core.modules.metrics.HealthCheckRoute;
+import tinder.core.modules.metrics.StartupTimeline;
+import tinder.core.routing.Router;
 
 /**
  *
@@ -57,7 +70,9 @@ public class TinderModule {
   final MetricRegistry metricRegistry;
   final HealthCheckRegistry healthCheckRegistry;
 
-  final StatsDClient statsDClient;
+  final StartupTimeline startupTimeline;
+
+  final Supplier<StatsDClient> statsDClient;
 
   final Javalin javalin;
 
@@ -71,31 +86,69 @@ public class TinderModule {
     metricRegistry = new MetricRegistry();
     healthCheckRegistry = new HealthCheckRegistry();
 
+    startupTimeline = new StartupTimeline(metricRegistry);
+
     // Initialize the statsd client.
     // Since it's UDP towards localhost, we can always start it with no big consequence.
-    LOG.info(METRICS_PREFIX+"Initializing statsd client...");
-    statsDClient = new NonBlockingStatsDClient(
-        configuration.statsDPrefix(), configuration.statsDHost(), configuration.statsDPort());
+    // In fast startup it is left to the first use instead.
+    statsDClient = Lazy.of(() -> {
+      LOG.info(METRICS_PREFIX+"Initializing statsd client...");
+      return new NonBlockingStatsDClient(
+          configuration.statsDPrefix(), configuration.statsDHost(), configuration.statsDPort());
+    });
+    if (!configuration.useFastStartup()) {
+      startupTimeline.phase("statsd", () -> statsDClient.get());
+    }
 
     // Add some defaults to jackson behaviour since it has some breaking functionality on missing properties or nulls
     // These settings will make the api more extensible without breaking clients, when they adhere to these rules.
     ObjectMapper jacksonObjectMapper = JavalinJackson.getObjectMapper();
     jacksonObjectMapper.setSerializationInclusion(Include.NON_NULL);
     jacksonObjectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    if (configuration.useJacksonAfterburner()) {
+      jacksonObjectMapper.registerModule(new AfterburnerModule());
+    }
 
     // Always create javalin to avoid null pointers, even if we don't use it.
-    javalin = Javalin.create().disableStartupBanner();
+    javalin = startupTimeline.phase("javalin", () -> Javalin.create().disableStartupBanner());
+    RequestBody.install(javalin, configuration.httpMaxBodySize());
+    // The generated resources find the registry from here, for the metrics of their caches.
+    javalin.attribute(MetricRegistry.class, metricRegistry);
+    javalin.exception(ApiException.class, new ApiExceptionHandler());
+    Router.install(javalin);
 
     // Start up http if enabled.
     if (configuration.useServer()) {
 
       LOG.info(JAVALIN_PREFIX+"Starting Javalin...");
-      Server server = new JettyServerCreator(configuration).get();
-      configuration.httpServerConfigurator().accept(server);
-      javalin.server(() -> server);
+      if (configuration.useFastStartup()) {
+        // Jetty gets built in background while the application registers its routes,
+        // it is needed only when javalin actually starts.
+        CompletableFuture<Server> server = startupTimeline.phaseAsync("jetty", this::createServer);
+        javalin.event(JavalinEvent.SERVER_STARTING, () -> javalin.server(server::join));
+      } else {
+        Server server = startupTimeline.phase("jetty", this::createServer);
+        javalin.server(() -> server);
+      }
+
+      // Time taken for binding the ports, and from there the application is ready to serve.
+      AtomicLong bindStart = new AtomicLong();
+      javalin.event(JavalinEvent.SERVER_STARTING, () -> bindStart.set(System.nanoTime()));
+      javalin.event(JavalinEvent.SERVER_STARTED, () -> {
+        startupTimeline.record("bind", System.nanoTime() - bindStart.get());
+        startupTimeline.ready();
+      });
 
       configuration.httpStaticFilesLocation().ifPresent(javalin::enableStaticFiles);
 
+      // First of the filters, so that the requests refused go through nothing else
+      configuration.httpConcurrencyLimit().ifPresent(limit -> {
+        LOG.info(JAVALIN_PREFIX+"Adding the concurrency limit");
+        ConcurrencyLimit.install(javalin, limit);
+        metricRegistry.register("tinder.concurrency.limit", (Gauge<Integer>) limit::limit);
+        metricRegistry.register("tinder.concurrency.inflight", (Gauge<Integer>) limit::inFlight);
+      });
+
       // We always add the support for identifiable requests via the custom header
       javalin.before(c -> { requestUUIDFilterBefore(c); });
       javalin.after(c -> { requestUUIDFilterAfter(c); });
@@ -109,21 +162,40 @@ public class TinderModule {
 
     // Register JMX reporter for metrics if enabled and have it start and go along.
     if (configuration.useJmxMetrics()) {
-      LOG.info(METRICS_PREFIX+"Initializing JMX metrics reporter...");
-      JmxReporter reporter = JmxReporter.forRegistry(metricRegistry).build();
-      // Start it now
-      reporter.start();
-      // Make sure to terminate it at JVM end
-      Runtime.getRuntime().addShutdownHook(new Thread(() -> reporter.stop()));
+      if (configuration.useFastStartup()) {
+        startupTimeline.phaseAsync("jmx", this::startJmxReporter);
+      } else {
+        startupTimeline.phase("jmx", this::startJmxReporter);
+      }
     }
   }
 
+  private Server createServer() {
+    Server server = new JettyServerCreator(configuration).get();
+    configuration.httpServerConfigurator().accept(server);
+    return server;
+  }
+
+  private JmxReporter startJmxReporter() {
+    LOG.info(METRICS_PREFIX+"Initializing JMX metrics reporter...");
+    JmxReporter reporter = JmxReporter.forRegistry(metricRegistry).build();
+    // Start it now
+    reporter.start();
+    // Make sure to terminate it at JVM end
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> reporter.stop()));
+    return reporter;
+  }
+
   public Javalin javalin() {
     return javalin;
   }
 
   public StatsDClient statsDClient() {
-    return statsDClient;
+    return statsDClient.get();
+  }
+
+  public StartupTimeline startupTimeline() {
+    return startupTimeline;
   }
 
   public MetricRegistry metricRegistry() {
@@ -145,7 +217,17 @@ public class TinderModule {
    */
   public Jdbi jdbi(TinderConfiguration configuration) {
     LOG.info(JDBI_PREFIX+"Returning JDBI instance {}", configuration.jdbiInstanceName());
-    return JDBILoader.load(configuration.jdbiInstanceName(), of(metricRegistry()));
+    if (!configuration.useFastStartup()) {
+      return startupTimeline.phase("jdbi", () -> JDBILoader.load(configuration.jdbiInstanceName(), of(metricRegistry())));
+    }
+    // Pool is not started right away, instead it is warmed up in background so that
+    // it goes in parallel with the rest of the startup, like binding the http port.
+    Jdbi jdbi = JDBILoader.loadLazy(configuration.jdbiInstanceName(), of(metricRegistry()));
+    startupTimeline.phaseAsync("jdbi", () -> {
+      jdbi.open().close();
+      return jdbi;
+    });
+    return jdbi;
   }
 
   /**
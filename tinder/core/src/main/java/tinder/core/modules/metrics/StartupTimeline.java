@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.modules.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of how long each phase of the application startup took.
+ * Every phase is logged when done and exposed as a gauge in the metric registry, under "tinder.startup.[phase]",
+ * in milliseconds.
+ *
+ * Phases can also run in background through phaseAsync(), that is meant for independent initializations that can go
+ * in parallel with the rest of the startup (ex. warming up the connection pool while the http port is being bound).
+ *
+ * @author Raffaele Ragni
+ */
+public class StartupTimeline {
+
+  public static final String METRIC_PREFIX = "tinder.startup.";
+  public static final String PHASE_TOTAL = "total";
+
+  private static final String STARTUP_PREFIX = "Startup :: ";
+
+  private static final Logger LOG = LoggerFactory.getLogger(StartupTimeline.class);
+
+  // Background phases get a daemon thread each, they are few and they happen once, no need for a pool to shut down.
+  private static final Executor BACKGROUND = r -> {
+    Thread thread = new Thread(r, "tinder-startup");
+    thread.setDaemon(true);
+    thread.start();
+  };
+
+  final MetricRegistry metricRegistry;
+  final long origin;
+
+  // Insertion ordered so that it reads as a timeline.
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+
+  public StartupTimeline(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+    this.origin = System.nanoTime();
+  }
+
+  /**
+   * Runs and measures a phase.
+   * @param <T> return type of the phase
+   * @param name the name of the phase
+   * @param fn the phase itself
+   * @return what the phase returned
+   */
+  public <T> T phase(String name, Supplier<T> fn) {
+    long t = System.nanoTime();
+    try {
+      return fn.get();
+    } finally {
+      record(name, System.nanoTime() - t);
+    }
+  }
+
+  /**
+   * Runs and measures a phase that has nothing to return.
+   * @param name the name of the phase
+   * @param fn the phase itself
+   */
+  public void phase(String name, Runnable fn) {
+    phase(name, () -> {
+      fn.run();
+      return null;
+    });
+  }
+
+  /**
+   * Runs and measures a phase in background, in parallel to whatever is going on in the caller thread.
+   * Failures are logged and passed on to the returned future.
+   * @param <T> return type of the phase
+   * @param name the name of the phase
+   * @param fn the phase itself
+   * @return the future completing when the phase is done
+   */
+  public <T> CompletableFuture<T> phaseAsync(String name, Supplier<T> fn) {
+    CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> phase(name, fn), BACKGROUND);
+    future.whenComplete((v, ex) -> {
+      if (ex != null) {
+        LOG.error(STARTUP_PREFIX+"Background phase {} failed", name, ex);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Records the total time from the creation of this timeline, as the "total" phase.
+   * Call this when the application is ready to serve.
+   */
+  public void ready() {
+    record(PHASE_TOTAL, System.nanoTime() - origin);
+  }
+
+  /**
+   * @return milliseconds passed since the creation of this timeline.
+   */
+  public long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+  }
+
+  /**
+   * @return all the phases recorded so far with their duration in milliseconds, in order of completion.
+   */
+  public synchronized Map<String, Long> phases() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(phases));
+  }
+
+  /**
+   * Records a phase that was measured elsewhere.
+   * @param name the name of the phase
+   * @param nanos how long it took, in nanoseconds
+   */
+  public void record(String name, long nanos) {
+    long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+    synchronized (this) {
+      phases.put(name, ms);
+    }
+    LOG.info(STARTUP_PREFIX+"Phase {} took {}ms", name, ms);
+    // A phase can be recorded more than once (ex. a restart of the server), last one wins.
+    String metric = METRIC_PREFIX + name;
+    metricRegistry.remove(metric);
+    metricRegistry.register(metric, (Gauge<Long>) () -> ms);
+  }
+
+}
@@ -24,9 +24,17 @@ import java.util.function.Supplier;
  */
 public class StatsDHelper {
 
-  final StatsDClient client;
+  final Supplier<StatsDClient> client;
 
   public StatsDHelper(StatsDClient client) {
+    this.client = () -> client;
+  }
+
+  /**
+   * The client is only requested at the first metric sent, use this with lazily initialized clients.
+   * @param client supplier of the statsd client
+   */
+  public StatsDHelper(Supplier<StatsDClient> client) {
     this.client = client;
   }
 
@@ -45,7 +53,7 @@ public class StatsDHelper {
       return fn.get();
     } finally {
       t = System.currentTimeMillis() - t;
-      client.gauge(metric, t);
+      client.get().gauge(metric, t);
     }
   }
 
@@ -61,7 +69,7 @@ public class StatsDHelper {
     try {
       return fn.get();
     } finally {
-      client.increment(metric);
+      client.get().increment(metric);
     }
   }
 
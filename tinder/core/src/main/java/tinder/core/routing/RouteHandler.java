@@ -0,0 +1,31 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import io.javalin.Context;
+
+/**
+ * Handler of a route receiving the path parameters already extracted, in the order they appear in the route.
+ * Used by the generated resources, which know the position of each parameter at compile time.
+ *
+ * @author Raffaele Ragni
+ */
+@FunctionalInterface
+public interface RouteHandler {
+
+  void handle(Context ctx, String[] params) throws Exception;
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree of routes by path segment, matching a path in a time that depends on its number of segments and not
+ * on the number of routes.
+ * Paths use '/' as separator, and each segment can be:
+ * - static, matched exactly, from a hash map of the node
+ * - a parameter, as ':name' or '{name}', matching any non empty segment
+ * - '*' as the last segment, matching all the rest of the path
+ * When more of them fit, static segments win over parameters and parameters over wildcards.
+ * Routes without parameters are also kept by their full path, matched with a single lookup.
+ *
+ * Trailing slashes are ignored, both in the routes and in the matched paths.
+ * Adding is meant to be done at startup: it is not safe to add routes while matching from other threads.
+ *
+ * @param <T> the values of the routes
+ * @author Raffaele Ragni
+ */
+public final class RouteTree<T> {
+
+  private static final String WILDCARD = "*";
+
+  private final Node<T> root = new Node<>();
+  private final Map<String, T> staticRoutes = new HashMap<>();
+  private int size;
+
+  /**
+   * Adds a route.
+   * @param path the path of the route
+   * @param value the value returned when the route matches
+   * @throws IllegalArgumentException if the same route is already present
+   */
+  public void add(String path, T value) {
+    if (path == null || value == null) {
+      throw new IllegalArgumentException("path and value are mandatory.");
+    }
+    List<String> names = new ArrayList<>();
+    Node<T> node = root;
+    List<String> segments = segments(path);
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      String name = paramName(segment);
+      if (WILDCARD.equals(segment)) {
+        if (i != segments.size() - 1) {
+          throw new IllegalArgumentException("Wildcard must be the last segment: " + path);
+        }
+        if (node.wildcard == null) {
+          node.wildcard = new Node<>();
+        }
+        node = node.wildcard;
+      } else if (name != null) {
+        names.add(name);
+        if (node.param == null) {
+          node.param = new Node<>();
+        }
+        node = node.param;
+      } else {
+        if (node.statics == null) {
+          node.statics = new HashMap<>();
+        }
+        node = node.statics.computeIfAbsent(segment, k -> new Node<>());
+      }
+    }
+    if (node.value != null) {
+      throw new IllegalArgumentException("Route already present: " + path);
+    }
+    node.value = value;
+    node.names = names.toArray(new String[names.size()]);
+    if (names.isEmpty() && !segments.contains(WILDCARD)) {
+      staticRoutes.put(String.join("/", segments), value);
+    }
+    size++;
+  }
+
+  /**
+   * @return the number of routes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Finds the route of a path.
+   * @param path the path to match
+   * @return the match, or null if no route matches
+   */
+  public Match<T> match(String path) {
+    int start = path.startsWith("/") ? 1 : 0;
+    int end = path.length();
+    while (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    // Fast path, no parameters to collect
+    T value = staticRoutes.get(start == 0 && end == path.length() ? path : path.substring(start, end));
+    if (value != null) {
+      return new Match<>(value, Match.NO_NAMES, Match.NO_NAMES);
+    }
+    return match(root, path, start, end, new ArrayList<>(4));
+  }
+
+  private static <T> Match<T> match(Node<T> node, String path, int start, int end, List<String> values) {
+    if (start >= end) {
+      if (node.value != null) {
+        return new Match<>(node.value, node.names, values.toArray(new String[values.size()]));
+      }
+      return node.wildcard == null || node.wildcard.value == null ? null : wildcard(node, values);
+    }
+    int next = path.indexOf('/', start);
+    if (next < 0 || next > end) {
+      next = end;
+    }
+    if (node.statics != null) {
+      Node<T> child = node.statics.get(path.substring(start, next));
+      if (child != null) {
+        Match<T> result = match(child, path, next + 1, end, values);
+        if (result != null) {
+          return result;
+        }
+      }
+    }
+    if (node.param != null && next > start) {
+      values.add(path.substring(start, next));
+      Match<T> result = match(node.param, path, next + 1, end, values);
+      if (result != null) {
+        return result;
+      }
+      values.remove(values.size() - 1);
+    }
+    if (node.wildcard != null && node.wildcard.value != null) {
+      return wildcard(node, values);
+    }
+    return null;
+  }
+
+  private static <T> Match<T> wildcard(Node<T> node, List<String> values) {
+    return new Match<>(node.wildcard.value, node.wildcard.names, values.toArray(new String[values.size()]));
+  }
+
+  private static List<String> segments(String path) {
+    List<String> result = new ArrayList<>();
+    for (String segment: path.split("/")) {
+      if (!segment.isEmpty()) {
+        result.add(segment);
+      }
+    }
+    return result;
+  }
+
+  private static String paramName(String segment) {
+    if (segment.startsWith(":")) {
+      return segment.substring(1);
+    }
+    if (segment.startsWith("{") && segment.endsWith("}")) {
+      // JAX-RS allows a regex after the name, the tree matches the whole segment anyway
+      String name = segment.substring(1, segment.length() - 1);
+      int colon = name.indexOf(':');
+      return (colon < 0 ? name : name.substring(0, colon)).trim();
+    }
+    return null;
+  }
+
+  private static final class Node<T> {
+    Map<String, Node<T>> statics;
+    Node<T> param;
+    Node<T> wildcard;
+    T value;
+    String[] names;
+  }
+
+  /**
+   * A matched route with the values of its parameters.
+   * @param <T> the value of the route
+   */
+  public static final class Match<T> {
+
+    static final String[] NO_NAMES = new String[0];
+
+    private final T value;
+    private final String[] names;
+    private final String[] params;
+
+    Match(T value, String[] names, String[] params) {
+      this.value = value;
+      this.names = names;
+      this.params = params;
+    }
+
+    /**
+     * @return the value of the route
+     */
+    public T value() {
+      return value;
+    }
+
+    /**
+     * @return the parameter values, in the order they appear in the route
+     */
+    public String[] params() {
+      return params;
+    }
+
+    /**
+     * @param name the name of the parameter
+     * @return its value, or null if the route does not have it
+     */
+    public String param(String name) {
+      int index = Arrays.asList(names).indexOf(name);
+      return index < 0 ? null : params[index];
+    }
+
+    /**
+     * @return the parameter values by name
+     */
+    public Map<String, String> paramMap() {
+      if (names.length == 0) {
+        return Collections.emptyMap();
+      }
+      Map<String, String> result = new LinkedHashMap<>();
+      for (int i = 0; i < names.length; i++) {
+        result.put(names[i], params[i]);
+      }
+      return result;
+    }
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import io.javalin.Context;
+import io.javalin.Handler;
+import io.javalin.Javalin;
+import io.javalin.JavalinEvent;
+import io.javalin.NotFoundResponse;
+import io.javalin.core.HandlerEntry;
+import io.javalin.core.HandlerType;
+import io.javalin.core.JavalinServlet;
+import io.javalin.core.util.ContextUtil;
+import io.javalin.staticfiles.ResourceHandler;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Router resolving the routes with a RouteTree per http method, instead of the javalin matcher that goes through
+ * all the routes of the method at every request.
+ * Javalin sees a single '*' handler per http method, added when the server starts: the routes added to javalin
+ * before that still come first. Requests not found here go on as javalin would have done without the router: to
+ * the javalin routes added after the start, then to the static files, and only then to a 404.
+ *
+ * Routes can be added with a RouteHandler, which gets the path parameters by position, or with a plain javalin
+ * Handler, for which ctx.pathParam() works as usual.
+ *
+ * @author Raffaele Ragni
+ */
+public final class Router implements Handler {
+
+  private static final String ROUTER_PREFIX = "Router :: ";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Router.class);
+
+  private final Javalin javalin;
+  private final Map<HandlerType, RouteTree<Route>> trees = new EnumMap<>(HandlerType.class);
+  private final Set<HandlerType> mounted = EnumSet.noneOf(HandlerType.class);
+  private boolean started;
+  // The matcher and static files of javalin, for the requests not found here
+  private volatile JavalinServlet fallback;
+
+  /**
+   * A router not attached to javalin, calls to handle() have to be done by the user.
+   */
+  public Router() {
+    this(null);
+  }
+
+  private Router(Javalin javalin) {
+    this.javalin = javalin;
+  }
+
+  /**
+   * Creates the router of a javalin instance, that will be attached when the server starts.
+   * @param javalin the javalin instance
+   * @return the router
+   */
+  public static Router install(Javalin javalin) {
+    Router router = new Router(javalin);
+    javalin.attribute(Router.class, router);
+    javalin.event(JavalinEvent.SERVER_STARTING, router::start);
+    return router;
+  }
+
+  /**
+   * @param javalin the javalin instance
+   * @return the router installed on the javalin instance, installing one if not there yet
+   */
+  public static synchronized Router of(Javalin javalin) {
+    Router router = javalin.attribute(Router.class);
+    return router == null ? install(javalin) : router;
+  }
+
+  /**
+   * @param <T> the type of the attribute
+   * @param type the class of the attribute
+   * @return the attribute of the javalin instance the router is attached to, null when not there
+   */
+  public <T> T attribute(Class<T> type) {
+    return javalin == null ? null : javalin.attribute(type);
+  }
+
+  /**
+   * Adds a route with the parameters passed by position.
+   * @param type the http method
+   * @param path the path, parameters as ':name' or '{name}'
+   * @param handler the handler
+   * @return this router
+   */
+  public Router add(HandlerType type, String path, RouteHandler handler) {
+    return add(type, path, new Route(handler, null));
+  }
+
+  /**
+   * Adds a route with a javalin handler.
+   * Path parameters are set into the context the javalin way, which costs some more than by position.
+   * @param type the http method
+   * @param path the path, parameters as ':name' or '{name}'
+   * @param handler the handler
+   * @return this router
+   */
+  public Router add(HandlerType type, String path, Handler handler) {
+    String javalinPath = path.replaceAll("\\{([^\\}:]*)(:[^\\}]*)?\\}", ":$1");
+    HandlerEntry entry = new HandlerEntry(type, javalinPath, handler, handler, true);
+    return add(type, path, new Route(null, entry));
+  }
+
+  private synchronized Router add(HandlerType type, String path, Route route) {
+    if (!type.isHttpMethod()) {
+      throw new IllegalArgumentException("Only http methods can be routed: " + type);
+    }
+    trees.computeIfAbsent(type, k -> new RouteTree<>()).add(path, route);
+    if (started) {
+      mount(type);
+    }
+    return this;
+  }
+
+  /**
+   * @param type the http method
+   * @param path the request path
+   * @return the matched route, or null
+   */
+  public RouteTree.Match<?> match(HandlerType type, String path) {
+    RouteTree<Route> tree = trees.get(type);
+    return tree == null ? null : tree.match(path);
+  }
+
+  @Override
+  public void handle(Context ctx) throws Exception {
+    String path = requestPath(ctx);
+    HandlerType type = HandlerType.valueOf(ctx.method());
+    RouteTree<Route> tree = trees.get(type);
+    RouteTree.Match<Route> match = tree == null ? null : tree.match(path);
+    if (match == null) {
+      fallThrough(ctx, type, path);
+      return;
+    }
+    Route route = match.value();
+    if (route.handler != null) {
+      route.handler.handle(ctx, match.params());
+    } else {
+      route.entry.getHandler().handle(ContextUtil.INSTANCE.update(ctx, route.entry, path));
+    }
+  }
+
+  private void fallThrough(Context ctx, HandlerType type, String path) throws Exception {
+    JavalinServlet servlet = fallback;
+    if (servlet == null) {
+      throw new NotFoundResponse();
+    }
+    // The javalin routes added after this one, only the requests not found here pay for their matching
+    for (HandlerEntry entry: servlet.getMatcher().findEntries(type, path)) {
+      if (entry.getRawHandler() != this) {
+        entry.getHandler().handle(ContextUtil.INSTANCE.update(ctx, entry, path));
+        return;
+      }
+    }
+    if (type == HandlerType.GET || type == HandlerType.HEAD) {
+      ResourceHandler resources = servlet.getResourceHandler();
+      if (resources != null && resources.handle(ctx.req, ctx.res)) {
+        return;
+      }
+      if (servlet.getSinglePageHandler().handle(ctx)) {
+        return;
+      }
+    }
+    throw new NotFoundResponse();
+  }
+
+  private static String requestPath(Context ctx) {
+    String uri = ctx.req.getRequestURI();
+    String contextPath = ctx.req.getContextPath();
+    return contextPath == null || contextPath.isEmpty() ? uri : uri.substring(contextPath.length());
+  }
+
+  private synchronized void start() {
+    started = true;
+    if (javalin != null) {
+      // Same matcher and static files of the javalin servlet, which does not expose its own
+      fallback = javalin.createServlet();
+    }
+    trees.keySet().forEach(this::mount);
+  }
+
+  private void mount(HandlerType type) {
+    if (javalin != null && mounted.add(type)) {
+      javalin.addHandler(type, "*", this);
+      LOG.info(ROUTER_PREFIX+"{} routes mounted", type);
+    }
+  }
+
+  private static final class Route {
+    final RouteHandler handler;
+    final HandlerEntry entry;
+    Route(RouteHandler handler, HandlerEntry entry) {
+      this.handler = handler;
+      this.entry = entry;
+    }
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.core.HandlerType;
+import io.javalin.core.util.ContextUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class AsyncResultsTest {
+
+  @Test
+  public void testSuccess() {
+    Context ctx = context();
+    AsyncResults.respond(ctx, CompletableFuture.completedFuture("ok"));
+
+    Assertions.assertEquals("\"ok\"", ctx.resultFuture().join());
+    verify(ctx.res).setContentType("application/json");
+    verify(ctx.res, never()).setStatus(500);
+  }
+
+  @Test
+  public void testNull() {
+    Context ctx = context();
+    AsyncResults.respond(ctx, CompletableFuture.completedFuture(null));
+
+    // As JsonStreaming writes it
+    Assertions.assertEquals("null", ctx.resultFuture().join());
+    verify(ctx.res).setContentType("application/json");
+  }
+
+  @Test
+  public void testNegotiation() throws IOException {
+    ContentNegotiation produces = ContentNegotiation.of(ContentNegotiation.JSON, ContentNegotiation.CBOR);
+    Context ctx = context("application/cbor");
+    AsyncResults.respond(ctx, CompletableFuture.completedFuture(Collections.singletonMap("a", 1)), 0, produces);
+
+    InputStream body = (InputStream) ctx.resultFuture().join();
+    Map<?, ?> map = ContentNegotiation.mapper(ContentNegotiation.CBOR).readValue(body, Map.class);
+    Assertions.assertEquals(1, map.get("a"));
+    verify(ctx.res).setContentType("application/cbor");
+
+    // Nothing acceptable, as for the plain results
+    ctx = context("application/xml");
+    AsyncResults.respond(ctx, CompletableFuture.completedFuture("ok"), 0, produces);
+    ctx.resultFuture().join();
+    verify(ctx.res).setStatus(ContentNegotiation.NOT_ACCEPTABLE);
+    verify(ctx.res).setContentType("application/json");
+  }
+
+  @Test
+  public void testLateCompletion() {
+    Context ctx = context();
+    CompletableFuture<Integer> stage = new CompletableFuture<>();
+    AsyncResults.respond(ctx, stage, 5000);
+
+    Assertions.assertFalse(ctx.resultFuture().isDone());
+    stage.complete(1);
+    Assertions.assertEquals("1", ctx.resultFuture().join());
+  }
+
+  @Test
+  public void testApiException() {
+    Context ctx = context();
+    CompletableFuture<String> stage = new CompletableFuture<>();
+    stage.completeExceptionally(new ApiException(ImmutableApiMessage.builder().code(404).message("Not here").build()));
+    AsyncResults.respond(ctx, stage);
+
+    Assertions.assertTrue(ctx.resultFuture().join().toString().contains("Not here"));
+    verify(ctx.res).setStatus(404);
+  }
+
+  @Test
+  public void testHttpException() {
+    Context ctx = context();
+    CompletableFuture<String> stage = new CompletableFuture<>();
+    stage.completeExceptionally(new CompletionException(new BadRequestResponse("Bad")));
+    AsyncResults.respond(ctx, stage);
+
+    ctx.resultFuture().join();
+    verify(ctx.res).setStatus(400);
+  }
+
+  @Test
+  public void testGenericError() {
+    Context ctx = context();
+    CompletableFuture<String> stage = new CompletableFuture<>();
+    stage.completeExceptionally(new IllegalStateException("Secret detail"));
+    AsyncResults.respond(ctx, stage);
+
+    String body = ctx.resultFuture().join().toString();
+    Assertions.assertFalse(body.contains("Secret detail"));
+    verify(ctx.res).setStatus(500);
+  }
+
+  @Test
+  public void testTimeout() {
+    Context ctx = context();
+    CompletableFuture<String> stage = new CompletableFuture<>();
+    AsyncResults.respond(ctx, stage, 10);
+
+    ctx.resultFuture().join();
+    verify(ctx.res).setStatus(AsyncResults.TIMEOUT_STATUS);
+    Assertions.assertTrue(stage.isCancelled());
+  }
+
+  @Test
+  public void testTimeoutRace() {
+    // Stages completing right at the timeout: the response is either the result or a 503, and with the 503 the stage
+    // is already done, cancelled unless it completed in the meantime.
+    for (int i = 0; i < 200; i++) {
+      Context ctx = context();
+      CompletableFuture<String> stage = new CompletableFuture<>();
+      AsyncResults.respond(ctx, stage, 1);
+      CompletableFuture.runAsync(() -> stage.complete("ok"));
+
+      String body = ctx.resultFuture().join().toString();
+      if (body.equals("\"ok\"")) {
+        Assertions.assertFalse(stage.isCancelled());
+      } else {
+        Assertions.assertTrue(stage.isDone());
+        verify(ctx.res).setStatus(AsyncResults.TIMEOUT_STATUS);
+      }
+    }
+  }
+
+  @Test
+  public void testUnwrap() {
+    Throwable cause = new IllegalStateException();
+    Assertions.assertSame(cause, AsyncResults.unwrap(new CompletionException(cause)));
+    Assertions.assertTrue(AsyncResults.unwrap(new CancellationException()) instanceof TimeoutException);
+  }
+
+  @Test
+  public void testStatusOf() {
+    Assertions.assertEquals(409, ApiExceptionHandler.statusOf(ImmutableApiMessage.builder().code(409).build()));
+    Assertions.assertEquals(500, ApiExceptionHandler.statusOf(ImmutableApiMessage.builder().code(1001).build()));
+    Assertions.assertEquals(500, ApiExceptionHandler.statusOf(ImmutableApiMessage.builder().build()));
+  }
+
+  static Context context() {
+    return context(null);
+  }
+
+  static Context context(String accept) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getHeader("Accept")).thenReturn(accept);
+    // Futures are accepted only in endpoint handlers
+    return ContextUtil.init(req, mock(HttpServletResponse.class),
+        "*", Collections.emptyMap(), Collections.emptyList(), HandlerType.GET);
+  }
+
+}
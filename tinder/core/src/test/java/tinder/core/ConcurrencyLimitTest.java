@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import tinder.patterns.limits.AdaptiveLimit;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class ConcurrencyLimitTest {
+
+  @Test
+  public void testLimit() {
+    AdaptiveLimit limit = AdaptiveLimit.of(1, 1, 10);
+
+    Context served = mock(Context.class);
+    ConcurrencyLimit.before(limit, served);
+    Assertions.assertEquals(1, limit.inFlight());
+
+    Context refused = mock(Context.class);
+    HttpResponseException ex = Assertions.assertThrows(HttpResponseException.class, () -> ConcurrencyLimit.before(limit, refused));
+    Assertions.assertEquals(ConcurrencyLimit.SERVICE_UNAVAILABLE, ex.getStatus());
+    // The refused one has nothing to give back
+    ConcurrencyLimit.after(limit, refused);
+    Assertions.assertEquals(1, limit.inFlight());
+
+    when(served.attribute(ConcurrencyLimit.ATTRIBUTE_START)).thenReturn(System.nanoTime());
+    when(served.status()).thenReturn(200);
+    ConcurrencyLimit.after(limit, served);
+    Assertions.assertEquals(0, limit.inFlight());
+  }
+
+  @Test
+  public void testErrors() {
+    AdaptiveLimit limit = AdaptiveLimit.of(100, 1, 100);
+    for (int i = 0; i < 50; i++) {
+      Context ctx = mock(Context.class);
+      ConcurrencyLimit.before(limit, ctx);
+      when(ctx.attribute(ConcurrencyLimit.ATTRIBUTE_START)).thenReturn(System.nanoTime());
+      when(ctx.status()).thenReturn(500);
+      ConcurrencyLimit.after(limit, ctx);
+    }
+    Assertions.assertEquals(90, limit.limit());
+  }
+
+}
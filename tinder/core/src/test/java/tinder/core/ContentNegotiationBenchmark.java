@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Serialization of a list of 100 api messages in the formats of the content negotiation.
+ * The payload size of each format is printed before running.
+ *
+ * @author Raffaele Ragni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentNegotiationBenchmark {
+
+  @Param({ContentNegotiation.JSON, ContentNegotiation.SMILE, ContentNegotiation.CBOR, ContentNegotiation.MSGPACK})
+  String mediaType;
+
+  ObjectMapper mapper;
+  List<ApiMessage> payload;
+  byte[] serialized;
+
+  @Setup
+  public void setup() throws JsonProcessingException {
+    mapper = ContentNegotiation.mapper(mediaType);
+    payload = payload();
+    serialized = mapper.writeValueAsBytes(payload);
+  }
+
+  @Benchmark
+  public byte[] write() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(payload);
+  }
+
+  @Benchmark
+  public ApiMessage[] read() throws IOException {
+    return mapper.readValue(serialized, ApiMessage[].class);
+  }
+
+  static List<ApiMessage> payload() {
+    List<ApiMessage> result = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      result.add(ImmutableApiMessage.builder()
+          .code(400 + i)
+          .message("Message number " + i + " of the payload")
+          .build());
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws RunnerException, JsonProcessingException {
+    for (String type: ContentNegotiation.of().mediaTypes()) {
+      System.out.println(type + ": " + ContentNegotiation.mapper(type).writeValueAsBytes(payload()).length + " bytes");
+    }
+    new Runner(new OptionsBuilder()
+        .include(ContentNegotiationBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
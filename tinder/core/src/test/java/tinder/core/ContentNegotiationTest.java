@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.FromStringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.Javalin;
+import io.javalin.core.HandlerType;
+import io.javalin.core.util.ContextUtil;
+import io.javalin.json.JavalinJackson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class ContentNegotiationTest {
+
+  @Test
+  public void testNegotiate() {
+    ContentNegotiation negotiation = ContentNegotiation.of("application/json", "application/x-msgpack");
+
+    Assertions.assertEquals(ContentNegotiation.JSON, negotiation.negotiate(null));
+    Assertions.assertEquals(ContentNegotiation.JSON, negotiation.negotiate("*/*"));
+    Assertions.assertEquals(ContentNegotiation.MSGPACK, negotiation.negotiate("application/x-msgpack"));
+    Assertions.assertEquals(ContentNegotiation.MSGPACK, negotiation.negotiate("application/json;q=0.5, application/x-msgpack"));
+    Assertions.assertEquals(ContentNegotiation.JSON, negotiation.negotiate("text/html, application/*;q=0.9"));
+    Assertions.assertNull(negotiation.negotiate("text/html"));
+    Assertions.assertNull(negotiation.negotiate("application/json;q=0"));
+
+    // All the jackson formats by default, json first
+    Assertions.assertEquals(Arrays.asList(ContentNegotiation.JSON, ContentNegotiation.SMILE, ContentNegotiation.CBOR, ContentNegotiation.MSGPACK),
+        ContentNegotiation.of().mediaTypes());
+    Assertions.assertEquals(Arrays.asList(ContentNegotiation.JSON, ContentNegotiation.CBOR),
+        ContentNegotiation.of("application/json; charset=utf-8, application/cbor").mediaTypes());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ContentNegotiation.of("application/xml"));
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    ContentNegotiation negotiation = ContentNegotiation.of();
+    List<String> value = Arrays.asList("a", "b");
+    for (String type: negotiation.mediaTypes()) {
+      Context out = context(new byte[0], null, type);
+      negotiation.write(out, value);
+      verify(out.res).setContentType(type);
+      byte[] bytes = readAll(out.resultStream());
+
+      Context in = context(bytes, type, null);
+      Assertions.assertEquals(value, negotiation.read(in, new TypeReference<List<String>>(){}), type);
+    }
+  }
+
+  @Test
+  public void testModules() throws IOException {
+    ObjectMapper previous = JavalinJackson.getObjectMapper();
+    SimpleModule module = new SimpleModule()
+        .addSerializer(Money.class, new ToStringSerializer())
+        .addDeserializer(Money.class, new FromStringDeserializer<Money>(Money.class) {
+          @Override
+          protected Money _deserialize(String value, DeserializationContext ctxt) {
+            return new Money(Long.parseLong(value));
+          }
+        });
+    try {
+      // Also a mapper given to javalin after the first use
+      ContentNegotiation.mapper(ContentNegotiation.CBOR);
+      JavalinJackson.configure(new ObjectMapper().registerModule(module));
+      ContentNegotiation negotiation = ContentNegotiation.of();
+      for (String type: negotiation.mediaTypes()) {
+        Context out = context(new byte[0], null, type);
+        negotiation.write(out, new Money(42));
+        byte[] bytes = readAll(out.resultStream());
+        Assertions.assertEquals("42", ContentNegotiation.mapper(type).readValue(bytes, String.class), type);
+
+        Context in = context(bytes, type, null);
+        Assertions.assertEquals(42, negotiation.read(in, Money.class).cents, type);
+      }
+    } finally {
+      JavalinJackson.configure(previous);
+    }
+  }
+
+  @Test
+  public void testText() {
+    ContentNegotiation negotiation = ContentNegotiation.of("text/plain");
+
+    Context out = context(new byte[0], null, null);
+    negotiation.write(out, 42);
+    Assertions.assertEquals("42", out.resultString());
+
+    Context in = context("hello".getBytes(StandardCharsets.UTF_8), "text/plain; charset=UTF-8", null);
+    Assertions.assertEquals("hello", negotiation.read(in, String.class));
+
+    // Text is read only into strings
+    HttpResponseException ex = Assertions.assertThrows(HttpResponseException.class,
+        () -> negotiation.read(context("1".getBytes(StandardCharsets.UTF_8), "text/plain", null), Integer.class));
+    Assertions.assertEquals(ContentNegotiation.UNSUPPORTED_MEDIA_TYPE, ex.getStatus());
+  }
+
+  @Test
+  public void testRefused() {
+    ContentNegotiation negotiation = ContentNegotiation.of("application/json");
+
+    HttpResponseException ex = Assertions.assertThrows(HttpResponseException.class,
+        () -> negotiation.write(context(new byte[0], null, "application/cbor"), "x"));
+    Assertions.assertEquals(ContentNegotiation.NOT_ACCEPTABLE, ex.getStatus());
+
+    ex = Assertions.assertThrows(HttpResponseException.class,
+        () -> negotiation.read(context(new byte[]{1}, "application/cbor", null), String.class));
+    Assertions.assertEquals(ContentNegotiation.UNSUPPORTED_MEDIA_TYPE, ex.getStatus());
+
+    // No content type is the first of the types
+    Assertions.assertEquals("x", negotiation.read(context("\"x\"".getBytes(StandardCharsets.UTF_8), null, null), String.class));
+  }
+
+  // Not a bean, only the module can write and read it
+  static final class Money {
+    final long cents;
+    Money(long cents) {
+      this.cents = cents;
+    }
+    @Override
+    public String toString() {
+      return String.valueOf(cents);
+    }
+  }
+
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  static Context context(byte[] body, String contentType, String accept) {
+    ByteArrayInputStream in = new ByteArrayInputStream(body);
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getContentLengthLong()).thenReturn((long) body.length);
+    when(req.getContentType()).thenReturn(contentType);
+    when(req.getHeader("Accept")).thenReturn(accept);
+    try {
+      when(req.getInputStream()).thenReturn(new ServletInputStream() {
+        @Override
+        public boolean isFinished() {
+          return in.available() == 0;
+        }
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+        @Override
+        public int read() throws IOException {
+          return in.read();
+        }
+      });
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return ContextUtil.init(req, mock(HttpServletResponse.class), "*", Collections.emptyMap(), Collections.emptyList(), HandlerType.POST, Javalin.create());
+  }
+
+}
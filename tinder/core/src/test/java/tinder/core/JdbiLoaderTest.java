@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import static java.util.Optional.of;
+import org.jdbi.v3.core.Jdbi;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -62,4 +63,18 @@ public class JdbiLoaderTest {
     JDBILoader.load("config1", of(reg));
   }
 
+  @Test
+  public void testLazy() {
+    MetricRegistry reg = new MetricRegistry();
+    Jdbi jdbi = JDBILoader.loadLazy("config1", of(reg));
+    // Pool is started only on first use
+    Assertions.assertEquals(Integer.valueOf(1), jdbi.withHandle(h -> h.createQuery("select 1").mapTo(Integer.class).findOnly()));
+
+    // Configuration is validated anyway at load time
+    IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      JDBILoader.loadLazy("none", of(reg));
+    });
+    Assertions.assertEquals("dataSource or dataSourceClassName or jdbcUrl is required.", ex.getMessage());
+  }
+
 }
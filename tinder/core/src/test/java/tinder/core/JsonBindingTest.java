@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.javalin.Context;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.verify;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class JsonBindingTest {
+
+  public static class Base {
+    public String base = "base";
+  }
+
+  public static class Extended extends Base {
+    public String extended = "extended";
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    JsonBinding<List<String>> list = JsonBinding.of(new TypeReference<List<String>>(){});
+    Context ctx = ContentNegotiationTest.context(new byte[0], null, null);
+    list.write(ctx, Arrays.asList("a", "b"));
+    Assertions.assertEquals("[\"a\",\"b\"]", body(ctx));
+    verify(ctx.res).setContentType("application/json");
+
+    // Final classes and containers get a single writer
+    Assertions.assertSame(list.writer(Arrays.asList("c")), list.writer(null));
+
+    // Other classes are written with the class of the value, subclass properties included
+    JsonBinding<Base> base = JsonBinding.of(Base.class);
+    ctx = ContentNegotiationTest.context(new byte[0], null, null);
+    base.write(ctx, new Extended());
+    Assertions.assertTrue(body(ctx).contains("\"extended\""));
+
+    ctx = ContentNegotiationTest.context(new byte[0], null, null);
+    base.write(ctx, null);
+    Assertions.assertEquals("null", body(ctx));
+  }
+
+  @Test
+  public void testRead() {
+    JsonBinding<ApiMessage> message = JsonBinding.of(ApiMessage.class);
+    Context ctx = ContentNegotiationTest.context("{\"code\":409,\"message\":\"Conflict\"}".getBytes(StandardCharsets.UTF_8), null, null);
+    ApiMessage read = message.read(ctx);
+    Assertions.assertEquals(409, read.code().intValue());
+    Assertions.assertEquals("Conflict", read.message());
+
+    Assertions.assertNull(message.read(ContentNegotiationTest.context(new byte[0], null, null)));
+  }
+
+  static String body(Context ctx) throws IOException {
+    return new String(ContentNegotiationTest.readAll(ctx.resultStream()), StandardCharsets.UTF_8);
+  }
+
+}
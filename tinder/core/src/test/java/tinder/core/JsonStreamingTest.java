@@ -0,0 +1,191 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.InternalServerErrorResponse;
+import io.javalin.Javalin;
+import io.javalin.core.util.ContextUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class JsonStreamingTest {
+
+  @Test
+  public void testArray() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Context ctx = context(out, false);
+    AtomicBoolean closed = new AtomicBoolean();
+
+    JsonStreaming.write(ctx, Stream.of("a", "b").onClose(() -> closed.set(true)));
+
+    Assertions.assertEquals("[\"a\",\"b\"]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    Assertions.assertTrue(closed.get());
+    verify(ctx.res).setContentType(JsonStreaming.CONTENT_TYPE_JSON);
+  }
+
+  @Test
+  public void testNewlineDelimited() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Context ctx = context(out, false);
+
+    JsonStreaming.write(ctx, Arrays.asList(1, 2, 3).iterator(), true);
+
+    Assertions.assertEquals("1\n2\n3\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    verify(ctx.res).setContentType(JsonStreaming.CONTENT_TYPE_NDJSON);
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonStreaming.write(context(out, false), Stream.empty());
+    Assertions.assertEquals("[]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testResultIterable() throws IOException {
+    Jdbi jdbi = JDBILoader.load("config1");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Context ctx = context(out, false);
+
+    jdbi.useHandle(h -> {
+      JsonStreaming.write(ctx, h.createQuery("select x from system_range(1, 3)").mapTo(Integer.class));
+    });
+
+    Assertions.assertEquals("[1,2,3]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testClientAbort() throws IOException {
+    CloseableIterator iterator = new CloseableIterator();
+    JsonStreaming.write(context(new ByteArrayOutputStream(), true), iterator, true);
+    // No exception, and the source was released anyway
+    Assertions.assertTrue(iterator.closed);
+  }
+
+  @Test
+  public void testSerializationFailure() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Context ctx = context(out, false);
+    CloseableIterator iterator = new CloseableIterator();
+
+    // Nothing went out yet: the buffer is dropped and the error is answered as any other
+    Assertions.assertThrows(InternalServerErrorResponse.class, () -> {
+      JsonStreaming.write(ctx, Stream.of("a", new Unserializable()));
+    });
+    verify(ctx.res).resetBuffer();
+
+    // Same for a failing source
+    IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class, () -> {
+      JsonStreaming.write(ctx, Stream.of("a", "b").map(s -> {
+        throw new IllegalStateException("source down");
+      }));
+    });
+    Assertions.assertEquals("source down", ex.getMessage());
+  }
+
+  @Test
+  public void testFailureAfterCommit() throws IOException {
+    Javalin javalin = Javalin.create().disableStartupBanner().start(0);
+    try {
+      // Enough items to send the 200 and part of the body before the failing one
+      javalin.get("/items", ctx -> JsonStreaming.write(ctx, Stream.concat(
+          Stream.generate(() -> "item").limit(100_000),
+          Stream.of(new Unserializable()))));
+
+      HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + javalin.port() + "/items")
+          .openConnection();
+      Assertions.assertEquals(200, connection.getResponseCode());
+      // The connection is cut, the body is not taken as complete
+      Assertions.assertThrows(IOException.class, () -> {
+        try (InputStream in = connection.getInputStream()) {
+          byte[] buffer = new byte[8192];
+          while (in.read(buffer) != -1) {
+            // Reading all
+          }
+        }
+      });
+    } finally {
+      javalin.stop();
+    }
+  }
+
+  public static class Unserializable {
+    public String getValue() {
+      throw new IllegalStateException("broken getter");
+    }
+  }
+
+  static class CloseableIterator implements Iterator<String>, AutoCloseable {
+    boolean closed;
+    @Override
+    public boolean hasNext() {
+      return true;
+    }
+    @Override
+    public String next() {
+      return "item";
+    }
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  static Context context(ByteArrayOutputStream out, boolean broken) throws IOException {
+    HttpServletResponse res = mock(HttpServletResponse.class);
+    when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+      }
+      @Override
+      public void write(int b) throws IOException {
+        if (broken) {
+          throw new IOException("Broken pipe");
+        }
+        out.write(b);
+      }
+    });
+    return ContextUtil.init(mock(HttpServletRequest.class), res);
+  }
+
+}
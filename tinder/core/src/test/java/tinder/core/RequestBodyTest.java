@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.javalin.BadRequestResponse;
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.Javalin;
+import io.javalin.core.HandlerType;
+import io.javalin.core.util.ContextUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RequestBodyTest {
+
+  @Test
+  public void testJson() {
+    RequestBody body = new RequestBody(1024);
+
+    Map<?, ?> map = body.json(context("{\"a\": 1}", -1), Map.class);
+    Assertions.assertEquals(1, map.get("a"));
+
+    List<Long> list = body.json(context("[1, 2]", -1), new TypeReference<List<Long>>(){});
+    Assertions.assertEquals(Arrays.asList(1L, 2L), list);
+
+    // No body, no value
+    Assertions.assertNull(body.json(context("", 0), Map.class));
+
+    HttpResponseException ex = Assertions.assertThrows(BadRequestResponse.class, () -> {
+      body.json(context("{\"a\": ", -1), Map.class);
+    });
+    Assertions.assertEquals(400, ex.getStatus());
+  }
+
+  @Test
+  public void testLimits() {
+    RequestBody body = new RequestBody(10);
+
+    // Refused upfront from the content length
+    HttpResponseException ex = Assertions.assertThrows(HttpResponseException.class, () -> {
+      body.string(context("x", 11));
+    });
+    Assertions.assertEquals(RequestBody.PAYLOAD_TOO_LARGE, ex.getStatus());
+
+    // Refused while reading when the length is not declared
+    ex = Assertions.assertThrows(HttpResponseException.class, () -> {
+      body.string(context("12345678901", -1));
+    });
+    Assertions.assertEquals(RequestBody.PAYLOAD_TOO_LARGE, ex.getStatus());
+
+    // Same for json, where jackson is in between
+    ex = Assertions.assertThrows(HttpResponseException.class, () -> {
+      body.json(context("[1,2,3,4,5,6]", -1), List.class);
+    });
+    Assertions.assertEquals(RequestBody.PAYLOAD_TOO_LARGE, ex.getStatus());
+
+    // And for beans, past the first buffer of the parser, where jackson wraps the failure
+    String bean = "{\"value\": 1, \"name\": \"" + String.join("", Collections.nCopies(20_000, "x")) + "\"}";
+    ex = Assertions.assertThrows(HttpResponseException.class, () -> {
+      new RequestBody(10_000).json(context(bean, -1), Bean.class);
+    });
+    Assertions.assertEquals(RequestBody.PAYLOAD_TOO_LARGE, ex.getStatus());
+    Assertions.assertEquals("x", new RequestBody(30_000).json(context(bean, -1), Bean.class).name.substring(0, 1));
+
+    Assertions.assertEquals("1234567890", body.string(context("1234567890", -1)));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new RequestBody(0));
+  }
+
+  @Test
+  public void testRaw() throws IOException {
+    RequestBody body = new RequestBody(1024);
+
+    Assertions.assertEquals("text", body.string(context("text", 4)));
+
+    byte[] bytes = new byte[4];
+    Assertions.assertEquals(4, body.stream(context("data", 4)).read(bytes));
+    Assertions.assertEquals("data", new String(bytes, StandardCharsets.UTF_8));
+
+    ByteBuffer buffer = ByteBuffer.allocate(4);
+    try (ReadableByteChannel channel = body.channel(context("chan", 4))) {
+      Assertions.assertEquals(4, channel.read(buffer));
+    }
+    Assertions.assertEquals("chan", new String(buffer.array(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testInstall() {
+    Javalin javalin = Javalin.create();
+    Assertions.assertEquals(RequestBody.DEFAULT_MAX_SIZE, RequestBody.of(context("", 0, javalin)).maxSize());
+    RequestBody.install(javalin, 5);
+    Assertions.assertEquals(5, RequestBody.of(context("", 0, javalin)).maxSize());
+  }
+
+  public static class Bean {
+    public int value;
+    public String name;
+  }
+
+  static Context context(String body, long contentLength) {
+    return context(body, contentLength, Javalin.create());
+  }
+
+  static Context context(String body, long contentLength, Javalin javalin) {
+    ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getContentLengthLong()).thenReturn(contentLength);
+    try {
+      when(req.getInputStream()).thenReturn(new ServletInputStream() {
+        @Override
+        public boolean isFinished() {
+          return in.available() == 0;
+        }
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+        @Override
+        public int read() throws IOException {
+          return in.read();
+        }
+      });
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return ContextUtil.init(req, mock(HttpServletResponse.class), "*", Collections.emptyMap(), Collections.emptyList(), HandlerType.POST, javalin);
+  }
+
+}
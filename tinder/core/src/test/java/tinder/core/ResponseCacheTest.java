@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import com.codahale.metrics.MetricRegistry;
+import io.javalin.Context;
+import io.javalin.core.util.ContextUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import tinder.core.routing.RouteHandler;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class ResponseCacheTest {
+
+  @Test
+  public void testHitAndMiss() throws Exception {
+    MetricRegistry registry = new MetricRegistry();
+    ResponseCache cache = ResponseCache.of(registry, "test", 60_000, 10);
+    AtomicInteger calls = new AtomicInteger();
+    RouteHandler handler = cache.cached((ctx, params) -> {
+      calls.incrementAndGet();
+      ctx.contentType("text/plain");
+      ctx.result("hello");
+    });
+
+    Context first = context("/a", null, null, null, 200);
+    handler.handle(first, new String[0]);
+    Context second = context("/a", null, null, null, 200);
+    handler.handle(second, new String[0]);
+
+    Assertions.assertEquals(1, calls.get());
+    Assertions.assertEquals("hello", body(first));
+    Assertions.assertEquals("hello", body(second));
+    verify(second.res).setContentType("text/plain");
+    verify(second.res).setHeader(ResponseCache.HEADER_ETAG, ResponseCache.etag("hello".getBytes(StandardCharsets.UTF_8)));
+    Assertions.assertEquals(1, registry.counter(ResponseCache.METRIC_PREFIX + "test.hits").getCount());
+    Assertions.assertEquals(1, registry.counter(ResponseCache.METRIC_PREFIX + "test.misses").getCount());
+  }
+
+  @Test
+  public void testKey() throws Exception {
+    ResponseCache cache = ResponseCache.of(60_000, 10, "X-Tenant");
+    AtomicInteger calls = new AtomicInteger();
+    RouteHandler handler = cache.cached((ctx, params) -> ctx.result(String.valueOf(calls.incrementAndGet())));
+
+    handler.handle(context("/a", null, null, null, 200), new String[0]);
+    handler.handle(context("/a", "x=1", null, null, 200), new String[0]);
+    handler.handle(context("/a", "x=1", "t1", null, 200), new String[0]);
+    handler.handle(context("/b", null, null, null, 200), new String[0]);
+    Context again = context("/a", "x=1", "t1", null, 200);
+    handler.handle(again, new String[0]);
+
+    Assertions.assertEquals(4, calls.get());
+    Assertions.assertEquals(4, cache.size());
+    Assertions.assertEquals("3", body(again));
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    ResponseCache cache = ResponseCache.of(60_000, 10);
+    RouteHandler handler = cache.cached((ctx, params) -> ctx.result("hello"));
+    String etag = ResponseCache.etag("hello".getBytes(StandardCharsets.UTF_8));
+
+    // Also on the miss, the response is there to compare with
+    Context miss = context("/a", null, null, etag, 200);
+    handler.handle(miss, new String[0]);
+    verify(miss.res).setStatus(ResponseCache.NOT_MODIFIED);
+    Assertions.assertEquals("", body(miss));
+
+    Context hit = context("/a", null, null, "\"other\", W/" + etag, 200);
+    handler.handle(hit, new String[0]);
+    verify(hit.res).setStatus(ResponseCache.NOT_MODIFIED);
+
+    Context changed = context("/a", null, null, "\"other\"", 200);
+    handler.handle(changed, new String[0]);
+    verify(changed.res).setStatus(ResponseCache.OK);
+    Assertions.assertEquals("hello", body(changed));
+  }
+
+  @Test
+  public void testNotCacheable() throws Exception {
+    ResponseCache cache = ResponseCache.of(60_000, 10);
+    AtomicInteger calls = new AtomicInteger();
+    RouteHandler handler = cache.cached((ctx, params) -> {
+      calls.incrementAndGet();
+      ctx.result("error");
+    });
+
+    handler.handle(context("/a", null, null, null, 500), new String[0]);
+    handler.handle(context("/a", null, null, null, 500), new String[0]);
+    Assertions.assertEquals(2, calls.get());
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testExpiryAndEviction() throws Exception {
+    ResponseCache cache = ResponseCache.of(50, 2);
+    AtomicInteger calls = new AtomicInteger();
+    RouteHandler handler = cache.cached((ctx, params) -> ctx.result(String.valueOf(calls.incrementAndGet())));
+
+    handler.handle(context("/a", null, null, null, 200), new String[0]);
+    TimeUnit.MILLISECONDS.sleep(100);
+    Context expired = context("/a", null, null, null, 200);
+    handler.handle(expired, new String[0]);
+    Assertions.assertEquals("2", body(expired));
+
+    handler.handle(context("/b", null, null, null, 200), new String[0]);
+    handler.handle(context("/c", null, null, null, 200), new String[0]);
+    Assertions.assertEquals(2, cache.size());
+    // The oldest one went away
+    Context evicted = context("/a", null, null, null, 200);
+    handler.handle(evicted, new String[0]);
+    Assertions.assertEquals("5", body(evicted));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ResponseCache.of(0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ResponseCache.of(1, 0));
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    ResponseCache cache = ResponseCache.of(60_000, 10);
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RouteHandler handler = cache.cached((ctx, params) -> {
+      calls.incrementAndGet();
+      entered.countDown();
+      release.await();
+      ctx.result("slow");
+    });
+
+    List<Context> contexts = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Context ctx = context("/a", null, null, null, 200);
+      contexts.add(ctx);
+      threads.add(new Thread(() -> {
+        try {
+          handler.handle(ctx, new String[0]);
+        } catch (Exception ex) {
+          throw new IllegalStateException(ex);
+        }
+      }));
+    }
+    threads.get(0).start();
+    entered.await();
+    threads.stream().skip(1).forEach(Thread::start);
+    TimeUnit.MILLISECONDS.sleep(100);
+    release.countDown();
+    for (Thread t: threads) {
+      t.join();
+    }
+
+    Assertions.assertEquals(1, calls.get());
+    for (Context ctx: contexts) {
+      Assertions.assertEquals("slow", body(ctx));
+    }
+  }
+
+  static String body(Context ctx) throws IOException {
+    return new String(ContentNegotiationTest.readAll(ctx.resultStream()), StandardCharsets.UTF_8);
+  }
+
+  static Context context(String path, String query, String tenant, String ifNoneMatch, int status) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getRequestURI()).thenReturn(path);
+    when(req.getQueryString()).thenReturn(query);
+    when(req.getHeader("X-Tenant")).thenReturn(tenant);
+    when(req.getHeader(ResponseCache.HEADER_IF_NONE_MATCH)).thenReturn(ifNoneMatch);
+    HttpServletResponse res = mock(HttpServletResponse.class);
+    when(res.getStatus()).thenReturn(status);
+    when(res.getContentType()).thenReturn("text/plain");
+    return ContextUtil.init(req, res);
+  }
+
+}
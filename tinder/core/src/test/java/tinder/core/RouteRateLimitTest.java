@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import io.javalin.Context;
+import io.javalin.HttpResponseException;
+import io.javalin.core.util.ContextUtil;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import tinder.core.auth.AuthenticationFilter;
+import tinder.core.routing.RouteHandler;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RouteRateLimitTest {
+
+  @Test
+  public void testRoute() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    RouteHandler handler = RouteRateLimit.of(2, 60_000, RateLimited.Key.ROUTE, "")
+        .limited((ctx, params) -> calls.incrementAndGet());
+
+    handler.handle(context("1.1.1.1", null, null), new String[0]);
+    handler.handle(context("2.2.2.2", null, null), new String[0]);
+    Context limited = context("3.3.3.3", null, null);
+    HttpResponseException ex = Assertions.assertThrows(HttpResponseException.class, () -> handler.handle(limited, new String[0]));
+
+    Assertions.assertEquals(RouteRateLimit.TOO_MANY_REQUESTS, ex.getStatus());
+    Assertions.assertEquals(2, calls.get());
+    verify(limited.res).setHeader(RouteRateLimit.HEADER_RETRY_AFTER, "30");
+  }
+
+  @Test
+  public void testKeys() throws Exception {
+    RouteRateLimit ip = RouteRateLimit.of(1, 60_000, RateLimited.Key.IP, "");
+    ip.check(context("1.1.1.1", null, null));
+    ip.check(context("2.2.2.2", null, null));
+    Assertions.assertThrows(HttpResponseException.class, () -> ip.check(context("1.1.1.1", null, null)));
+
+    RouteRateLimit header = RouteRateLimit.of(1, 60_000, RateLimited.Key.HEADER, "X-Api-Key");
+    header.check(context("1.1.1.1", "k1", null));
+    header.check(context("1.1.1.1", "k2", null));
+    // Without the header it goes by ip
+    header.check(context("1.1.1.1", null, null));
+    Assertions.assertThrows(HttpResponseException.class, () -> header.check(context("2.2.2.2", "k1", null)));
+    Assertions.assertThrows(HttpResponseException.class, () -> header.check(context("1.1.1.1", null, null)));
+
+    RouteRateLimit user = RouteRateLimit.of(1, 60_000, RateLimited.Key.USER, "");
+    user.check(context("1.1.1.1", null, "a@b.c"));
+    user.check(context("1.1.1.1", null, "d@e.f"));
+    Assertions.assertThrows(HttpResponseException.class, () -> user.check(context("2.2.2.2", null, "a@b.c")));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RouteRateLimit.of(1, 1, RateLimited.Key.HEADER, ""));
+  }
+
+  static Context context(String ip, String apiKey, String user) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getRemoteAddr()).thenReturn(ip);
+    when(req.getHeader("X-Api-Key")).thenReturn(apiKey);
+    when(req.getAttribute(AuthenticationFilter.REQ_USER)).thenReturn(user);
+    return ContextUtil.init(req, mock(HttpServletResponse.class));
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Conversion of a path parameter: the old reflective lookup at each call, the cached handle of the converter
+ * (used for custom types) and the direct call that the resource processor generates for the known types.
+ *
+ * @author Raffaele Ragni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeConverterBenchmark {
+
+  String value = "12345";
+  TypeConverter converter = new TypeConverter() {};
+
+  @Benchmark
+  public Long reflective() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    Method valueOf = Long.class.getMethod("valueOf", String.class);
+    return (Long) valueOf.invoke(null, value);
+  }
+
+  @Benchmark
+  public Long cachedHandle() {
+    return converter.fromString(value, Long.class);
+  }
+
+  @Benchmark
+  public Long generated() {
+    return value == null ? null : Long.valueOf(value);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(TypeConverterBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
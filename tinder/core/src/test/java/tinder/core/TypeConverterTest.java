@@ -16,6 +16,7 @@
 package tinder.core;
 
 import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -48,6 +49,19 @@ public class TypeConverterTest {
     Assertions.assertTrue(ex.getMessage().contains("NoSuchMethodException"));
     Assertions.assertTrue(ex.getMessage().contains("valueOf(java.lang.String)"));
 
+    // Failures are cached, but still reported every time
+    ex = Assertions.assertThrows(RuntimeException.class, () -> {
+      converter.fromString("0.1", BigDecimal.class);
+    });
+    Assertions.assertTrue(ex.getMessage().contains("NoSuchMethodException"));
+
+    // Errors from the conversion itself come through as they are
+    Assertions.assertThrows(NumberFormatException.class, () -> {
+      converter.fromString("x", Integer.class);
+    });
+
+    Assertions.assertEquals(TimeUnit.SECONDS, converter.fromString("SECONDS", TimeUnit.class));
+
   }
 
 }
@@ -29,6 +29,7 @@ import tinder.core.modules.ImmutableTinderConfiguration;
 import tinder.core.modules.JettyServerCreator;
 import tinder.core.modules.TinderConfiguration;
 import tinder.core.modules.TinderModule;
+import tinder.core.routing.Router;
 
 /**
  *
@@ -57,6 +58,8 @@ public class RoutesTest {
 
     Jdbi jdbi = module.jdbi(configuration);
 
+    Assertions.assertNotNull(module.javalin().attribute(Router.class));
+
     // Test with the http endpoints now
 
     AuthenticationFilter filter = new AuthenticationFilter(module.javalin(), jdbi);
@@ -97,6 +100,16 @@ public class RoutesTest {
         .useHealtCheckEndpoint(false)
         .build());
 
+    // Fast startup: nothing is started until javalin does
+    TinderConfiguration fastConfiguration = ImmutableTinderConfiguration.builder()
+        .useFastStartup(true)
+        .useJacksonAfterburner(true)
+        .build();
+    TinderModule fastModule = new TinderModule(fastConfiguration);
+    Assertions.assertNotNull(fastModule.jdbi(fastConfiguration));
+    Assertions.assertNotNull(fastModule.statsDClient());
+    Assertions.assertNotNull(fastModule.startupTimeline());
+
     // Test with no server
     new TinderModule(ImmutableTinderConfiguration.builder()
         .useServer(false)
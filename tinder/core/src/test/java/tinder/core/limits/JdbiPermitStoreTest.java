@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.limits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import liquibase.exception.LiquibaseException;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tinder.core.JDBILoader;
+import tinder.patterns.limits.LeasedRateLimiter;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class JdbiPermitStoreTest {
+
+  @Test
+  public void testLease() throws LiquibaseException {
+    Jdbi jdbi = JDBILoader.load();
+    JdbiPermitStore store = store(jdbi);
+    String key = UUID.randomUUID().toString();
+    Assertions.assertEquals(150, store.lease(key, 1, 150, 200));
+    Assertions.assertEquals(50, store.lease(key, 1, 100, 200));
+    Assertions.assertEquals(0, store.lease(key, 1, 100, 200));
+
+    // A new window, and the old one goes away
+    Assertions.assertEquals(100, store.lease(key, 2, 100, 200));
+    Assertions.assertEquals(1, rows(jdbi, key));
+  }
+
+  @Test
+  public void testNodes() throws InterruptedException, LiquibaseException {
+    Jdbi jdbi = JDBILoader.load();
+    JdbiPermitStore store = store(jdbi);
+    // Four nodes, each with its own limiter on the same store, and a thread calling it
+    String key = UUID.randomUUID().toString();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    AtomicInteger admitted = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      LeasedRateLimiter node = LeasedRateLimiter.of(store, key, 200, 1, TimeUnit.DAYS, 20, executor);
+      threads.add(new Thread(() -> {
+        // Until the node is told to wait for the next window
+        long wait;
+        while ((wait = node.tryAcquire(1)) < TimeUnit.SECONDS.toNanos(1)) {
+          if (wait == 0) {
+            admitted.incrementAndGet();
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread t: threads) {
+      t.join();
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    Assertions.assertEquals(200L, jdbi.withHandle(h -> h
+        .createQuery("SELECT used FROM tinder_permits WHERE permit_key = :key")
+        .bind("key", key)
+        .mapTo(Long.class)
+        .findOnly()).longValue());
+    Assertions.assertEquals(200, admitted.get());
+  }
+
+  static JdbiPermitStore store(Jdbi jdbi) throws LiquibaseException {
+    JdbiPermitStore store = new JdbiPermitStore(jdbi);
+    store.upgradeByLiquibase();
+    return store;
+  }
+
+  static int rows(Jdbi jdbi, String key) {
+    return jdbi.withHandle(h -> h
+        .createQuery("SELECT count(*) FROM tinder_permits WHERE permit_key = :key")
+        .bind("key", key)
+        .mapTo(Integer.class)
+        .findOnly());
+  }
+
+}
@@ -33,6 +33,9 @@ public class TinderConfigurationTest {
     Assertions.assertEquals(true, configuration.useServer());
     Assertions.assertEquals(8080, configuration.httpPort());
     Assertions.assertEquals("jdbi", configuration.jdbiInstanceName());
+    Assertions.assertEquals(false, configuration.useFastStartup());
+    Assertions.assertEquals(10L * 1024 * 1024, configuration.httpMaxBodySize());
+    Assertions.assertEquals(false, configuration.useJacksonAfterburner());
   }
 
 }
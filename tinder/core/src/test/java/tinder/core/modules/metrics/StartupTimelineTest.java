@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.modules.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class StartupTimelineTest {
+
+  @Test
+  public void testPhases() {
+    MetricRegistry registry = new MetricRegistry();
+    StartupTimeline timeline = new StartupTimeline(registry);
+
+    Assertions.assertEquals("a", timeline.phase("first", () -> "a"));
+    timeline.phase("second", () -> {});
+    CompletableFuture<String> async = timeline.phaseAsync("third", () -> "c");
+    Assertions.assertEquals("c", async.join());
+    timeline.ready();
+
+    Assertions.assertArrayEquals(
+        new Object[]{"first", "second", "third", StartupTimeline.PHASE_TOTAL},
+        timeline.phases().keySet().toArray());
+    Assertions.assertTrue(registry.getGauges().containsKey(StartupTimeline.METRIC_PREFIX + "first"));
+    Assertions.assertTrue(registry.getGauges().containsKey(StartupTimeline.METRIC_PREFIX + StartupTimeline.PHASE_TOTAL));
+
+    // Recording again replaces the previous value
+    timeline.record("first", 5_000_000L);
+    Assertions.assertEquals(Long.valueOf(5), timeline.phases().get("first"));
+    Assertions.assertEquals(5L, registry.getGauges().get(StartupTimeline.METRIC_PREFIX + "first").getValue());
+  }
+
+  @Test
+  public void testFailingPhases() {
+    StartupTimeline timeline = new StartupTimeline(new MetricRegistry());
+
+    Assertions.assertThrows(IllegalStateException.class, () -> {
+      timeline.phase("sync", () -> { throw new IllegalStateException(); });
+    });
+    // Still recorded, it helps finding out what went wrong
+    Assertions.assertTrue(timeline.phases().containsKey("sync"));
+
+    CompletableFuture<Object> async = timeline.phaseAsync("async", () -> { throw new IllegalStateException(); });
+    CompletionException ex = Assertions.assertThrows(CompletionException.class, async::join);
+    Assertions.assertTrue(ex.getCause() instanceof IllegalStateException);
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RouteTreeTest {
+
+  @Test
+  public void testStatic() {
+    RouteTree<String> tree = new RouteTree<>();
+    tree.add("/", "root");
+    tree.add("/a/b", "ab");
+    tree.add("/a/c/", "ac");
+
+    Assertions.assertEquals("root", tree.match("/").value());
+    Assertions.assertEquals("ab", tree.match("/a/b").value());
+    Assertions.assertEquals("ab", tree.match("/a/b/").value());
+    Assertions.assertEquals("ac", tree.match("/a/c").value());
+    Assertions.assertNull(tree.match("/a"));
+    Assertions.assertNull(tree.match("/a/b/c"));
+    Assertions.assertEquals(3, tree.size());
+  }
+
+  @Test
+  public void testParams() {
+    RouteTree<String> tree = new RouteTree<>();
+    tree.add("/items/:id", "item");
+    tree.add("/items/{group}/{id: [0-9]+}", "grouped");
+
+    RouteTree.Match<String> match = tree.match("/items/10");
+    Assertions.assertEquals("item", match.value());
+    Assertions.assertEquals("10", match.param("id"));
+    Assertions.assertArrayEquals(new String[]{"10"}, match.params());
+
+    match = tree.match("/items/a/20");
+    Assertions.assertEquals("grouped", match.value());
+    Assertions.assertEquals("a", match.param("group"));
+    Assertions.assertEquals("20", match.paramMap().get("id"));
+    Assertions.assertNull(match.param("other"));
+
+    // Parameters do not match empty segments
+    Assertions.assertNull(tree.match("/items//20"));
+  }
+
+  @Test
+  public void testPriority() {
+    RouteTree<String> tree = new RouteTree<>();
+    tree.add("/files/*", "wildcard");
+    tree.add("/files/:name", "param");
+    tree.add("/files/latest", "static");
+    tree.add("/files/latest/:version/info", "deep");
+
+    Assertions.assertEquals("static", tree.match("/files/latest").value());
+    Assertions.assertEquals("param", tree.match("/files/other").value());
+    Assertions.assertEquals("wildcard", tree.match("/files/some/deep/file").value());
+    // Backtracks from the static segment when the rest does not match
+    Assertions.assertEquals("wildcard", tree.match("/files/latest/1/other").value());
+    Assertions.assertEquals("1", tree.match("/files/latest/1/info").param("version"));
+  }
+
+  @Test
+  public void testInvalid() {
+    RouteTree<String> tree = new RouteTree<>();
+    tree.add("/a/:id", "a");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tree.add("/a/:other", "b"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tree.add("/a/*/b", "c"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> tree.add(null, "d"));
+  }
+
+}
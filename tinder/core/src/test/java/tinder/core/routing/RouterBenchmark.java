@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import io.javalin.Handler;
+import io.javalin.core.HandlerEntry;
+import io.javalin.core.HandlerType;
+import io.javalin.core.PathMatcher;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Resolution of a request path among 500 routes (100 resources with 5 routes each): the javalin matcher, that
+ * goes through all the routes of the method, and the route tree.
+ * Both include the extraction of the path parameters, which javalin does after the match.
+ *
+ * @author Raffaele Ragni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+  static final int RESOURCES = 100;
+  static final String[] ROUTES = {
+    "/resource%d/items",
+    "/resource%d/items/:id",
+    "/resource%d/items/:id/children",
+    "/resource%d/items/:id/children/:child",
+    "/resource%d/status"
+  };
+
+  String staticPath = "/resource75/status";
+  String paramsPath = "/resource75/items/42/children/7";
+
+  PathMatcher matcher;
+  RouteTree<Handler> tree;
+
+  @Setup
+  public void setup() {
+    Handler handler = ctx -> {};
+    matcher = new PathMatcher(true);
+    tree = new RouteTree<>();
+    for (int i = 0; i < RESOURCES; i++) {
+      for (String route: ROUTES) {
+        String path = String.format(route, i);
+        matcher.add(new HandlerEntry(HandlerType.GET, path, handler, handler, true));
+        tree.add(path, handler);
+      }
+    }
+  }
+
+  @Benchmark
+  public Map<String, String> javalinStatic() {
+    return javalin(staticPath);
+  }
+
+  @Benchmark
+  public Map<String, String> javalinParams() {
+    return javalin(paramsPath);
+  }
+
+  @Benchmark
+  public String[] treeStatic() {
+    return tree.match(staticPath).params();
+  }
+
+  @Benchmark
+  public String[] treeParams() {
+    return tree.match(paramsPath).params();
+  }
+
+  private Map<String, String> javalin(String path) {
+    List<HandlerEntry> entries = matcher.findEntries(HandlerType.GET, path);
+    return entries.get(0).extractPathParams(path);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RouterBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.core.routing;
+
+import io.javalin.Context;
+import io.javalin.Javalin;
+import io.javalin.NotFoundResponse;
+import io.javalin.core.HandlerType;
+import io.javalin.core.util.ContextUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RouterTest {
+
+  @Test
+  public void testHandle() throws Exception {
+    AtomicReference<String> called = new AtomicReference<>();
+    Router router = new Router()
+        .add(HandlerType.GET, "/items/{id}", (ctx, params) -> called.set("route " + params[0]))
+        .add(HandlerType.GET, "/javalin/:id", ctx -> called.set("javalin " + ctx.pathParam("id")));
+
+    router.handle(context("GET", "/items/1"));
+    Assertions.assertEquals("route 1", called.get());
+
+    router.handle(context("GET", "/javalin/2"));
+    Assertions.assertEquals("javalin 2", called.get());
+
+    Assertions.assertThrows(NotFoundResponse.class, () -> router.handle(context("GET", "/other")));
+    Assertions.assertThrows(NotFoundResponse.class, () -> router.handle(context("POST", "/items/1")));
+    Assertions.assertNotNull(router.match(HandlerType.GET, "/items/3"));
+  }
+
+  @Test
+  public void testInstall() {
+    Javalin javalin = Javalin.create();
+    Router router = Router.of(javalin);
+    Assertions.assertSame(router, Router.of(javalin));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> router.add(HandlerType.BEFORE, "/", (ctx, params) -> {}));
+  }
+
+  @Test
+  public void testMounted() throws IOException {
+    Javalin javalin = Javalin.create().disableStartupBanner().enableStaticFiles("/routing-static");
+    Router router = Router.of(javalin)
+        .add(HandlerType.GET, "/items/{id}", (ctx, params) -> ctx.result("item " + params[0]))
+        .add(HandlerType.GET, "/items/new", (ctx, params) -> ctx.result("new item"))
+        .add(HandlerType.POST, "/items", (ctx, params) -> ctx.result("created"));
+    javalin.get("/plain", ctx -> ctx.result("plain"));
+    javalin.start(0);
+    try {
+      // Added after the start, as the archetype does with its auth routes
+      javalin.post("/register", ctx -> ctx.result("registered"));
+      javalin.get("/status", ctx -> ctx.result("up"));
+      router.add(HandlerType.GET, "/late/:id", ctx -> ctx.result("late " + ctx.pathParam("id")));
+
+      Assertions.assertEquals("item 1", call(javalin, "GET", "/items/1"));
+      Assertions.assertEquals("new item", call(javalin, "GET", "/items/new"));
+      Assertions.assertEquals("plain", call(javalin, "GET", "/plain"));
+      Assertions.assertEquals("created", call(javalin, "POST", "/items"));
+      Assertions.assertEquals("registered", call(javalin, "POST", "/register"));
+      Assertions.assertEquals("up", call(javalin, "GET", "/status"));
+      Assertions.assertEquals("late 2", call(javalin, "GET", "/late/2"));
+      Assertions.assertEquals("hello", call(javalin, "GET", "/hello.txt"));
+      Assertions.assertEquals("404", call(javalin, "GET", "/other"));
+      Assertions.assertEquals("404", call(javalin, "POST", "/items/1"));
+      // Javalin only sees the catch-all of each method, the routes are matched by the tree alone
+      Assertions.assertTrue(javalin.getHandlerMetaInfo().stream()
+          .filter(info -> info.getHandler() == router)
+          .allMatch(info -> info.getPath().equals("*")));
+    } finally {
+      javalin.stop();
+    }
+  }
+
+  // The body, or the status when not a 200
+  private static String call(Javalin javalin, String method, String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + javalin.port() + path).openConnection();
+    connection.setRequestMethod(method);
+    if (connection.getResponseCode() != 200) {
+      return String.valueOf(connection.getResponseCode());
+    }
+    try (InputStream in = connection.getInputStream()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  static Context context(String method, String path) {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getMethod()).thenReturn(method);
+    when(req.getRequestURI()).thenReturn(path);
+    when(req.getContextPath()).thenReturn("");
+    return ContextUtil.init(req, mock(HttpServletResponse.class),
+        "*", Collections.emptyMap(), Collections.emptyList(), HandlerType.valueOf(method));
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the calls in flight at the same time, to what the backend can take.
+ *
+ * Unlike a static limit, this one moves with the latency of the calls (as in TCP Vegas): the lowest latency seen is
+ * taken as the one with no queueing, and from how much the current latency is above it, the limit estimates how many
+ * calls are waiting in a queue of the backend rather than being served. With almost no queue the limit grows, with a
+ * long one it shrinks. Calls that fail (timeouts, errors) are a sign of overload as well, and cut the limit by a tenth
+ * at once (as in AIMD).
+ *
+ * The limit is changed once per window of samples, about half the calls of the limit, using their average latency.
+ * It does not grow while it is not used: when less than half of it is in flight, latency says nothing about more.
+ * Calls over the limit are not queued, they are refused right away: queueing them is what the limit avoids.
+ *
+ * A call takes its place with tryAcquire() and must give it back with exactly one of release(), drop() or ignore().
+ *
+ * @author Raffaele Ragni
+ */
+public final class AdaptiveLimit {
+
+  private static final double BACKOFF = 0.9;
+  private static final int MIN_WINDOW = 10;
+
+  private final int minLimit;
+  private final int maxLimit;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile int limit;
+
+  // Guarded by this
+  private double estimate;
+  private long minRtt = Long.MAX_VALUE;
+  private long windowRtt;
+  private int windowSamples;
+  private int windowInFlight;
+  private boolean windowDropped;
+
+  private AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit <= 0) {
+      throw new IllegalArgumentException("minLimit must be greater than 0.");
+    }
+    if (maxLimit < minLimit) {
+      throw new IllegalArgumentException("maxLimit must not be less than minLimit.");
+    }
+    if (initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit.");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = initialLimit;
+    this.estimate = initialLimit;
+  }
+
+  /**
+   * @param initialLimit the limit to start from, before any latency is known
+   * @param minLimit the lowest the limit can go
+   * @param maxLimit the highest the limit can go
+   * @return the limit
+   */
+  public static AdaptiveLimit of(int initialLimit, int minLimit, int maxLimit) {
+    return new AdaptiveLimit(initialLimit, minLimit, maxLimit);
+  }
+
+  /**
+   * @return the calls allowed in flight now
+   */
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * @return the calls in flight now
+   */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Takes a place for a call, when within the limit.
+   * @return false when the limit is reached, and the call should be refused
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Gives back the place of a call that went fine, with its latency.
+   * @param rttNanos how long the call took
+   */
+  public void release(long rttNanos) {
+    int current = inFlight.getAndDecrement();
+    sample(rttNanos, current, false);
+  }
+
+  /**
+   * Gives back the place of a call that failed from overload, such as a timeout.
+   */
+  public void drop() {
+    int current = inFlight.getAndDecrement();
+    sample(0, current, true);
+  }
+
+  /**
+   * Gives back the place of a call that says nothing about the backend, such as one refused for bad input.
+   */
+  public void ignore() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Decorates a function with the limit.
+   * A call that throws an exception counts as dropped.
+   * @param <T> return type of the supplier
+   * @param failureFn called instead when over the limit. Either trow an exception or return something
+   * @param supplier the function
+   * @return Decorated supplier.
+   */
+  public <T> Supplier<T> limited(Supplier<T> failureFn, Supplier<T> supplier) {
+    if (failureFn == null || supplier == null) {
+      throw new IllegalArgumentException("failureFn and supplier are required.");
+    }
+    return () -> {
+      if (!tryAcquire()) {
+        return failureFn.get();
+      }
+      long start = System.nanoTime();
+      boolean executed = false;
+      try {
+        T result = supplier.get();
+        executed = true;
+        return result;
+      } finally {
+        if (executed) {
+          release(System.nanoTime() - start);
+        } else {
+          drop();
+        }
+      }
+    };
+  }
+
+  private synchronized void sample(long rttNanos, int inFlightAtEnd, boolean dropped) {
+    if (dropped) {
+      windowDropped = true;
+    } else {
+      windowRtt += rttNanos;
+    }
+    windowSamples++;
+    windowInFlight = Math.max(windowInFlight, inFlightAtEnd);
+    if (windowSamples < Math.max(MIN_WINDOW, limit / 2)) {
+      return;
+    }
+    if (windowDropped) {
+      estimate = estimate * BACKOFF;
+    } else {
+      update(windowRtt / windowSamples, windowInFlight);
+    }
+    estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+    limit = (int) estimate;
+    windowRtt = 0;
+    windowSamples = 0;
+    windowInFlight = 0;
+    windowDropped = false;
+  }
+
+  private void update(long rtt, int maxInFlight) {
+    minRtt = Math.max(1, Math.min(minRtt, rtt));
+    // Calls queued in the backend, out of the ones in flight
+    double queue = estimate * (1 - (double) minRtt / rtt);
+    double log = Math.max(1, Math.log10(estimate));
+    double alpha = 3 * log;
+    double beta = 6 * log;
+    if (queue > beta) {
+      estimate -= log;
+    } else if (maxInFlight * 2 < estimate) {
+      // Not used enough to know if more would do
+      return;
+    } else if (queue <= log) {
+      estimate += beta;
+    } else if (queue < alpha) {
+      estimate += log;
+    }
+  }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import static java.lang.String.format;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A limit shared by all the nodes of a cluster: limit permits per window for a key, whatever the number of nodes.
+ *
+ * The budget of each window is in a PermitStore all the nodes use, such as the database. To not go to the store at
+ * every call, each node leases a batch of permits and hands them out locally. When the batch runs low, the next one
+ * is leased in background on the executor, so that calls don't wait for it; only when the batch is over already the
+ * call leases the next one itself. Once the store has no more permits for the window, the node stops asking until the
+ * next window.
+ *
+ * Windows are fixed and taken from the wall clock, so the nodes need their clocks in sync (such as with ntp).
+ * Permits leased and not used are lost at the end of the window: a smaller batch means fairer shares between nodes
+ * but more trips to the store. When the store fails, the limit fails closed, and the store is not called again for a
+ * tenth of the window.
+ *
+ * @author Raffaele Ragni
+ */
+public final class LeasedRateLimiter implements RateLimiter {
+
+  private static final Logger LOGGER = Logger.getLogger(LeasedRateLimiter.class.getName());
+
+  private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final PermitStore store;
+  private final String key;
+  private final long limit;
+  private final long windowMillis;
+  private final long batch;
+  private final Executor executor;
+  private final LongSupplier clock;
+
+  // Only the one holding the leasing flag changes these
+  private final AtomicBoolean leasing = new AtomicBoolean();
+  private volatile Lease lease = new Lease(Long.MIN_VALUE, 0);
+  private volatile long exhaustedWindow = Long.MIN_VALUE;
+  private volatile long unavailableUntil;
+
+  LeasedRateLimiter(PermitStore store, String key, long limit, long windowMillis, long batch, Executor executor, LongSupplier clock) {
+    if (store == null) {
+      throw new IllegalArgumentException("store is required.");
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be greater than 0.");
+    }
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("window must be greater than 0.");
+    }
+    if (batch <= 0 || batch > limit) {
+      throw new IllegalArgumentException("batch must be between 1 and the limit.");
+    }
+    this.store = store;
+    this.key = key;
+    this.limit = limit;
+    this.windowMillis = windowMillis;
+    this.batch = batch;
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  /**
+   * @param store the shared budget
+   * @param key the key of the limit in the store
+   * @param limit permits in a window, for all the nodes
+   * @param window the window
+   * @param unit unit of the window
+   * @param batch the permits leased at once by a node
+   * @param executor where the next batch is leased in background
+   * @return the limit
+   */
+  public static LeasedRateLimiter of(PermitStore store, String key, long limit, long window, TimeUnit unit, long batch, Executor executor) {
+    return new LeasedRateLimiter(store, key, limit, unit.toMillis(window), batch, executor, System::currentTimeMillis);
+  }
+
+  @Override
+  public long tryAcquire(long permits) {
+    if (permits <= 0 || permits > batch) {
+      throw new IllegalArgumentException("permits must be between 1 and " + batch + ".");
+    }
+    long now = clock.getAsLong();
+    long window = now / windowMillis;
+    if (take(window, permits)) {
+      return 0;
+    }
+    // The batch is over, lease the next one now unless someone else is at it already.
+    if (canLease(window, now) && leasing.compareAndSet(false, true)) {
+      try {
+        lease(window);
+      } finally {
+        leasing.set(false);
+      }
+      if (take(window, permits)) {
+        return 0;
+      }
+    }
+    long nextWindowNanos = TimeUnit.MILLISECONDS.toNanos((window + 1) * windowMillis - now);
+    return exhaustedWindow == window ? nextWindowNanos : Math.min(RETRY_NANOS, nextWindowNanos);
+  }
+
+  private boolean take(long window, long permits) {
+    Lease current = lease;
+    if (current.window != window || !current.take(permits)) {
+      return false;
+    }
+    if (current.remaining.get() < batch / 2) {
+      leaseInBackground(window);
+    }
+    return true;
+  }
+
+  private boolean canLease(long window, long now) {
+    return exhaustedWindow != window && now >= unavailableUntil;
+  }
+
+  private void leaseInBackground(long window) {
+    if (!canLease(window, clock.getAsLong()) || !leasing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          lease(window);
+        } finally {
+          leasing.set(false);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      leasing.set(false);
+    }
+  }
+
+  private void lease(long window) {
+    long granted;
+    try {
+      granted = store.lease(key, window, batch, limit);
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.WARNING, format("Leasing permits for %s failed", key), ex);
+      unavailableUntil = clock.getAsLong() + Math.max(1, windowMillis / 10);
+      return;
+    }
+    if (granted < batch) {
+      exhaustedWindow = window;
+    }
+    Lease current = lease;
+    if (current.window == window) {
+      current.remaining.addAndGet(granted);
+    } else if (current.window < window) {
+      // Permits left from the previous window are dropped
+      lease = new Lease(window, granted);
+    }
+  }
+
+  private static final class Lease {
+    final long window;
+    final AtomicLong remaining;
+
+    Lease(long window, long remaining) {
+      this.window = window;
+      this.remaining = new AtomicLong(remaining);
+    }
+
+    boolean take(long permits) {
+      while (true) {
+        long current = remaining.get();
+        if (current < permits) {
+          return false;
+        }
+        if (remaining.compareAndSet(current, current - permits)) {
+          return true;
+        }
+      }
+    }
+  }
+
+}
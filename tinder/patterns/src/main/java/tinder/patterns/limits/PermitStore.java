@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+/**
+ * The shared budget of permits of a distributed limit, such as a database table all the nodes use.
+ * See LeasedRateLimiter.
+ *
+ * @author Raffaele Ragni
+ */
+@FunctionalInterface
+public interface PermitStore {
+
+  /**
+   * Takes up to the requested permits from the budget of the key in a window, atomically for all the nodes.
+   * @param key the key of the limit
+   * @param window the window, as the number of windows since the epoch
+   * @param permits the permits requested
+   * @param limit the budget of the key in a window
+   * @return the permits granted, between 0 (budget over) and the requested ones
+   */
+  long lease(String key, long window, long permits, long limit);
+
+}
@@ -17,12 +17,15 @@ package tinder.patterns.limits;
 
 import java.util.Optional;
 import static java.util.Optional.empty;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
-import java.util.logging.Logger;
 
 /**
  * Limits the rate of which a function is being called.
@@ -33,6 +36,12 @@ import java.util.logging.Logger;
  *             as the limit is reached.
  *
  * The limitation itself can be expressed as a number of calls in a time period.
+ * It is a TokenBucket: up to maxCalls can go at once, then they are let through at the rate of maxCalls per
+ * time window. There are no threads behind it, so limits can be created freely, such as one per tenant.
+ *
+ * Blocking calls queue up in the order they arrive: each one reserves the next permit and sleeps until exactly its
+ * time, without polling and without waking up the others. Besides get(), a blocking limit can be waited with a
+ * timeout and interruption through tryGet(), or without holding a thread through getAsync().
  *
  * A function is considered executed only if does not throw an exception.
  * Which means errors won't count against the increment of the rate limit.
@@ -42,24 +51,12 @@ import java.util.logging.Logger;
  */
 public class RateLimit<T> implements Supplier<T> {
 
-  private static final Logger LOGGER = Logger.getLogger(RateLimit.class.getName());
-
   private enum Type {BLOCKING, FAILING}
 
   private final Supplier<T> supplier;
   private final Type type;
-  private final long maxCalls;
-  private final long timeWindowMS;
   private final Optional<Supplier<T>> failureFn;
-
-  // We keep a count being incremented and we decrement it periodically on the timeWindowMS
-  // with a side thread and a low boundary of 0.
-  // Each RateLimit instance has its own thread
-  // We could even reset it to 0 in each timeWindowMS, but by doing a subtraction with a max(x, 0) allows
-  // a more granular sliding of a time window.
-  // Also the differente in those operations is minimal, subtraction against assignment as a constant periodic thread
-  // is needed anyway.
-  private final AtomicLong currentTimeWindowCount = new AtomicLong(0);
+  private final TokenBucket bucket;
 
   private RateLimit(Type type, long maxCalls, long timeWindowMS, Supplier<T> supplier, Optional<Supplier<T>> failureFn) {
 
@@ -75,30 +72,8 @@ public class RateLimit<T> implements Supplier<T> {
 
     this.type = type;
     this.supplier = supplier;
-    this.maxCalls = maxCalls;
-    this.timeWindowMS = timeWindowMS;
     this.failureFn = failureFn;
-
-    // We cannot know when the rateLimit is destroyed, so we just apply a system shutdown hook.
-    // The thread is a very light decrementing one anyway.
-    // Maybe in the future will export this control of the the user, but for now want to keep its usage simple and
-    // transparent.
-    Runnable periodPassed = () -> {
-      try {
-        // Since this thread is not synchronized it could at worst let some extra calls through,
-        // but not a big deal because it's probably within a tolerance limit anyway.
-        // And this way the performance is kept good as it's async.
-        long count = currentTimeWindowCount.get();
-        count -= maxCalls;
-        count = count < 0 ? 0 : count;
-        currentTimeWindowCount.set(count);
-      } catch(RuntimeException e) { }
-    };
-
-    // Schedule periodically, each timeWindowMS
-    ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor();
-    scheduled.scheduleAtFixedRate(periodPassed, timeWindowMS, timeWindowMS, TimeUnit.MILLISECONDS);
-    Runtime.getRuntime().addShutdownHook(new Thread(() -> { scheduled.shutdownNow(); }));
+    this.bucket = TokenBucket.of(maxCalls, timeWindowMS, TimeUnit.MILLISECONDS);
   }
 
   /**
@@ -109,8 +84,8 @@ public class RateLimit<T> implements Supplier<T> {
    * @param supplier your supplier
    * @return Decorated supplier.
    */
-  public static <T> Supplier<T> asBlocking(long maxCalls, long timeWindowMS, Supplier<T> supplier) {
-    return new RateLimit(Type.BLOCKING, maxCalls, timeWindowMS, supplier, empty());
+  public static <T> RateLimit<T> asBlocking(long maxCalls, long timeWindowMS, Supplier<T> supplier) {
+    return new RateLimit<>(Type.BLOCKING, maxCalls, timeWindowMS, supplier, empty());
   }
 
   /**
@@ -122,38 +97,152 @@ public class RateLimit<T> implements Supplier<T> {
    * @param supplier your supplier
    * @return Decorated supplier.
    */
-  public static <T> Supplier<T> asFailing(long maxCalls, long timeWindowMS, Supplier<T> failureFn, Supplier<T> supplier) {
-    return new RateLimit(Type.FAILING, maxCalls, timeWindowMS, supplier, Optional.of(failureFn));
+  public static <T> RateLimit<T> asFailing(long maxCalls, long timeWindowMS, Supplier<T> failureFn, Supplier<T> supplier) {
+    return new RateLimit<>(Type.FAILING, maxCalls, timeWindowMS, supplier, Optional.of(failureFn));
   }
 
   /**
-   *
+   * Calls the function, when over the limit either waits for its turn or calls the failure function.
+   * The wait is not interrupted, the interrupted status of the thread is kept for after the call.
    */
   @Override
   public T get() {
+    if (type == Type.FAILING) {
+      return bucket.tryAcquire(1) > 0 ? failure() : call();
+    }
+    long deadline = System.nanoTime() + bucket.reserve(1, Long.MAX_VALUE);
+    boolean interrupted = false;
+    long wait;
+    while ((wait = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, wait);
+      interrupted |= Thread.interrupted();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return call();
+  }
 
-    if (type == Type.FAILING && currentTimeWindowCount.get() >= maxCalls) {
-      return failureFn.orElseThrow(() -> new IllegalStateException("no failureFn was specified")).get();
+  /**
+   * Calls the function if its turn comes within the timeout, waiting for it.
+   * When the turn would come later it does not wait at all, and neither it takes the turn.
+   * For the failing limits the timeout is ignored and it's the same as get().
+   * @param timeout the longest wait
+   * @param unit unit of the timeout
+   * @return the result of the function, empty when it was not called (or returned null)
+   * @throws InterruptedException when interrupted while waiting, the turn is given back
+   */
+  public Optional<T> tryGet(long timeout, TimeUnit unit) throws InterruptedException {
+    if (type == Type.FAILING) {
+      return Optional.ofNullable(get());
+    }
+    long wait = bucket.reserve(1, unit.toNanos(timeout));
+    if (wait < 0) {
+      return empty();
+    }
+    long deadline = System.nanoTime() + wait;
+    while ((wait = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, wait);
+      if (Thread.interrupted()) {
+        bucket.release(1);
+        throw new InterruptedException();
+      }
+    }
+    return Optional.ofNullable(call());
+  }
+
+  /**
+   * Same as getAsync(ForkJoinPool.commonPool()).
+   * @return the result of the function
+   */
+  public CompletableFuture<T> getAsync() {
+    return getAsync(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Calls the function on the executor when its turn comes, no thread waits for it in the meantime.
+   * Cancelling the future before the call gives the turn back.
+   * For the failing limits the failure function is called right away instead, when over the limit.
+   * @param executor where to call the function
+   * @return the result of the function
+   */
+  public CompletableFuture<T> getAsync(Executor executor) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    if (type == Type.FAILING && bucket.tryAcquire(1) > 0) {
+      complete(result, this::failure);
+      return result;
     }
-    else if (type == Type.BLOCKING) {
-      // It's a while loop because in the case of BLOCKING we are waiting until the situation unlocks.
-      while (currentTimeWindowCount.get() >= maxCalls) {
-        try {
-          // Arbitrary 1/10th of the time window wait time.
-          synchronized (this) { wait(timeWindowMS/10); }
-        } catch (InterruptedException ex) { }
+    long wait = type == Type.FAILING ? 0 : bucket.reserve(1, Long.MAX_VALUE);
+    Runnable task = () -> {
+      if (result.isDone()) {
+        bucket.release(1);
+        return;
       }
+      complete(result, this::call);
+    };
+    if (wait == 0) {
+      execute(executor, task, result);
+    } else {
+      Timer.INSTANCE.schedule(() -> execute(executor, task, result), wait, TimeUnit.NANOSECONDS);
     }
+    return result;
+  }
 
+  /**
+   * Hands the task to the executor. When the executor refuses it the task never runs: the permit is given back
+   * and the future fails, nobody else would see the exception when this runs in the timer.
+   */
+  private void execute(Executor executor, Runnable task, CompletableFuture<T> result) {
     try {
-      return supplier.get();
+      executor.execute(task);
+    } catch (RejectedExecutionException ex) {
+      bucket.release(1);
+      result.completeExceptionally(ex);
+    }
+  }
+
+  private T failure() {
+    return failureFn.orElseThrow(() -> new IllegalStateException("no failureFn was specified")).get();
+  }
+
+  /**
+   * Calls the function with the permit already taken, so that concurrent calls cannot go over the limit.
+   * The permit is given back if the function failed.
+   */
+  private T call() {
+    boolean executed = false;
+    try {
+      T result = supplier.get();
+      executed = true;
+      return result;
     } finally {
-      // Since we are out of the while, then we can go with execution,
-      // increment and execute.
-      // We add the increment here because only the real execution counts for +1
-      // If the function threw an exception for some reason, we don't count that as an execution.
-      // Maybe later add a flag for that?
-      currentTimeWindowCount.incrementAndGet();
+      if (!executed) {
+        bucket.release(1);
+      }
+    }
+  }
+
+  private static <T> void complete(CompletableFuture<T> result, Supplier<T> fn) {
+    try {
+      result.complete(fn.get());
+    } catch (Throwable ex) {
+      // Errors too, or the future would never complete
+      result.completeExceptionally(ex);
+    }
+  }
+
+  /**
+   * Only the async calls over the limit use it, to hand them to their executor when their turn comes.
+   */
+  private static final class Timer {
+    static final ScheduledExecutorService INSTANCE;
+    static {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "tinder-rate-limit");
+        thread.setDaemon(true);
+        return thread;
+      });
+      INSTANCE = executor;
     }
   }
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit of permits in a period of time, to check before doing something.
+ *
+ * The implementations differ in how closely they follow the limit, and what it costs:
+ *  - TokenBucket (also the GCRA): lets through up to its capacity at once, then one permit every period / rate.
+ *    Exact, lock free, one long of memory. Bursts are bound by the capacity, not by the period.
+ *  - SlidingWindowLog: never more than the limit in any window of time. Exact, but keeps the time of each of the
+ *    last limit permits, and takes a lock.
+ *  - SlidingWindowCounter: counts in fixed windows, and weights the previous window by how much of it still
+ *    overlaps the sliding one. Assumes the previous window had its permits evenly spread, so it can let through
+ *    somewhat more or less than the limit; takes a lock, and three longs of memory whatever the limit.
+ *  - LeasedRateLimiter: one limit for all the nodes of a cluster, in fixed windows, kept in a shared PermitStore
+ *    that each node leases batches of permits from.
+ *
+ * A plain fixed window counter instead lets through up to twice the limit across the boundary of two windows.
+ *
+ * @author Raffaele Ragni
+ */
+public interface RateLimiter {
+
+  /**
+   * Takes the permits, if they are all available.
+   * @param permits the permits to take
+   * @return 0 when the permits were taken, otherwise the nanoseconds after which they would be available (for the
+   *    sliding window counter, an estimate)
+   */
+  long tryAcquire(long permits);
+
+  /**
+   * Takes one permit, if there is one.
+   * @return true when the permit was taken
+   */
+  default boolean tryAcquire() {
+    return tryAcquire(1) == 0;
+  }
+
+  /**
+   * @param limit permits in a period, also the most at once
+   * @param period the period
+   * @param unit unit of the period
+   * @return a token bucket
+   */
+  static RateLimiter tokenBucket(long limit, long period, TimeUnit unit) {
+    return TokenBucket.of(limit, period, unit);
+  }
+
+  /**
+   * @param rate permits in a period
+   * @param period the period
+   * @param unit unit of the period
+   * @param burst the most permits at once
+   * @return a GCRA limit, which is the token bucket with a capacity of burst
+   */
+  static RateLimiter gcra(long rate, long period, TimeUnit unit, long burst) {
+    return TokenBucket.of(rate, period, unit, burst);
+  }
+
+  /**
+   * @param limit permits in a window
+   * @param window the window
+   * @param unit unit of the window
+   * @return a sliding window log
+   */
+  static RateLimiter slidingWindowLog(int limit, long window, TimeUnit unit) {
+    return SlidingWindowLog.of(limit, window, unit);
+  }
+
+  /**
+   * @param limit permits in a window
+   * @param window the window
+   * @param unit unit of the window
+   * @return a sliding window counter
+   */
+  static RateLimiter slidingWindowCounter(long limit, long window, TimeUnit unit) {
+    return SlidingWindowCounter.of(limit, window, unit);
+  }
+
+}
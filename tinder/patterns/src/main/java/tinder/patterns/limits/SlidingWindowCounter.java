@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sliding window counter: permits are counted in fixed windows, and the count of the sliding window is estimated
+ * as the current window plus the part of the previous one that the sliding window still overlaps.
+ *
+ * It takes the same memory whatever the limit, but the estimate assumes the permits of the previous window were
+ * evenly spread: when they were not, it lets through somewhat more (or less) than the limit in a sliding window.
+ * Still, much closer than a fixed window, that lets through twice the limit across the boundary of two windows.
+ *
+ * @author Raffaele Ragni
+ */
+public final class SlidingWindowCounter implements RateLimiter {
+
+  private final long limit;
+  private final long windowNanos;
+  private final LongSupplier clock;
+  private long windowStart;
+  private long previous;
+  private long current;
+
+  SlidingWindowCounter(long limit, long windowNanos, LongSupplier clock) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be greater than 0.");
+    }
+    if (windowNanos <= 0) {
+      throw new IllegalArgumentException("window must be greater than 0.");
+    }
+    this.limit = limit;
+    this.windowNanos = windowNanos;
+    this.clock = clock;
+    this.windowStart = clock.getAsLong();
+  }
+
+  /**
+   * @param limit permits in a window
+   * @param window the window
+   * @param unit unit of the window
+   * @return the limit
+   */
+  public static SlidingWindowCounter of(long limit, long window, TimeUnit unit) {
+    return new SlidingWindowCounter(limit, unit.toNanos(window), System::nanoTime);
+  }
+
+  @Override
+  public synchronized long tryAcquire(long permits) {
+    if (permits <= 0 || permits > limit) {
+      throw new IllegalArgumentException("permits must be between 1 and " + limit + ".");
+    }
+    long now = clock.getAsLong();
+    long passed = (now - windowStart) / windowNanos;
+    if (passed > 0) {
+      previous = passed == 1 ? current : 0;
+      current = 0;
+      windowStart += passed * windowNanos;
+    }
+    long elapsed = now - windowStart;
+    double overlap = 1.0 - (double) elapsed / windowNanos;
+    if (previous * overlap + current + permits <= limit) {
+      current += permits;
+      return 0;
+    }
+    // The time at which the overlap with the previous window is small enough, or the next window
+    long room = limit - current - permits;
+    if (room >= 0 && previous > 0) {
+      long at = (long) Math.ceil((1.0 - (double) room / previous) * windowNanos);
+      return Math.max(1, at - elapsed);
+    }
+    return windowNanos - elapsed;
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sliding window log: a permit is given only when less than limit permits were given in the last window.
+ *
+ * The times of the last limit permits are kept in a ring buffer, oldest first: a new permit is allowed when the
+ * oldest one in there is at least a window ago, and it takes its place. So the memory is bound by the limit (a long
+ * each) and not by the traffic, and no cleaning is needed.
+ * It is exact, at the price of the memory for large limits, and of a lock around the ring.
+ *
+ * @author Raffaele Ragni
+ */
+public final class SlidingWindowLog implements RateLimiter {
+
+  private final long windowNanos;
+  private final LongSupplier clock;
+  private final long[] log;
+  private int head;
+
+  SlidingWindowLog(int limit, long windowNanos, LongSupplier clock) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be greater than 0.");
+    }
+    if (windowNanos <= 0) {
+      throw new IllegalArgumentException("window must be greater than 0.");
+    }
+    this.windowNanos = windowNanos;
+    this.clock = clock;
+    this.log = new long[limit];
+    // As if the permits were all given a window ago
+    long start = clock.getAsLong() - windowNanos;
+    for (int i = 0; i < limit; i++) {
+      log[i] = start;
+    }
+  }
+
+  /**
+   * @param limit permits in a window
+   * @param window the window
+   * @param unit unit of the window
+   * @return the limit
+   */
+  public static SlidingWindowLog of(int limit, long window, TimeUnit unit) {
+    return new SlidingWindowLog(limit, unit.toNanos(window), System::nanoTime);
+  }
+
+  @Override
+  public synchronized long tryAcquire(long permits) {
+    if (permits <= 0 || permits > log.length) {
+      throw new IllegalArgumentException("permits must be between 1 and " + log.length + ".");
+    }
+    long now = clock.getAsLong();
+    // The permits replace as many of the oldest ones, the last of them has to be out of the window too
+    long wait = log[(head + (int) permits - 1) % log.length] + windowNanos - now;
+    if (wait > 0) {
+      return wait;
+    }
+    for (int i = 0; i < permits; i++) {
+      log[head] = now;
+      head = (head + 1) % log.length;
+    }
+    return 0;
+  }
+
+}
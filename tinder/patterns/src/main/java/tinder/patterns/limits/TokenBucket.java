@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket: holds up to capacity permits, refilled at rate permits per period (by default the rate is
+ * the capacity).
+ *
+ * There is no thread refilling it, the refill is computed when permits are taken, from System.nanoTime().
+ * The whole state is a single long, the time at which the bucket will be full again, updated with a CAS: the
+ * available permits are how much of that time has already passed, in refill intervals.
+ * This means also that a bucket nobody used since it got full again is the same as a new one, which is what
+ * TokenBuckets relies on to drop the idle ones.
+ *
+ * Written this way it is the GCRA (generic cell rate algorithm): the state is the theoretical arrival time of the
+ * next permit plus the burst tolerance, one permit every period / rate, and up to capacity of them at once.
+ * Precision: exact, apart from the refill interval being rounded down to the nanosecond. Memory: one long.
+ *
+ * @author Raffaele Ragni
+ */
+public final class TokenBucket implements RateLimiter {
+
+  // Time origin of all the buckets, so that states are small positive numbers even for nanoTime() negative values.
+  private static final long ORIGIN = System.nanoTime();
+
+  private final long capacity;
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final AtomicLong fullAt;
+
+  private TokenBucket(long rate, long periodNanos, long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be greater than 0.");
+    }
+    if (rate <= 0) {
+      throw new IllegalArgumentException("rate must be greater than 0.");
+    }
+    if (periodNanos <= 0) {
+      throw new IllegalArgumentException("period must be greater than 0.");
+    }
+    this.capacity = capacity;
+    this.intervalNanos = Math.max(1, periodNanos / rate);
+    this.burstNanos = intervalNanos * capacity;
+    // Full from the start
+    this.fullAt = new AtomicLong(now());
+  }
+
+  /**
+   * Creates a full bucket.
+   * @param capacity maximum permits, and permits refilled in a period
+   * @param period the period in which the whole capacity gets refilled
+   * @param unit unit of the period
+   * @return the bucket
+   */
+  public static TokenBucket of(long capacity, long period, TimeUnit unit) {
+    return new TokenBucket(capacity, unit.toNanos(period), capacity);
+  }
+
+  /**
+   * Creates a full bucket with a capacity other than its rate, such as 100 per second but no more than 10 at once.
+   * @param rate permits refilled in a period
+   * @param period the period
+   * @param unit unit of the period
+   * @param capacity maximum permits
+   * @return the bucket
+   */
+  public static TokenBucket of(long rate, long period, TimeUnit unit, long capacity) {
+    return new TokenBucket(rate, unit.toNanos(period), capacity);
+  }
+
+  /**
+   * Takes one permit, if there is one.
+   * @return true when the permit was taken
+   */
+  @Override
+  public boolean tryAcquire() {
+    return tryAcquire(1) == 0;
+  }
+
+  /**
+   * Takes the permits, if they are all available.
+   * @param permits the permits to take
+   * @return 0 when the permits were taken, otherwise the nanoseconds after which they would be available
+   */
+  @Override
+  public long tryAcquire(long permits) {
+    if (permits <= 0 || permits > capacity) {
+      throw new IllegalArgumentException("permits must be between 1 and " + capacity + ".");
+    }
+    long cost = permits * intervalNanos;
+    while (true) {
+      long now = now();
+      long current = fullAt.get();
+      long next = Math.max(current, now) + cost;
+      long wait = next - now - burstNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Reserves the permits, also when they are not available yet: they are the caller's once the returned time has
+   * passed. Reservations are served in the order they are made, each one after the previous.
+   * @param permits the permits to take
+   * @param maxWaitNanos the longest wait accepted, in nanoseconds
+   * @return the nanoseconds to wait before using the permits, or -1 when that would be longer than maxWaitNanos,
+   *    in which case nothing was reserved
+   */
+  public long reserve(long permits, long maxWaitNanos) {
+    if (permits <= 0 || permits > capacity) {
+      throw new IllegalArgumentException("permits must be between 1 and " + capacity + ".");
+    }
+    long cost = permits * intervalNanos;
+    while (true) {
+      long now = now();
+      long current = fullAt.get();
+      long next = Math.max(current, now) + cost;
+      long wait = Math.max(0, next - now - burstNanos);
+      if (wait > maxWaitNanos) {
+        return -1;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return wait;
+      }
+    }
+  }
+
+  /**
+   * Gives back permits taken before, such as for a call that did not happen in the end.
+   * The bucket does not go over its capacity.
+   * @param permits the permits to give back
+   */
+  public void release(long permits) {
+    if (permits <= 0 || permits > capacity) {
+      throw new IllegalArgumentException("permits must be between 1 and " + capacity + ".");
+    }
+    long cost = permits * intervalNanos;
+    while (true) {
+      long now = now();
+      long current = fullAt.get();
+      if (current - now <= 0 || fullAt.compareAndSet(current, Math.max(current - cost, now))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the permits available now
+   */
+  public long available() {
+    long missing = fullAt.get() - now();
+    return missing <= 0 ? capacity : capacity - (missing + intervalNanos - 1) / intervalNanos;
+  }
+
+  /**
+   * @return true when the bucket is full, so no different than a new one
+   */
+  public boolean isFull() {
+    return fullAt.get() - now() <= 0;
+  }
+
+  /**
+   * @return the time it takes to refill the bucket from empty, in nanoseconds
+   */
+  public long periodNanos() {
+    return burstNanos;
+  }
+
+  private static long now() {
+    return System.nanoTime() - ORIGIN;
+  }
+
+}
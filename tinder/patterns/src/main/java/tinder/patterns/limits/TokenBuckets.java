@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A token bucket per key, such as one per client.
+ *
+ * Buckets are created on the first use of their key, and dropped once they are full again: a full bucket is the
+ * same as a new one, so forgetting it loses nothing. There is no thread for this either, the sweep happens at most
+ * once per period, done by the caller that finds it due. This keeps the memory bound to the keys active in the
+ * last period, even with millions of different clients over time.
+ * The map is a ConcurrentHashMap, which is already striped: calls with different keys do not contend.
+ *
+ * @author Raffaele Ragni
+ * @param <K> type of the key
+ */
+public final class TokenBuckets<K> {
+
+  private final Map<K, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final Supplier<TokenBucket> factory;
+  private final long sweepNanos;
+  private final AtomicLong nextSweep;
+
+  private TokenBuckets(long capacity, long period, TimeUnit unit) {
+    // Validates the arguments once here, instead of at the first key
+    this.sweepNanos = TokenBucket.of(capacity, period, unit).periodNanos();
+    this.factory = () -> TokenBucket.of(capacity, period, unit);
+    this.nextSweep = new AtomicLong(System.nanoTime() + sweepNanos);
+  }
+
+  /**
+   * @param <K> type of the key
+   * @param capacity maximum permits of a key, and permits refilled in a period
+   * @param period the period in which the whole capacity gets refilled
+   * @param unit unit of the period
+   * @return the buckets
+   */
+  public static <K> TokenBuckets<K> of(long capacity, long period, TimeUnit unit) {
+    return new TokenBuckets<>(capacity, period, unit);
+  }
+
+  /**
+   * Takes one permit for the key, if there is one.
+   * @param key the key
+   * @return true when the permit was taken
+   */
+  public boolean tryAcquire(K key) {
+    return tryAcquire(key, 1) == 0;
+  }
+
+  /**
+   * Takes the permits for the key, if they are all available.
+   * @param key the key
+   * @param permits the permits to take
+   * @return 0 when the permits were taken, otherwise the nanoseconds after which they would be available
+   */
+  public long tryAcquire(K key, long permits) {
+    sweepIfDue();
+    while (true) {
+      TokenBucket bucket = buckets.computeIfAbsent(key, k -> factory.get());
+      long result = bucket.tryAcquire(permits);
+      // When the sweep dropped the bucket in the meantime the permits went to a forgotten one, so it starts again
+      // on the current one.
+      if (buckets.get(key) == bucket) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * @return the number of keys with a bucket not full yet (or not swept yet)
+   */
+  public int size() {
+    return buckets.size();
+  }
+
+  /**
+   * Drops all the full buckets now.
+   */
+  public void sweep() {
+    buckets.values().removeIf(TokenBucket::isFull);
+  }
+
+  private void sweepIfDue() {
+    long next = nextSweep.get();
+    long now = System.nanoTime();
+    if (now - next >= 0 && nextSweep.compareAndSet(next, now + sweepNanos)) {
+      sweep();
+    }
+  }
+
+}
@@ -15,38 +15,102 @@
  */
 package tinder.patterns.polling;
 
+import static java.lang.String.format;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import tinder.patterns.resilience.Backoff;
 
 /**
  * Dynamic poller that expands and contracts its waiting time based on the min and max parameters.
  * You can use 0 for min and/or max.
  *
+ * By default the wait goes to max right after an empty poll. With a backoff it grows at each empty poll in a row
+ * instead, following the backoff and kept between min and max, such as an exponential backoff with jitter so that
+ * many pollers don't hit the same source together.
+ *
+ * The waits can be cut short, so that a change is seen right away and the max wait can be long: by calling poke(),
+ * or by the WakeupSignals the poller is given, such as the changes of a file. A poke that comes during a poll is not
+ * lost, the poller polls again right after. The waits are still there for when the signals are missed.
+ *
+ * A batch poller gets up to a number of items at each poll, as from an outbox table, and polls again without
+ * waiting when the batch was full because there are likely more. The items of a batch can be consumed in parallel
+ * by lanes: the items with the same key go to the same lane, so that they are consumed in order, and the next poll
+ * is done when the whole batch is consumed.
+ *
+ * A poller runs on its own thread, waiting between the polls. Many pollers can rather share a few threads in a
+ * PollerGroup.
+ *
  * @param <T> the type passed between the producer and consumer.
  *
  * @author Raffaele Ragni
  */
 public class Poller<T> implements Runnable {
 
+  private static final Logger LOGGER = Logger.getLogger(Poller.class.getName());
+
   private final long min;
   private final long max;
-  private final Supplier<Optional<T>> producer;
+  private final Backoff backoff;
+  private final int batchSize;
+  private final IntFunction<List<T>> producer;
   private final Consumer<T> consumer;
+  private final int lanes;
+  private final Function<T, ?> laneKey;
+  private final List<WakeupSignal> signals;
+  private final PollerMetrics metrics;
+
+  private final Object wakeupLock = new Object();
+  private boolean poked;
+  private volatile Runnable pokeListener;
+
+  private List<AutoCloseable> subscriptions = Collections.emptyList();
+  private ExecutorService laneThreads;
 
   private long currentWait;
+  private int emptyPolls;
 
   public Poller(
       long min, long max,
       Supplier<Optional<T>> producer, Consumer<T> consumer) {
+    this(min, max, null, 1, single(producer), consumer, 1, null, Collections.emptyList(), new PollerMetrics());
+  }
+
+  private Poller(
+      long min, long max, Backoff backoff,
+      int batchSize, IntFunction<List<T>> producer, Consumer<T> consumer,
+      int lanes, Function<T, ?> laneKey,
+      List<WakeupSignal> signals, PollerMetrics metrics) {
     this.min = min;
     this.max = max;
+    this.backoff = backoff;
+    this.batchSize = batchSize;
     this.producer = producer;
     this.consumer = consumer;
+    this.lanes = lanes;
+    this.laneKey = laneKey;
+    this.signals = signals;
+    this.metrics = metrics;
     pollIntervalReset();
   }
 
+  private static <T> IntFunction<List<T>> single(Supplier<Optional<T>> producer) {
+    return size -> producer.get().map(Collections::singletonList).orElse(Collections.emptyList());
+  }
+
   /**
    * Sets the minimum time.
    * @param min number of seconds to wait minimally
@@ -76,7 +140,7 @@ public class Poller<T> implements Runnable {
     if (min < 0) {
       throw new IllegalArgumentException("min can't be negative");
     }
-    return new Poller<T>(min, max, producer, consumer);
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, laneKey, signals, metrics);
   }
 
   /**
@@ -93,7 +157,87 @@ public class Poller<T> implements Runnable {
     if (max < min) {
       throw new IllegalArgumentException("max cannot be less than min");
     }
-    return new Poller<T>(min, max, producer, consumer);
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, laneKey, signals, metrics);
+  }
+
+  /**
+   * Sets how the wait grows at each empty poll in a row, instead of going to max right away.
+   * The waits of the backoff, in milliseconds, are kept between min and max.
+   * @param backoff the backoff, for example Backoff.exponential(min, max).withFullJitter()
+   * @return new poller
+   */
+  public Poller<T> backoff(Backoff backoff) {
+    if (backoff == null) {
+      throw new IllegalArgumentException("backoff is required");
+    }
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, laneKey, signals, metrics);
+  }
+
+  /**
+   * Consumes the items of each poll in parallel, on a number of lanes each with its own thread.
+   * The items with the same key go to the same lane and are consumed in the order they were polled.
+   * The threads are started when the poller runs and stopped when it stops.
+   * @param lanes the number of lanes
+   * @param key the key of an item, items with no key go to the first lane
+   * @return new poller
+   */
+  public Poller<T> lanes(int lanes, Function<T, ?> key) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("lanes must be at least 1");
+    }
+    if (key == null) {
+      throw new IllegalArgumentException("key is required");
+    }
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, key, signals, metrics);
+  }
+
+  /**
+   * Adds a signal that makes the poller poll right away.
+   * @param signal the signal
+   * @return new poller
+   */
+  public Poller<T> wakeOn(WakeupSignal signal) {
+    if (signal == null) {
+      throw new IllegalArgumentException("signal is required");
+    }
+    List<WakeupSignal> newSignals = new ArrayList<>(signals);
+    newSignals.add(signal);
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, laneKey,
+        Collections.unmodifiableList(newSignals), metrics);
+  }
+
+  /**
+   * Counts the polls in the given metrics, to be shared between pollers.
+   * @param metrics the metrics
+   * @return new poller
+   */
+  public Poller<T> metrics(PollerMetrics metrics) {
+    if (metrics == null) {
+      throw new IllegalArgumentException("metrics is required");
+    }
+    return new Poller<T>(min, max, backoff, batchSize, producer, consumer, lanes, laneKey, signals, metrics);
+  }
+
+  /**
+   * @return the metrics of this poller
+   */
+  public PollerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Makes the running poller poll right away, or right after the poll it is doing now.
+   * It can be called from any thread.
+   */
+  public void poke() {
+    synchronized (wakeupLock) {
+      poked = true;
+      wakeupLock.notifyAll();
+    }
+    Runnable listener = pokeListener;
+    if (listener != null) {
+      listener.run();
+    }
   }
 
   /**
@@ -110,52 +254,205 @@ public class Poller<T> implements Runnable {
     return new Poller<T>(0L, 0L, producer, consumer);
   }
 
+  /**
+   * Creates a new Poller getting up to a number of items at each poll.
+   * When a batch is full the poller polls again right away, otherwise it waits as the default Poller.
+   * @param <T> Type of data passed between producer and consumer.
+   * @param batchSize the most items to get at each poll
+   * @param producer the producer of up to the given number of items, an empty list when there are none.
+   * @param consumer consumer of each item.
+   * @return new poller.
+   */
+  public static <T> Poller<T> batchPoller(int batchSize, IntFunction<List<T>> producer, Consumer<T> consumer) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1");
+    }
+    return new Poller<T>(0L, 0L, null, batchSize, producer, consumer, 1, null, Collections.emptyList(),
+        new PollerMetrics());
+  }
+
   /**
    * Runs the poller.
    * It will keep running forever until the thread gets interrupted so it's recommended to put this inside a thread.
    */
   @Override
   public void run() {
+    open();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        long wait = cycle();
+        // And now just wait...
+        pollIntervalWait(wait);
+      }
+    } finally {
+      close();
+    }
+  }
 
+  /**
+   * Starts what the poller needs while running: the wakeup signals and the lanes.
+   * A PollerGroup calls this in place of run().
+   */
+  void open() {
     // Reset to min
     pollIntervalReset();
+    subscriptions = subscribe();
+    laneThreads = lanes > 1 ? startLanes() : null;
+  }
 
-    while (!Thread.currentThread().isInterrupted()) {
-
-      Optional<T> polledValue = producer.get();
-      polledValue.ifPresent(consumer);
+  /**
+   * Polls and consumes once.
+   * @return the time to wait before the next poll, in milliseconds
+   */
+  long cycle() {
+    metrics.polls.increment();
+    List<T> batch = producer.apply(batchSize);
+    if (!batch.isEmpty()) {
+      metrics.hits.increment();
+      long start = System.nanoTime();
+      consume(batch, laneThreads);
+      metrics.consumerNanos.add(System.nanoTime() - start);
+      metrics.items.add(batch.size());
+    }
 
-      // If a value was found, we reset the wait to the min because it means there could still be more data to process.
-      // if no value was found though, we step tp max because no data is there and wait longer.
-      if (polledValue.isPresent()) {
-        // Reset to min
-        pollIntervalReset();
-      } else {
-        // Go to max
-        pollIntervalStepUp();
+    // If a value was found, we reset the wait to the min because it means there could still be more data to process.
+    // if no value was found though, we step tp max because no data is there and wait longer.
+    if (!batch.isEmpty()) {
+      // Reset to min
+      pollIntervalReset();
+      // A full batch: there is more data for sure, go on right away
+      if (batchSize > 1 && batch.size() >= batchSize) {
+        return 0L;
       }
-      // And now just wait...
-      pollIntervalWait();
+    } else {
+      // Go to max
+      pollIntervalStepUp();
+    }
+    return currentWait;
+  }
+
+  /**
+   * Stops what open() started.
+   */
+  void close() {
+    if (laneThreads != null) {
+      laneThreads.shutdown();
+      laneThreads = null;
     }
+    unsubscribe(subscriptions);
+    subscriptions = Collections.emptyList();
+  }
+
+  /**
+   * @param listener called at each poke, in place of the poller waking up by itself
+   */
+  void onPoke(Runnable listener) {
+    pokeListener = listener;
+  }
 
+  private ExecutorService startLanes() {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(lanes, r -> {
+      Thread thread = new Thread(r, "tinder-poller-lane-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
-  private void pollIntervalWait() {
-    if (currentWait > 0L) {
+  private void consume(List<T> batch, ExecutorService laneThreads) {
+    if (laneThreads == null || batch.size() < 2) {
+      batch.forEach(consumer);
+      return;
+    }
+
+    // Split by lane, keeping the order of the batch within each
+    List<List<T>> byLane = new ArrayList<>(lanes);
+    for (int i = 0; i < lanes; i++) {
+      byLane.add(new ArrayList<>());
+    }
+    for (T item: batch) {
+      Object key = laneKey.apply(item);
+      byLane.get(key == null ? 0 : Math.floorMod(key.hashCode(), lanes)).add(item);
+    }
+
+    List<Future<?>> running = new ArrayList<>(lanes);
+    for (List<T> lane: byLane) {
+      if (!lane.isEmpty()) {
+        running.add(laneThreads.submit(() -> lane.forEach(consumer)));
+      }
+    }
+    // The next poll only when all is consumed, or it would get again the items still being consumed
+    for (Future<?> future: running) {
       try {
-        TimeUnit.MILLISECONDS.sleep(currentWait);
+        future.get();
       } catch (InterruptedException ex) {
         Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException ex) {
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) ex.getCause();
+        }
+        if (ex.getCause() instanceof Error) {
+          throw (Error) ex.getCause();
+        }
+        throw new IllegalStateException(ex.getCause());
+      }
+    }
+  }
+
+  private List<AutoCloseable> subscribe() {
+    List<AutoCloseable> subscriptions = new ArrayList<>();
+    for (WakeupSignal signal: signals) {
+      try {
+        subscriptions.add(signal.subscribe(this::poke));
+      } catch (Exception ex) {
+        LOGGER.log(Level.WARNING, format("Wakeup signal not available, polling every %dms at most", max), ex);
       }
     }
+    return subscriptions;
+  }
+
+  private static void unsubscribe(List<AutoCloseable> subscriptions) {
+    for (AutoCloseable subscription: subscriptions) {
+      try {
+        subscription.close();
+      } catch (Exception ex) {
+        LOGGER.log(Level.WARNING, "Closing a wakeup signal failed", ex);
+      }
+    }
+  }
+
+  /**
+   * Waits the current time, or until poked.
+   */
+  private void pollIntervalWait(long wait) {
+    synchronized (wakeupLock) {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+      long remaining;
+      while (!poked && (remaining = deadline - System.nanoTime()) > 0L) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(wakeupLock, remaining);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      poked = false;
+    }
   }
 
   private void pollIntervalReset() {
     currentWait = min;
+    emptyPolls = 0;
   }
 
   private void pollIntervalStepUp() {
-    currentWait = max;
+    if (backoff == null) {
+      currentWait = max;
+      return;
+    }
+    emptyPolls = emptyPolls == Integer.MAX_VALUE ? emptyPolls : emptyPolls + 1;
+    currentWait = Math.min(max, Math.max(min, backoff.delay(emptyPolls, currentWait)));
   }
 
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.polling;
+
+import static java.lang.String.format;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many pollers on a few shared threads.
+ *
+ * A poller on its own thread spends most of its time waiting, so one poller per tenant or per queue means as many
+ * threads, mostly asleep. In a group, each poll is a task of a scheduled executor, and the next one is scheduled after
+ * the wait the poller asks for; a poke or a wakeup signal schedules it right away. The polls of a poller never
+ * overlap, and a poller that throws is stopped, leaving the others running.
+ *
+ * The threads of the group are daemons, named tinder-pollers-name-N.
+ *
+ * @author Raffaele Ragni
+ */
+public final class PollerGroup implements AutoCloseable {
+
+  private static final Logger LOGGER = Logger.getLogger(PollerGroup.class.getName());
+
+  private final String name;
+  private final ScheduledExecutorService executor;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private PollerGroup(String name, ScheduledExecutorService executor) {
+    this.name = name;
+    this.executor = executor;
+  }
+
+  /**
+   * @param name the name of the group, used for its threads
+   * @param threads the threads shared by the pollers
+   * @return a new group, with no pollers
+   */
+  public static PollerGroup of(String name, int threads) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1");
+    }
+    AtomicInteger counter = new AtomicInteger();
+    return new PollerGroup(name, Executors.newScheduledThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "tinder-pollers-" + name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  /**
+   * Starts a poller in the group, polling right away.
+   * @param key the key of the poller in the group
+   * @param poller the poller, not running elsewhere
+   */
+  public void start(String key, Poller<?> poller) {
+    if (key == null) {
+      throw new IllegalArgumentException("key is required");
+    }
+    if (poller == null) {
+      throw new IllegalArgumentException("poller is required");
+    }
+    if (executor.isShutdown()) {
+      throw new IllegalStateException(format("The poller group \"%s\" is shut down", name));
+    }
+    Entry entry = new Entry(key, poller);
+    if (entries.putIfAbsent(key, entry) != null) {
+      throw new IllegalArgumentException(format("There is already a poller \"%s\"", key));
+    }
+    entry.start();
+  }
+
+  /**
+   * Stops polling, until resumed. A poll being done is finished.
+   * @param key the key of the poller
+   */
+  public void pause(String key) {
+    entry(key).pause();
+  }
+
+  /**
+   * Polls again, right away.
+   * @param key the key of the poller
+   */
+  public void resume(String key) {
+    entry(key).resume();
+  }
+
+  /**
+   * Stops a poller and removes it from the group. A poll being done is finished.
+   * @param key the key of the poller
+   */
+  public void stop(String key) {
+    Entry entry = entries.remove(key);
+    if (entry == null) {
+      throw new IllegalArgumentException(format("There is no poller \"%s\"", key));
+    }
+    entry.stop();
+  }
+
+  /**
+   * @return the keys of the pollers in the group
+   */
+  public Set<String> keys() {
+    return new TreeSet<>(entries.keySet());
+  }
+
+  /**
+   * @param key the key of the poller
+   * @return whether the poller is paused
+   */
+  public boolean paused(String key) {
+    return entry(key).paused();
+  }
+
+  /**
+   * @param key the key of the poller
+   * @return the metrics of the poller
+   */
+  public PollerMetrics metrics(String key) {
+    return entry(key).poller.metrics();
+  }
+
+  /**
+   * Stops all the pollers and the threads of the group, waiting for the polls being done.
+   * @param timeout the longest wait
+   * @param unit the time unit of the timeout
+   * @return true if all the polls finished in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    for (String key: entries.keySet()) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        entry.stop();
+      }
+    }
+    executor.shutdown();
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Shuts down, waiting up to 10 seconds for the polls being done.
+   */
+  @Override
+  public void close() {
+    try {
+      if (!shutdown(10, TimeUnit.SECONDS)) {
+        LOGGER.log(Level.WARNING, () -> format("The poller group \"%s\" did not stop in time", name));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Entry entry(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      throw new IllegalArgumentException(format("There is no poller \"%s\"", key));
+    }
+    return entry;
+  }
+
+  /**
+   * The schedule of a poller. Only one poll at a time: a poke during a poll schedules the next one right after.
+   */
+  private final class Entry {
+
+    final String key;
+    final Poller<?> poller;
+
+    // All guarded by this
+    private ScheduledFuture<?> next;
+    private boolean polling;
+    private boolean poked;
+    private boolean paused;
+    private boolean stopped;
+
+    Entry(String key, Poller<?> poller) {
+      this.key = key;
+      this.poller = poller;
+    }
+
+    void start() {
+      poller.open();
+      poller.onPoke(this::poke);
+      synchronized (this) {
+        schedule(0L);
+      }
+    }
+
+    synchronized void pause() {
+      paused = true;
+      cancel();
+    }
+
+    synchronized void resume() {
+      paused = false;
+      schedule(0L);
+    }
+
+    synchronized boolean paused() {
+      return paused;
+    }
+
+    void stop() {
+      boolean closeNow;
+      synchronized (this) {
+        stopped = true;
+        cancel();
+        // Or the poll being done closes it
+        closeNow = !polling;
+      }
+      poller.onPoke(null);
+      if (closeNow) {
+        poller.close();
+      }
+    }
+
+    synchronized void poke() {
+      if (polling) {
+        poked = true;
+      } else {
+        schedule(0L);
+      }
+    }
+
+    void poll() {
+      synchronized (this) {
+        if (polling || paused || stopped) {
+          return;
+        }
+        polling = true;
+        poked = false;
+      }
+      long wait;
+      try {
+        wait = poller.cycle();
+      } catch (RuntimeException | Error ex) {
+        LOGGER.log(Level.SEVERE, format("The poller \"%s\" failed and was stopped", key), ex);
+        entries.remove(key, this);
+        synchronized (this) {
+          stopped = true;
+        }
+        wait = 0L;
+      }
+      boolean closeNow;
+      synchronized (this) {
+        polling = false;
+        closeNow = stopped;
+        if (!stopped) {
+          schedule(poked ? 0L : wait);
+        }
+      }
+      if (closeNow) {
+        poller.onPoke(null);
+        poller.close();
+      }
+    }
+
+    // Called holding the lock
+    private void schedule(long wait) {
+      if (paused || stopped || executor.isShutdown()) {
+        return;
+      }
+      cancel();
+      next = executor.schedule(this::poll, wait, TimeUnit.MILLISECONDS);
+    }
+
+    // Called holding the lock
+    private void cancel() {
+      if (next != null) {
+        next.cancel(false);
+        next = null;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.polling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a Poller, that can be exposed to a metrics library.
+ * The poll rate is the rate of the polls, as measured by a meter of the library.
+ *
+ * @author Raffaele Ragni
+ */
+public final class PollerMetrics {
+
+  final LongAdder polls = new LongAdder();
+  final LongAdder hits = new LongAdder();
+  final LongAdder items = new LongAdder();
+  final LongAdder consumerNanos = new LongAdder();
+
+  /**
+   * @return the polls done
+   */
+  public long polls() {
+    return polls.sum();
+  }
+
+  /**
+   * @return the polls that found something
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the items consumed
+   */
+  public long items() {
+    return items.sum();
+  }
+
+  /**
+   * @return the part of the polls that found something, between 0 and 1
+   */
+  public double hitRatio() {
+    long total = polls();
+    return total == 0 ? 0.0 : (double) hits() / total;
+  }
+
+  /**
+   * @param unit the time unit
+   * @return the average time the consumer took for an item
+   */
+  public long consumerLatency(TimeUnit unit) {
+    long total = items();
+    return total == 0 ? 0L : unit.convert(consumerNanos.sum() / total, TimeUnit.NANOSECONDS);
+  }
+
+}
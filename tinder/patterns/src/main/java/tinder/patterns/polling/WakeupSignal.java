@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.polling;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Something that tells a Poller to poll now, instead of waiting for its time: a change of a file, a notification
+ * from the database, a message. The poller subscribes when it starts running, and closes the subscription when it
+ * stops.
+ *
+ * @author Raffaele Ragni
+ */
+@FunctionalInterface
+public interface WakeupSignal {
+
+  /**
+   * @param wakeup to call at each signal, from any thread
+   * @return the subscription, closed when the poller stops
+   * @throws Exception when the subscription fails, the poller goes on with its waits only
+   */
+  AutoCloseable subscribe(Runnable wakeup) throws Exception;
+
+  /**
+   * A signal at each change of the file: creation, modification and deletion.
+   * The folder of the file is watched with a WatchService, from a daemon thread of the subscription.
+   * @param file the file
+   * @return the signal
+   */
+  static WakeupSignal fileChanges(Path file) {
+    Path absolute = file.toAbsolutePath();
+    Path folder = absolute.getParent();
+    Path name = absolute.getFileName();
+    return wakeup -> {
+      WatchService watcher = FileSystems.getDefault().newWatchService();
+      try {
+        folder.register(watcher,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+      } catch (IOException ex) {
+        watcher.close();
+        throw new UncheckedIOException(ex);
+      }
+      Thread thread = new Thread(() -> {
+        try {
+          while (true) {
+            WatchKey key = watcher.take();
+            for (WatchEvent<?> event: key.pollEvents()) {
+              // Overflows have no file, they may be about it
+              if (event.context() == null || name.equals(event.context())) {
+                wakeup.run();
+              }
+            }
+            key.reset();
+          }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+          // Subscription closed
+        }
+      }, "tinder-poller-watch-" + name);
+      thread.setDaemon(true);
+      thread.start();
+      return watcher;
+    };
+  }
+
+}
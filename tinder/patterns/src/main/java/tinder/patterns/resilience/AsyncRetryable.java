@@ -0,0 +1,357 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import static java.lang.String.format;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Same as Retryable, for the operations that complete later, with a CompletionStage.
+ * No thread is blocked at any time: the waits between the attempts are on a timer shared by all the AsyncRetryables,
+ * and the attempts after a wait are started on the executor (default is the common pool).
+ *
+ * The configuration is the same as the one of Retryable, and so are the defaults.
+ * A failure is either an exception thrown by the operation, or the stage completing exceptionally.
+ * The result is a CompletableFuture, completed with the result of the first attempt that succeeded, or exceptionally
+ * with the exception (first or last) of the failed attempts.
+ *
+ * @param <T> the type returned from the operation, if any
+ *
+ * @author Raffaele Ragni
+ */
+public class AsyncRetryable<T> implements Supplier<CompletableFuture<T>> {
+
+  private static final Logger LOGGER = Logger.getLogger(AsyncRetryable.class.getName());
+
+  private static final long DEFAULT_RETRIES = 5L;
+  private static final long DEFAULT_DELAY = 0L;
+
+  private final String name;
+  private final Supplier<? extends CompletionStage<T>> operation;
+  private final long maxAttempts;
+  private final Backoff backoff;
+  private final boolean throwFirst;
+  private final Function<Throwable, Boolean> circuitBreaker;
+  private final CircuitBreaker breaker;
+  private final long deadline;
+  private final RetryBudget budget;
+  private final RetryMetrics metrics;
+  private final Executor executor;
+
+  private AsyncRetryable(String name, Supplier<? extends CompletionStage<T>> operation,
+      long maxAttempts, Backoff backoff, boolean throwFirst,
+      Function<Throwable, Boolean> circuitBreaker, CircuitBreaker breaker,
+      long deadline, RetryBudget budget, RetryMetrics metrics, Executor executor) {
+    this.name = name;
+    this.operation = operation;
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    this.throwFirst = throwFirst;
+    this.circuitBreaker = circuitBreaker;
+    this.breaker = breaker;
+    this.deadline = deadline;
+    this.budget = budget;
+    this.metrics = metrics;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns an AsyncRetryable for the specified operation
+   * @param operation the operation to retry
+   * @param <T> the type returned from the operation, if any
+   * @return the AsyncRetryable
+   */
+  public static <T> AsyncRetryable<T> of(Supplier<? extends CompletionStage<T>> operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
+    }
+    return new AsyncRetryable<T>("retryable", operation, DEFAULT_RETRIES, Backoff.fixed(DEFAULT_DELAY), false,
+        null, null, 0L, null, new RetryMetrics(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * See Retryable.named()
+   * @param name the name to give to the operation
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> named(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.times()
+   * @param maxAttempts the amount of times to retry
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> times(long maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Can't try an amount less than 1 times. Use a number greater than 0.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.delay()
+   * @param delay wait time in milliseconds
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> delay(long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Can't wait for a negative time, provide a positive number or 0.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, Backoff.fixed(delay), throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.backoff()
+   * @param backoff the waits between the attempts
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> backoff(Backoff backoff) {
+    if (backoff == null) {
+      throw new IllegalArgumentException("You must provide a backoff, backoff was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.deadline()
+   * @param deadline the deadline in milliseconds
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> deadline(long deadline) {
+    if (deadline <= 0) {
+      throw new IllegalArgumentException("The deadline must be greater than 0.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.budget()
+   * @param budget the retry budget
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> budget(RetryBudget budget) {
+    if (budget == null) {
+      throw new IllegalArgumentException("You must provide a budget, budget was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.metrics()
+   * @param metrics the counters
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> metrics(RetryMetrics metrics) {
+    if (metrics == null) {
+      throw new IllegalArgumentException("You must provide the metrics, metrics was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * @return the counters of the attempts and retries
+   */
+  public RetryMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets where the attempts after a wait are started.
+   * Default is the common pool.
+   * @param executor the executor of the attempts
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> executor(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("You must provide an executor, executor was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.throwFirst()
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> throwFirst() {
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, true, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.throwLast()
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> throwLast() {
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, false, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.circuitBreaker(Function)
+   * @param circuitBreaker the function that can break the circuit
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> circuitBreaker(Function<Throwable, Boolean> circuitBreaker) {
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * See Retryable.circuitBreaker(CircuitBreaker)
+   * @param breaker the circuit breaker
+   * @return A new AsyncRetryable with this new configuration
+   */
+  public AsyncRetryable<T> circuitBreaker(CircuitBreaker breaker) {
+    if (breaker == null) {
+      throw new IllegalArgumentException("You must provide a circuit breaker, breaker was null.");
+    }
+    return new AsyncRetryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics, executor);
+  }
+
+  /**
+   * An alias to the retry() for a Supplier so it can be used in functional cases.
+   * @return the result of the operation, when it comes
+   */
+  @Override
+  public CompletableFuture<T> get() {
+    return retry();
+  }
+
+  /**
+   * Starts the first attempt right away in the calling thread, and the retries later without blocking it.
+   * @return the result of the operation, when it comes
+   */
+  public CompletableFuture<T> retry() {
+    Invocation invocation = new Invocation();
+    invocation.attempt();
+    return invocation.result;
+  }
+
+  /**
+   * The state of one call to retry(), so that the same AsyncRetryable can be used by concurrent callers.
+   */
+  private final class Invocation {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final long start = System.nanoTime();
+    int attempts;
+    long wait;
+    Throwable caught;
+
+    void attempt() {
+      if (result.isDone()) {
+        // Cancelled by the caller
+        return;
+      }
+      attempts++;
+      metrics.attempts.increment();
+      if (breaker != null && !breaker.tryAcquirePermission()) {
+        failed(new CircuitBreakerOpenException(breaker.name()), 0L);
+        return;
+      }
+      long attemptStart = System.nanoTime();
+      CompletionStage<T> stage;
+      try {
+        stage = operation.get();
+      } catch (Throwable ex) {
+        failed(ex, System.nanoTime() - attemptStart);
+        return;
+      }
+      stage.whenComplete((value, ex) -> {
+        if (ex == null) {
+          succeeded(value, System.nanoTime() - attemptStart);
+        } else {
+          failed(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex,
+              System.nanoTime() - attemptStart);
+        }
+      });
+    }
+
+    void succeeded(T value, long duration) {
+      if (breaker != null) {
+        breaker.onSuccess(duration);
+      }
+      if (budget != null) {
+        budget.onSuccess();
+      }
+      result.complete(value);
+    }
+
+    void failed(Throwable ex, long duration) {
+      boolean open = ex instanceof CircuitBreakerOpenException;
+      if (breaker != null && !open) {
+        breaker.onError(duration, ex);
+      }
+      LOGGER.warning(format(
+          "The operation \"%s\" was attempted %d time/s, but fails with: \"%s\"",
+          name,
+          attempts,
+          ex.getMessage()));
+      if (open || (circuitBreaker != null && circuitBreaker.apply(ex))) {
+        // breaking the circuit will immediately fail with the exception
+        result.completeExceptionally(ex);
+        return;
+      }
+      if (caught == null || !throwFirst) {
+        caught = ex;
+      }
+      if (attempts >= maxAttempts) {
+        result.completeExceptionally(caught);
+        return;
+      }
+      wait = backoff.delay(attempts, wait);
+      if (deadline > 0L && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + wait > deadline) {
+        metrics.deadlineExceeded.increment();
+        LOGGER.warning(format("The operation \"%s\" is not retried, its deadline would be passed", name));
+        result.completeExceptionally(caught);
+        return;
+      }
+      if (budget != null && !budget.tryRetry()) {
+        metrics.budgetExhausted.increment();
+        LOGGER.warning(format("The operation \"%s\" is not retried, its retry budget is over", name));
+        result.completeExceptionally(caught);
+        return;
+      }
+      metrics.retries.increment();
+      if (wait == 0L) {
+        attempt();
+        return;
+      }
+      HashedWheelTimer.shared().schedule(this::retry, wait, TimeUnit.MILLISECONDS);
+    }
+
+    void retry() {
+      try {
+        executor.execute(this::attempt);
+      } catch (RejectedExecutionException ex) {
+        // Runs in the timer, nobody else would see it
+        ex.addSuppressed(caught);
+        result.completeExceptionally(ex);
+      }
+    }
+  }
+
+}
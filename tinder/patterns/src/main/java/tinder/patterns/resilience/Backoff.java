@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long to wait before each retry.
+ *
+ * A fixed delay has all the clients that failed together retry together, again and again. The exponential backoff
+ * doubles the delay at each retry up to a max, and the jitter spreads the retries of the clients over the delay:
+ *  - full jitter: a random wait between 0 and the exponential delay.
+ *  - decorrelated jitter: a random wait between the base delay and three times the previous wait, up to the max.
+ *    It grows less regularly than the full jitter, and keeps away from the very short waits.
+ *
+ * All the times are in milliseconds.
+ *
+ * @author Raffaele Ragni
+ */
+public final class Backoff {
+
+  private enum Jitter {NONE, FULL, DECORRELATED}
+
+  private final long base;
+  private final long max;
+  private final boolean exponential;
+  private final Jitter jitter;
+
+  private Backoff(long base, long max, boolean exponential, Jitter jitter) {
+    this.base = base;
+    this.max = max;
+    this.exponential = exponential;
+    this.jitter = jitter;
+  }
+
+  /**
+   * @param delay the wait before each retry
+   * @return the same wait at every retry
+   */
+  public static Backoff fixed(long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Can't wait for a negative time, provide a positive number or 0.");
+    }
+    return new Backoff(delay, delay, false, Jitter.NONE);
+  }
+
+  /**
+   * @param base the wait before the first retry
+   * @param max the longest wait
+   * @return a wait doubling at every retry, up to the max
+   */
+  public static Backoff exponential(long base, long max) {
+    if (base <= 0) {
+      throw new IllegalArgumentException("The base delay must be greater than 0.");
+    }
+    if (max < base) {
+      throw new IllegalArgumentException("The max delay must not be less than the base delay.");
+    }
+    return new Backoff(base, max, true, Jitter.NONE);
+  }
+
+  /**
+   * @return the same backoff, with waits taken randomly between 0 and its delay
+   */
+  public Backoff withFullJitter() {
+    return new Backoff(base, max, exponential, Jitter.FULL);
+  }
+
+  /**
+   * @return the same backoff, with waits taken randomly between the base and three times the previous wait
+   */
+  public Backoff withDecorrelatedJitter() {
+    return new Backoff(base, max, exponential, Jitter.DECORRELATED);
+  }
+
+  /**
+   * @param retry the retry about to be done, from 1
+   * @param previous the previous wait, 0 for the first retry
+   * @return the wait before the retry
+   */
+  public long delay(int retry, long previous) {
+    if (base == 0) {
+      return 0;
+    }
+    switch (jitter) {
+      case FULL:
+        return ThreadLocalRandom.current().nextLong(exponentialDelay(retry) + 1);
+      case DECORRELATED:
+        long upper = Math.min(max, Math.max(base, previous) * 3);
+        return upper <= base ? base : ThreadLocalRandom.current().nextLong(base, upper + 1);
+      default:
+        return exponentialDelay(retry);
+    }
+  }
+
+  private long exponentialDelay(int retry) {
+    if (!exponential) {
+      return base;
+    }
+    // Past 62 doublings it would overflow, and it is the max long before that anyway
+    int doublings = Math.min(retry - 1, 62);
+    long delay = base << doublings;
+    return delay <= 0 || delay >> doublings != base ? max : Math.min(max, delay);
+  }
+
+}
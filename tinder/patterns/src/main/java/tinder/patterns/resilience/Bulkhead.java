@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the calls to a dependency that can be going on at the same time, so that when it gets slow it can only hold
+ * as many threads as its limit, and the others keep serving the rest.
+ * No thread created nor started in this class: the calls run in the threads of the callers, see ThreadPoolBulkhead
+ * for running them in threads of their own.
+ *
+ * When the limit is reached, the calls fail right away with a BulkheadFullException, or they can wait in a queue for
+ * their turn: the queue is bounded both in how many calls wait and for how long, so that they can't pile up.
+ * Like Retryable the configuration methods return a new bulkhead: configure it first, then share the same one
+ * between the callers.
+ *
+ * It decorates Suppliers as the other patterns, so they compose by wrapping each other, for example:
+ *   Retryable.of(bulkhead.decorate(RateLimit.asFailing(...)))
+ * where each attempt of the retry takes its place in the bulkhead, then goes through the rate limit.
+ *
+ * @author Raffaele Ragni
+ */
+public final class Bulkhead {
+
+  private final String name;
+  private final int maxConcurrent;
+  private final int maxWaiting;
+  private final long maxWaitNanos;
+
+  private final Semaphore permits;
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  private Bulkhead(String name, int maxConcurrent, int maxWaiting, long maxWaitNanos) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.maxWaiting = maxWaiting;
+    this.maxWaitNanos = maxWaitNanos;
+    this.permits = new Semaphore(maxConcurrent, true);
+  }
+
+  /**
+   * Returns a bulkhead with no queue.
+   * @param name the name of the dependency, for the exceptions
+   * @param maxConcurrent the calls that can be going on at the same time
+   * @return the bulkhead
+   */
+  public static Bulkhead of(String name, int maxConcurrent) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("There must be at least 1 concurrent call.");
+    }
+    return new Bulkhead(name, maxConcurrent, 0, 0L);
+  }
+
+  /**
+   * Makes the calls over the limit wait for their turn, in order.
+   * @param maxWaiting the calls that can wait at the same time, the others fail right away
+   * @param maxWait how long a call waits at most, before failing
+   * @param unit unit of the wait
+   * @return A new Bulkhead with this new configuration
+   */
+  public Bulkhead queue(int maxWaiting, long maxWait, TimeUnit unit) {
+    if (maxWaiting < 0) {
+      throw new IllegalArgumentException("The waiting calls can't be negative.");
+    }
+    if (maxWait < 0) {
+      throw new IllegalArgumentException("Can't wait for a negative time, provide a positive number or 0.");
+    }
+    return new Bulkhead(name, maxConcurrent, maxWaiting, unit.toNanos(maxWait));
+  }
+
+  /**
+   * @return the calls going on now
+   */
+  public int inUse() {
+    return maxConcurrent - permits.availablePermits();
+  }
+
+  /**
+   * @return the calls waiting now
+   */
+  public int waiting() {
+    return waiting.get();
+  }
+
+  /**
+   * @return the calls refused because the bulkhead was full
+   */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Decorates the operation with this bulkhead.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the decorated operation
+   */
+  public <T> Supplier<T> decorate(Supplier<T> operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
+    }
+    return () -> call(operation);
+  }
+
+  /**
+   * Calls the operation in the bulkhead.
+   * The wait in the queue is not interrupted, the interrupted status of the thread is kept for after the call.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the provided result from the operation
+   * @throws BulkheadFullException when there is no place for the call, without calling the operation
+   */
+  public <T> T call(Supplier<T> operation) {
+    if (!acquire()) {
+      rejected.increment();
+      throw new BulkheadFullException(name);
+    }
+    try {
+      return operation.get();
+    } finally {
+      permits.release();
+    }
+  }
+
+  private boolean acquire() {
+    if (tryAcquireNow()) {
+      return true;
+    }
+    if (maxWaitNanos == 0L || waiting.incrementAndGet() > maxWaiting) {
+      if (maxWaitNanos > 0L) {
+        waiting.decrementAndGet();
+      }
+      return false;
+    }
+    boolean interrupted = false;
+    try {
+      long deadline = System.nanoTime() + maxWaitNanos;
+      while (true) {
+        try {
+          return permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      waiting.decrementAndGet();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Takes a free permit without waiting, unless there are callers already waiting for one.
+   * The untimed tryAcquire would barge past them even on the fair semaphore.
+   */
+  private boolean tryAcquireNow() {
+    boolean interrupted = Thread.interrupted();
+    try {
+      return permits.tryAcquire(0L, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      // Interrupted right after the check, the waiting path takes care of it
+      interrupted = true;
+      return false;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+/**
+ * Thrown instead of calling the operation, when its bulkhead is full.
+ * It has no stack trace, so that failing is as cheap as it can be.
+ *
+ * @author Raffaele Ragni
+ */
+public class BulkheadFullException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public BulkheadFullException(String name) {
+    super(String.format("The bulkhead \"%s\" is full", name), null, false, false);
+  }
+
+}
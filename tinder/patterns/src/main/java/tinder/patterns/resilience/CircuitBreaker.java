@@ -0,0 +1,482 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import static java.lang.String.format;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling an operation that keeps failing, sharing what it learns between all the callers.
+ * No thread created nor started in this class, and no locks taken.
+ *
+ * The circuit starts CLOSED, and the outcomes of the calls are kept in a rolling window of the last calls.
+ * When, with at least the minimum calls in the window, the rate of the failures (or of the slow calls) reaches its
+ * threshold, the circuit goes OPEN: for the open duration the calls fail right away with a
+ * CircuitBreakerOpenException, without reaching the operation. After that it goes HALF_OPEN, letting a few calls
+ * through as probes: if they all succeed the circuit closes again, at the first failing one it opens again.
+ * Probes still not recorded after the open duration are given up, and the circuit opens again.
+ *
+ * The defaults are a window of 100 calls, of which at least 20 are needed; opening at 50% of failures, for 60
+ * seconds, and with 5 probes. Slow calls are not considered unless a duration for them is set.
+ * Like Retryable the configuration methods return a new circuit breaker, which starts CLOSED: configure it first,
+ * then share the same one between the callers.
+ *
+ * To use it together with Retryable, see Retryable.circuitBreaker(CircuitBreaker): each attempt goes through it,
+ * and when it opens the retries stop.
+ *
+ * @author Raffaele Ragni
+ */
+public final class CircuitBreaker {
+
+  private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+  public enum State {CLOSED, OPEN, HALF_OPEN}
+
+  // Outcomes in the window, as bits
+  private static final int RECORDED = 1;
+  private static final int FAILED = 2;
+  private static final int SLOW = 4;
+
+  private final String name;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final long slowCallNanos;
+  private final int slowCallRateThreshold;
+  private final long openNanos;
+  private final int halfOpenCalls;
+  private final Predicate<Throwable> recordOn;
+  private final BiConsumer<State, State> listener;
+  private final LongSupplier clock;
+
+  private final AtomicReference<Phase> phase;
+  private final AtomicLong notPermitted = new AtomicLong();
+
+  private CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+      long slowCallNanos, int slowCallRateThreshold, long openNanos, int halfOpenCalls,
+      Predicate<Throwable> recordOn, BiConsumer<State, State> listener, LongSupplier clock) {
+    this.name = name;
+    this.windowSize = windowSize;
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = slowCallNanos;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openNanos = openNanos;
+    this.halfOpenCalls = halfOpenCalls;
+    this.recordOn = recordOn;
+    this.listener = listener;
+    this.clock = clock;
+    this.phase = new AtomicReference<>(Phase.closed(clock.getAsLong(), windowSize));
+  }
+
+  /**
+   * Returns a circuit breaker with the default configuration.
+   * @param name the name of the operation, for the logs and the exceptions
+   * @return the circuit breaker
+   */
+  public static CircuitBreaker of(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    return new CircuitBreaker(name, 100, 20, 50, Long.MAX_VALUE, 100, TimeUnit.SECONDS.toNanos(60), 5,
+        ex -> true, (from, to) -> {}, System::nanoTime);
+  }
+
+  /**
+   * Sets the rolling window of the outcomes.
+   * Default is 100 calls, of which at least 20 before opening.
+   * @param windowSize how many of the last calls are kept
+   * @param minimumCalls how many calls are needed to open the circuit
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker window(int windowSize, int minimumCalls) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("The window must have at least 1 call.");
+    }
+    if (minimumCalls < 1 || minimumCalls > windowSize) {
+      throw new IllegalArgumentException("The minimum calls must be between 1 and the window size.");
+    }
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets the rate of failures that opens the circuit.
+   * Default is 50.
+   * @param percent the rate, from 1 to 100
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker failureRate(int percent) {
+    checkPercent(percent);
+    return new CircuitBreaker(name, windowSize, minimumCalls, percent, slowCallNanos,
+        slowCallRateThreshold, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets when the calls are slow, and the rate of slow calls that opens the circuit.
+   * A slow call counts even if it succeeded, as it means that the operation is struggling already.
+   * Default is not to consider slow calls.
+   * @param duration the duration from which a call is slow
+   * @param unit the unit of the duration
+   * @param percent the rate, from 1 to 100
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker slowCalls(long duration, TimeUnit unit, int percent) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("The slow call duration must be greater than 0.");
+    }
+    checkPercent(percent);
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, unit.toNanos(duration),
+        percent, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets how long the circuit stays open before probing the operation again.
+   * Default is 60 seconds.
+   * @param duration how long the circuit stays open
+   * @param unit the unit of the duration
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker openFor(long duration, TimeUnit unit) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("The open duration must be greater than 0.");
+    }
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, unit.toNanos(duration), halfOpenCalls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets the calls let through when half open, all of which must succeed to close the circuit.
+   * Default is 5.
+   * @param calls the probe calls
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker halfOpenCalls(int calls) {
+    if (calls < 1) {
+      throw new IllegalArgumentException("There must be at least 1 call when half open.");
+    }
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, openNanos, calls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets which exceptions are failures. The others are neither failures nor successes, such as the ones of bad input.
+   * Default is all of them.
+   * @param recordOn true for the exceptions that are failures
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker recordOn(Predicate<Throwable> recordOn) {
+    if (recordOn == null) {
+      throw new IllegalArgumentException("You must provide a predicate, recordOn was null.");
+    }
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  /**
+   * Sets a listener of the state changes, such as for metrics.
+   * It is called by the caller that caused the change, so it must be quick.
+   * @param listener called with the state left and the new one
+   * @return A new CircuitBreaker with this new configuration
+   */
+  public CircuitBreaker onStateChange(BiConsumer<State, State> listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("You must provide a listener, listener was null.");
+    }
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  CircuitBreaker clock(LongSupplier clock) {
+    return new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold, slowCallNanos,
+        slowCallRateThreshold, openNanos, halfOpenCalls, recordOn, listener, clock);
+  }
+
+  private static void checkPercent(int percent) {
+    if (percent < 1 || percent > 100) {
+      throw new IllegalArgumentException("The rate must be between 1 and 100.");
+    }
+  }
+
+  /**
+   * @return the name of the operation
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * @return the current state
+   */
+  public State state() {
+    return phase.get().state;
+  }
+
+  /**
+   * @return the rate of failures in the window, -1 when there are not enough calls yet or not closed
+   */
+  public int failureRate() {
+    Window window = phase.get().window;
+    return window == null ? -1 : window.rate(window.failures.get(), minimumCalls);
+  }
+
+  /**
+   * @return the rate of slow calls in the window, -1 when there are not enough calls yet or not closed
+   */
+  public int slowCallRate() {
+    Window window = phase.get().window;
+    return window == null ? -1 : window.rate(window.slow.get(), minimumCalls);
+  }
+
+  /**
+   * @return how many calls were refused because the circuit was open
+   */
+  public long notPermittedCalls() {
+    return notPermitted.get();
+  }
+
+  /**
+   * Decorates the operation with this circuit breaker.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the decorated operation
+   */
+  public <T> Supplier<T> decorate(Supplier<T> operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
+    }
+    return () -> call(operation);
+  }
+
+  /**
+   * Calls the operation through this circuit breaker.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the provided result from the operation
+   * @throws CircuitBreakerOpenException when the circuit is open, without calling the operation
+   */
+  public <T> T call(Supplier<T> operation) {
+    if (!tryAcquirePermission()) {
+      throw new CircuitBreakerOpenException(name);
+    }
+    long start = clock.getAsLong();
+    T result;
+    try {
+      result = operation.get();
+    } catch (Throwable ex) {
+      // Also the errors, or the probe they took would never come back
+      onError(clock.getAsLong() - start, ex);
+      throw ex;
+    }
+    onSuccess(clock.getAsLong() - start);
+    return result;
+  }
+
+  /**
+   * For when the call is made outside of call(): a permitted one must be followed by onSuccess or onError.
+   * @return false when the circuit is open and the operation must not be called
+   */
+  public boolean tryAcquirePermission() {
+    while (true) {
+      Phase current = phase.get();
+      switch (current.state) {
+        case CLOSED:
+          return true;
+        case HALF_OPEN:
+          if (current.takeProbe()) {
+            return true;
+          }
+          // Probes never recorded, as for stages never completing: after the open duration it is open again
+          if (clock.getAsLong() - current.since < openNanos) {
+            notPermitted.incrementAndGet();
+            return false;
+          }
+          transition(current, Phase.open(clock.getAsLong()));
+          break;
+        default:
+          if (clock.getAsLong() - current.since < openNanos) {
+            notPermitted.incrementAndGet();
+            return false;
+          }
+          transition(current, Phase.halfOpen(clock.getAsLong(), halfOpenCalls));
+      }
+    }
+  }
+
+  /**
+   * Records a call that succeeded.
+   * @param durationNanos how long the call took
+   */
+  public void onSuccess(long durationNanos) {
+    record(durationNanos >= slowCallNanos ? SLOW : 0);
+  }
+
+  /**
+   * Records a call that failed.
+   * @param durationNanos how long the call took
+   * @param error what the call threw
+   */
+  public void onError(long durationNanos, Throwable error) {
+    if (!recordOn.test(error)) {
+      Phase current = phase.get();
+      if (current.state == State.HALF_OPEN) {
+        current.returnProbe();
+      }
+      return;
+    }
+    record(FAILED | (durationNanos >= slowCallNanos ? SLOW : 0));
+  }
+
+  private void record(int outcome) {
+    Phase current = phase.get();
+    if (current.state == State.HALF_OPEN) {
+      if (outcome != 0) {
+        transition(current, Phase.open(clock.getAsLong()));
+      } else if (current.succeeded() == halfOpenCalls) {
+        transition(current, Phase.closed(clock.getAsLong(), windowSize));
+      }
+      return;
+    }
+    if (current.state == State.OPEN) {
+      // A call started before opening
+      return;
+    }
+    Window window = current.window;
+    window.record(outcome);
+    int failureRate = window.rate(window.failures.get(), minimumCalls);
+    int slowRate = window.rate(window.slow.get(), minimumCalls);
+    if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+      if (transition(current, Phase.open(clock.getAsLong()))) {
+        LOGGER.warning(format(
+            "The circuit breaker \"%s\" opened, failures: %d%%, slow calls: %d%%",
+            name,
+            failureRate,
+            slowRate));
+      }
+    }
+  }
+
+  private boolean transition(Phase from, Phase to) {
+    if (!phase.compareAndSet(from, to)) {
+      return false;
+    }
+    LOGGER.info(() -> format(
+        "The circuit breaker \"%s\" went from %s to %s",
+        name,
+        from.state,
+        to.state));
+    listener.accept(from.state, to.state);
+    return true;
+  }
+
+  /**
+   * A state, replaced as a whole when it changes so that what is recorded for a state cannot leak into the next one.
+   */
+  private static final class Phase {
+    final State state;
+    final long since;
+    // When closed
+    final Window window;
+    // When half open
+    final AtomicInteger probes;
+    final AtomicInteger successes;
+
+    private Phase(State state, long since, Window window, int probes) {
+      this.state = state;
+      this.since = since;
+      this.window = window;
+      this.probes = new AtomicInteger(probes);
+      this.successes = new AtomicInteger();
+    }
+
+    static Phase closed(long now, int windowSize) {
+      return new Phase(State.CLOSED, now, new Window(windowSize), 0);
+    }
+
+    static Phase open(long now) {
+      return new Phase(State.OPEN, now, null, 0);
+    }
+
+    static Phase halfOpen(long now, int probes) {
+      return new Phase(State.HALF_OPEN, now, null, probes);
+    }
+
+    boolean takeProbe() {
+      while (true) {
+        int current = probes.get();
+        if (current <= 0) {
+          return false;
+        }
+        if (probes.compareAndSet(current, current - 1)) {
+          return true;
+        }
+      }
+    }
+
+    void returnProbe() {
+      probes.incrementAndGet();
+    }
+
+    int succeeded() {
+      return successes.incrementAndGet();
+    }
+  }
+
+  /**
+   * The outcomes of the last calls, in a ring buffer.
+   * Each slot is swapped atomically, and the counters are corrected by what the slot held before.
+   */
+  private static final class Window {
+    final AtomicIntegerArray slots;
+    final AtomicLong cursor = new AtomicLong();
+    final AtomicInteger recorded = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicInteger slow = new AtomicInteger();
+
+    Window(int size) {
+      slots = new AtomicIntegerArray(size);
+    }
+
+    void record(int outcome) {
+      int slot = (int) (cursor.getAndIncrement() % slots.length());
+      int old = slots.getAndSet(slot, RECORDED | outcome);
+      if ((old & RECORDED) == 0) {
+        recorded.incrementAndGet();
+      }
+      if ((outcome & FAILED) != (old & FAILED)) {
+        failures.addAndGet((outcome & FAILED) != 0 ? 1 : -1);
+      }
+      if ((outcome & SLOW) != (old & SLOW)) {
+        slow.addAndGet((outcome & SLOW) != 0 ? 1 : -1);
+      }
+    }
+
+    int rate(int count, int minimumCalls) {
+      int calls = recorded.get();
+      return calls < minimumCalls ? -1 : count * 100 / calls;
+    }
+  }
+
+}
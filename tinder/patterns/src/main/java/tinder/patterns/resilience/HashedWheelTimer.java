@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A timer for many short tasks at low precision, such as the waits between the retries.
+ *
+ * The time is cut in ticks, and the tasks are put in the bucket of their tick on a wheel of buckets; a task further
+ * than a full turn of the wheel waits for as many rounds. Scheduling is adding to a queue, and the only thread of the
+ * timer moves the tasks to their buckets and runs the ones of each tick: no ordering of the tasks is kept, unlike the
+ * scheduled executors, so thousands of them cost about the same as one.
+ * The tasks are run in the timer thread, so they must only hand the work to some executor.
+ *
+ * While no task is waiting the thread parks until the next one is scheduled, instead of ticking for nothing.
+ *
+ * The patterns share one timer with a tick of 1ms, started at its first use.
+ *
+ * @author Raffaele Ragni
+ */
+final class HashedWheelTimer {
+
+  private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+
+  private final long tickNanos;
+  private final int mask;
+  private final Queue<Task>[] wheel;
+  private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+  private final long start = System.nanoTime();
+  private final Thread worker;
+  // Set by the worker while it waits for tasks, for schedule() to wake it up
+  private volatile boolean idle;
+  // Tasks in the wheel, only used by the worker
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  HashedWheelTimer(String name, long tick, TimeUnit unit, int buckets) {
+    if (Integer.bitCount(buckets) != 1) {
+      throw new IllegalArgumentException("The buckets must be a power of 2.");
+    }
+    this.tickNanos = unit.toNanos(tick);
+    this.mask = buckets - 1;
+    this.wheel = new Queue[buckets];
+    for (int i = 0; i < buckets; i++) {
+      wheel[i] = new ArrayDeque<>();
+    }
+    this.worker = new Thread(this::work, name);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * @return the timer shared by the patterns
+   */
+  static HashedWheelTimer shared() {
+    return Shared.INSTANCE;
+  }
+
+  /**
+   * Runs the task after the delay, at the first tick after it.
+   * @param task the task
+   * @param delay the delay
+   * @param unit the unit of the delay
+   */
+  void schedule(Runnable task, long delay, TimeUnit unit) {
+    pending.add(new Task(task, System.nanoTime() - start + unit.toNanos(delay)));
+    if (idle) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  private void work() {
+    long tick = 0;
+    while (true) {
+      if (size == 0 && pending.isEmpty()) {
+        idle = true;
+        // Checked again after setting idle, so that a task added meanwhile is not missed
+        while (pending.isEmpty()) {
+          LockSupport.park(this);
+        }
+        idle = false;
+        // The wheel is empty, it restarts from the current time
+        tick = (System.nanoTime() - start) / tickNanos;
+      }
+      long wait;
+      while ((wait = start + (tick + 1) * tickNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(this, wait);
+      }
+      transfer(tick);
+      size -= expire(wheel[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void transfer(long tick) {
+    Task task;
+    while ((task = pending.poll()) != null) {
+      long due = task.deadline / tickNanos;
+      task.rounds = (due - tick) / wheel.length;
+      // The ones due already go in the current tick
+      wheel[(int) (Math.max(due, tick) & mask)].add(task);
+      size++;
+    }
+  }
+
+  /**
+   * @return the number of tasks run
+   */
+  private static int expire(Queue<Task> bucket) {
+    int result = 0;
+    Iterator<Task> it = bucket.iterator();
+    while (it.hasNext()) {
+      Task task = it.next();
+      if (task.rounds > 0) {
+        task.rounds--;
+        continue;
+      }
+      it.remove();
+      result++;
+      try {
+        task.runnable.run();
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "A timer task failed", ex);
+      }
+    }
+    return result;
+  }
+
+  private static final class Shared {
+    // A turn of the wheel is about 1 second
+    static final HashedWheelTimer INSTANCE = new HashedWheelTimer("tinder-timer", 1, TimeUnit.MILLISECONDS, 1024);
+  }
+
+  private static final class Task {
+    final Runnable runnable;
+    final long deadline;
+    long rounds;
+
+    Task(Runnable runnable, long deadline) {
+      this.runnable = runnable;
+      this.deadline = deadline;
+    }
+  }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import static java.lang.String.format;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Sends the same request again when the first one is taking long, and takes the response that comes first.
+ * Only for requests that can be done twice, such as reads on replicas of the same data.
+ *
+ * The slow responses are often a matter of luck: the replica was in a gc pause, or had a queue. Another request after
+ * a delay most likely takes the normal time, so that the slowest responses take about the delay plus the normal time.
+ * The delay is fixed, or it is a percentile of the recent latencies of the operation (the p95 makes 5% of the calls
+ * hedged), starting from the fixed delay until there are enough of them. The latencies are of the whole calls, so the
+ * slow requests that were hedged still count in the tail.
+ * The hedged requests are capped to a percentage of the calls, so that when the operation gets slow for everyone,
+ * hedging does not double its load. When a response comes, the other request is cancelled, through the cancel()
+ * of its CompletableFuture.
+ *
+ * A failure does not cause a hedge, that is what Retryable is for: the call fails with the exception when no other
+ * request is still going.
+ * No thread is blocked at any time: the delays are on a timer shared by the patterns, and the hedged requests are
+ * started on the executor (default is the common pool).
+ *
+ * The configuration methods return a new Hedged with its own latencies and counters: configure it first, then share
+ * the same one between the callers.
+ *
+ * @param <T> the type returned from the operation
+ *
+ * @author Raffaele Ragni
+ */
+public class Hedged<T> implements Supplier<CompletableFuture<T>> {
+
+  private static final Logger LOGGER = Logger.getLogger(Hedged.class.getName());
+
+  private static final long DEFAULT_DELAY = 50L;
+  private static final int DEFAULT_MAX_RATE = 10;
+  private static final long MIN_SAMPLES = 100L;
+
+  private final String name;
+  private final Supplier<? extends CompletionStage<T>> operation;
+  private final long delay;
+  private final double percentile;
+  private final int maxRate;
+  private final Executor executor;
+
+  private final LatencyHistogram latencies = new LatencyHistogram(1000);
+  private final RetryBudget budget;
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder hedgeWins = new LongAdder();
+
+  private Hedged(String name, Supplier<? extends CompletionStage<T>> operation,
+      long delay, double percentile, int maxRate, Executor executor) {
+    this.name = name;
+    this.operation = operation;
+    this.delay = delay;
+    this.percentile = percentile;
+    this.maxRate = maxRate;
+    this.executor = executor;
+    this.budget = RetryBudget.of(maxRate, 0, 10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns a Hedged for the operation, hedging after 50ms and at most 10% of the calls.
+   * @param operation the operation, called once or twice for each call
+   * @param <T> the type returned from the operation
+   * @return the Hedged
+   */
+  public static <T> Hedged<T> of(Supplier<? extends CompletionStage<T>> operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
+    }
+    return new Hedged<T>("hedged", operation, DEFAULT_DELAY, 0, DEFAULT_MAX_RATE, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Give a name to this operation, for the logs.
+   * @param name the name to give to the operation
+   * @return A new Hedged with this new configuration
+   */
+  public Hedged<T> named(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    return new Hedged<T>(name, operation, delay, percentile, maxRate, executor);
+  }
+
+  /**
+   * Sets a fixed delay after which the request is hedged.
+   * Default is 50ms.
+   * @param delay the delay in milliseconds
+   * @return A new Hedged with this new configuration
+   */
+  public Hedged<T> delay(long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Can't wait for a negative time, provide a positive number or 0.");
+    }
+    return new Hedged<T>(name, operation, delay, percentile, maxRate, executor);
+  }
+
+  /**
+   * Hedges after a percentile of the recent latencies instead, such as 0.95.
+   * Until there are enough of them (100), the fixed delay is used.
+   * @param percentile the percentile, between 0 and 1 excluded
+   * @return A new Hedged with this new configuration
+   */
+  public Hedged<T> percentile(double percentile) {
+    if (percentile <= 0 || percentile >= 1) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 1 excluded.");
+    }
+    return new Hedged<T>(name, operation, delay, percentile, maxRate, executor);
+  }
+
+  /**
+   * Sets the most of the calls that can be hedged, in the last 10 seconds.
+   * Default is 10.
+   * @param percent the hedged calls, as a percentage of the calls
+   * @return A new Hedged with this new configuration
+   */
+  public Hedged<T> maxRate(int percent) {
+    if (percent < 1 || percent > 100) {
+      throw new IllegalArgumentException("The rate must be between 1 and 100.");
+    }
+    return new Hedged<T>(name, operation, delay, percentile, percent, executor);
+  }
+
+  /**
+   * Sets where the hedged requests are started.
+   * Default is the common pool.
+   * @param executor the executor of the hedged requests
+   * @return A new Hedged with this new configuration
+   */
+  public Hedged<T> executor(Executor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("You must provide an executor, executor was null.");
+    }
+    return new Hedged<T>(name, operation, delay, percentile, maxRate, executor);
+  }
+
+  /**
+   * @return the calls done
+   */
+  public long calls() {
+    return calls.sum();
+  }
+
+  /**
+   * @return the calls for which a second request was sent
+   */
+  public long hedges() {
+    return hedges.sum();
+  }
+
+  /**
+   * @return the calls for which the second request answered first
+   */
+  public long hedgeWins() {
+    return hedgeWins.sum();
+  }
+
+  /**
+   * @return the delay after which a call is hedged now, in milliseconds
+   */
+  public long currentDelay() {
+    if (percentile > 0 && latencies.samples() >= MIN_SAMPLES) {
+      return TimeUnit.NANOSECONDS.toMillis(latencies.percentile(percentile));
+    }
+    return delay;
+  }
+
+  /**
+   * An alias to call() for a Supplier so it can be used in functional cases.
+   * @return the first response
+   */
+  @Override
+  public CompletableFuture<T> get() {
+    return call();
+  }
+
+  /**
+   * Sends the request right away in the calling thread, and the hedged one later if needed.
+   * @return the first response
+   */
+  public CompletableFuture<T> call() {
+    calls.increment();
+    budget.onSuccess();
+    Invocation invocation = new Invocation();
+    invocation.start(false);
+    if (!invocation.result.isDone()) {
+      HashedWheelTimer.shared().schedule(invocation::hedge, currentDelay(), TimeUnit.MILLISECONDS);
+    }
+    return invocation.result;
+  }
+
+  /**
+   * The requests of one call.
+   */
+  private final class Invocation {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    // Requests started that did not fail (yet)
+    final AtomicInteger inFlight = new AtomicInteger();
+    final long started = System.nanoTime();
+    volatile CompletableFuture<T> primary;
+    volatile CompletableFuture<T> secondary;
+    volatile Throwable failure;
+
+    void hedge() {
+      if (result.isDone()) {
+        return;
+      }
+      if (!budget.tryRetry()) {
+        LOGGER.fine(() -> format("The operation \"%s\" is not hedged, over the max rate", name));
+        return;
+      }
+      // Counted before checking again, so that a failure of the first request now waits for this one
+      inFlight.incrementAndGet();
+      if (result.isDone()) {
+        return;
+      }
+      try {
+        executor.execute(() -> start(true));
+      } catch (RejectedExecutionException ex) {
+        LOGGER.fine(() -> format("The operation \"%s\" is not hedged, the executor refused it", name));
+        refused(ex);
+        return;
+      }
+      hedges.increment();
+    }
+
+    void start(boolean hedge) {
+      if (!hedge) {
+        inFlight.incrementAndGet();
+      }
+      CompletableFuture<T> request;
+      try {
+        request = operation.get().toCompletableFuture();
+      } catch (RuntimeException ex) {
+        failed(ex);
+        return;
+      }
+      if (hedge) {
+        secondary = request;
+      } else {
+        primary = request;
+      }
+      request.whenComplete((value, ex) -> {
+        if (ex != null) {
+          failed(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+          return;
+        }
+        // The latency of the whole call, as the request that lost would have taken at least that much
+        if (result.complete(value)) {
+          latencies.record(System.nanoTime() - started);
+          if (hedge) {
+            hedgeWins.increment();
+          }
+        }
+        cancel(hedge ? primary : secondary);
+      });
+      // The response of the other one may have come before this request was set
+      if (result.isDone()) {
+        cancel(request);
+      }
+    }
+
+    /**
+     * Failures are not hedged: the call fails when no other request can still answer.
+     */
+    void failed(Throwable ex) {
+      failure = ex;
+      if (inFlight.decrementAndGet() == 0) {
+        result.completeExceptionally(ex);
+      }
+    }
+
+    /**
+     * A hedge that never started: when the first request already failed, the call fails with its failure.
+     */
+    void refused(RejectedExecutionException ex) {
+      if (inFlight.decrementAndGet() == 0) {
+        result.completeExceptionally(failure != null ? failure : ex);
+      }
+    }
+
+    void cancel(CompletableFuture<T> other) {
+      if (other != null && !other.isDone()) {
+        other.cancel(true);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percentiles of the recent latencies, recorded without locks.
+ *
+ * The latencies are counted in buckets growing exponentially, 8 for each power of 2 of microseconds, so the
+ * percentiles are within 12.5% of the real value. Only the recent ones count: the samples go in the current of two
+ * windows, and when it is full the other one is cleared and becomes the current, so the percentiles are always of
+ * the last one or two windows of samples.
+ *
+ * @author Raffaele Ragni
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+  private final long windowSamples;
+  private final AtomicLongArray[] windows = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+  private final AtomicLong[] counts = {new AtomicLong(), new AtomicLong()};
+  private final AtomicInteger current = new AtomicInteger();
+
+  /**
+   * @param windowSamples the samples in each of the two windows
+   */
+  public LatencyHistogram(long windowSamples) {
+    if (windowSamples < 1) {
+      throw new IllegalArgumentException("The window must have at least 1 sample.");
+    }
+    this.windowSamples = windowSamples;
+  }
+
+  /**
+   * @param nanos the latency
+   */
+  public void record(long nanos) {
+    int window = current.get();
+    windows[window].incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+    if (counts[window].incrementAndGet() == windowSamples) {
+      // The full one, and the one cleared to take its place
+      int next = 1 - window;
+      AtomicLongArray cleared = windows[next];
+      for (int i = 0; i < BUCKETS; i++) {
+        cleared.set(i, 0);
+      }
+      counts[next].set(0);
+      current.set(next);
+    }
+  }
+
+  /**
+   * @return the samples that count for the percentiles
+   */
+  public long samples() {
+    return counts[0].get() + counts[1].get();
+  }
+
+  /**
+   * @param percentile the percentile, between 0 and 1
+   * @return the latency under which are the given part of the samples, in nanoseconds, or -1 with no samples
+   */
+  public long percentile(double percentile) {
+    if (percentile < 0 || percentile > 1) {
+      throw new IllegalArgumentException("The percentile must be between 0 and 1.");
+    }
+    long total = samples();
+    if (total == 0) {
+      return -1;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += windows[0].get(i) + windows[1].get(i);
+      if (seen >= target) {
+        return upperBound(i) * 1000;
+      }
+    }
+    return upperBound(BUCKETS - 1) * 1000;
+  }
+
+  static int bucket(long micros) {
+    if (micros < SUB) {
+      return (int) micros;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (msb - SUB_BITS)) & (SUB - 1);
+    return (msb - SUB_BITS + 1) * SUB + sub;
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < SUB) {
+      return bucket;
+    }
+    int shift = bucket / SUB - 1;
+    long lower = (long) (SUB + bucket % SUB) << shift;
+    return lower + (1L << shift) - 1;
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Allows retries only up to a percentage of the recent successful calls, shared between the Retryables of the same
+ * operation. With the budget, retrying can add at most that percentage of load to a failing operation, instead of
+ * multiplying the load by the attempts. A minimum of retries per second is always allowed, for the operations that
+ * are called seldom.
+ *
+ * The recent calls are the ones of the last ttl, counted in 10 slots; the counts are approximate under contention,
+ * which is fine for a budget.
+ *
+ * @author Raffaele Ragni
+ */
+public final class RetryBudget {
+
+  private static final int SLOTS = 10;
+
+  private final int percent;
+  private final long minRetries;
+  private final long slotNanos;
+  private final LongSupplier clock;
+
+  // Per slot: the period it counts for, and its counts
+  private final AtomicLongArray periods = new AtomicLongArray(SLOTS);
+  private final AtomicLongArray successes = new AtomicLongArray(SLOTS);
+  private final AtomicLongArray retries = new AtomicLongArray(SLOTS);
+
+  RetryBudget(int percent, long minRetriesPerSecond, long ttlNanos, LongSupplier clock) {
+    if (percent < 0) {
+      throw new IllegalArgumentException("The percentage of retries can't be negative.");
+    }
+    if (minRetriesPerSecond < 0) {
+      throw new IllegalArgumentException("The minimum retries per second can't be negative.");
+    }
+    if (ttlNanos < TimeUnit.SECONDS.toNanos(1)) {
+      throw new IllegalArgumentException("The ttl must be at least 1 second.");
+    }
+    this.percent = percent;
+    this.minRetries = minRetriesPerSecond * TimeUnit.NANOSECONDS.toSeconds(ttlNanos);
+    this.slotNanos = ttlNanos / SLOTS;
+    this.clock = clock;
+    for (int i = 0; i < SLOTS; i++) {
+      periods.set(i, Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * @param percent the retries allowed, as a percentage of the successful calls
+   * @param minRetriesPerSecond the retries always allowed
+   * @param ttl how long the calls count
+   * @param unit unit of the ttl
+   * @return the budget
+   */
+  public static RetryBudget of(int percent, long minRetriesPerSecond, long ttl, TimeUnit unit) {
+    return new RetryBudget(percent, minRetriesPerSecond, unit.toNanos(ttl), System::nanoTime);
+  }
+
+  /**
+   * Records a successful call.
+   */
+  public void onSuccess() {
+    successes.incrementAndGet(slot(clock.getAsLong() / slotNanos));
+  }
+
+  /**
+   * Takes a retry from the budget.
+   * @return false when the budget is over, and the call must not be retried
+   */
+  public boolean tryRetry() {
+    long period = clock.getAsLong() / slotNanos;
+    long recentSuccesses = 0;
+    long recentRetries = 0;
+    for (int i = 0; i < SLOTS; i++) {
+      if (periods.get(i) > period - SLOTS) {
+        recentSuccesses += successes.get(i);
+        recentRetries += retries.get(i);
+      }
+    }
+    if (recentRetries >= minRetries + recentSuccesses * percent / 100) {
+      return false;
+    }
+    retries.incrementAndGet(slot(period));
+    return true;
+  }
+
+  /**
+   * @return the slot of the period, cleared first when it was still of an older period
+   */
+  private int slot(long period) {
+    int slot = (int) Math.floorMod(period, (long) SLOTS);
+    long old = periods.get(slot);
+    if (old != period && periods.compareAndSet(slot, old, period)) {
+      successes.set(slot, 0);
+      retries.set(slot, 0);
+    }
+    return slot;
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the retries, that can be shared by the Retryables of an operation and exposed to a metrics library.
+ *
+ * @author Raffaele Ragni
+ */
+public final class RetryMetrics {
+
+  final LongAdder attempts = new LongAdder();
+  final LongAdder retries = new LongAdder();
+  final LongAdder budgetExhausted = new LongAdder();
+  final LongAdder deadlineExceeded = new LongAdder();
+
+  /**
+   * @return the calls of the operation, first ones and retries
+   */
+  public long attempts() {
+    return attempts.sum();
+  }
+
+  /**
+   * @return the calls of the operation that were retries
+   */
+  public long retries() {
+    return retries.sum();
+  }
+
+  /**
+   * @return the retries not done because the budget was over
+   */
+  public long budgetExhausted() {
+    return budgetExhausted.sum();
+  }
+
+  /**
+   * @return the retries not done because they would have gone past the deadline
+   */
+  public long deadlineExceeded() {
+    return deadlineExceeded.sum();
+  }
+
+}
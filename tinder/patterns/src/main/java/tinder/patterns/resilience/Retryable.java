@@ -32,10 +32,17 @@ import java.util.logging.Logger;
  * A new retry object will be returned with such configuration.
  * 
  * The default wait time between retries is 0.
- * It can be configured, it is in milliseconds.
+ * It can be configured, it is in milliseconds: as a fixed delay, or as a Backoff growing at each retry with a
+ * random jitter, so that clients failing together don't retry all together.
+ * An overall deadline stops the retries that would start after it, and a RetryBudget shared by the callers of an
+ * operation allows retries only as a part of its successful calls, so that retrying can't multiply the load on an
+ * operation that is failing. The attempts, retries and retries not done are counted in the RetryMetrics.
  * 
  * The default exception behavior is to throw the last caught one.
  * 
+ * A Retryable keeps no state of its own between the calls: once configured, the same one can be shared and called
+ * concurrently.
+ * 
  * Given an operation and a number of attempts, this class will attempt the operation again until it is successful.
  * The operation is successful when it throws no exception.
  * 
@@ -47,6 +54,8 @@ import java.util.logging.Logger;
  * A circuit breaker can also be specified.
  * It is a function that given the exception being thrown by the operation, returns true if such exception must break
  * the circuit, and thus forcing the Retryable to always stop and throw it.
+ * Or it can be a CircuitBreaker, which keeps its state between the calls: when it opens, all the callers stop
+ * trying the operation for a while.
  * 
  * @param <T> the type returned from the operation, if any
  * 
@@ -66,7 +75,7 @@ public class Retryable<T> implements Supplier<T> {
   // The number of attempts to reach before finally failing
   private final long maxAttempts;
   // Delay to wait between retries
-  private final long delay;
+  private final Backoff backoff;
   // when throwFirst is true, the first received exception is the one being saved
   // and the one being thrown at the end if maxAttempts is reached.
   // Otherwhise, when false, the last caught exception from the operation is the one that will be thrown.
@@ -75,21 +84,28 @@ public class Retryable<T> implements Supplier<T> {
   // (the caller defines it through this function).
   // A result of true means the Retryable must STOP and throw such exception immediately.
   private final Function<Throwable, Boolean> circuitBreaker;
-    
-  private RuntimeException caught = new IllegalStateException(
-      "Operation has failed without throwing any exception or returning any data." +
-      " There aren't any known explanations of how that could happen.");
-  private boolean firstException = true;
+  // Stateful circuit breaker each attempt goes through, its CircuitBreakerOpenException stops the retries. Optional.
+  private final CircuitBreaker breaker;
+  // Time in milliseconds from the first attempt after which no retries are started, 0 for none
+  private final long deadline;
+  // Shared budget limiting the retries to a part of the successful calls. Optional.
+  private final RetryBudget budget;
+  private final RetryMetrics metrics;
   
   private Retryable(String name, Supplier<T> operation,
-      long maxAttempts, long delay, boolean throwFirst,
-      Function<Throwable, Boolean> circuitBreaker) {
+      long maxAttempts, Backoff backoff, boolean throwFirst,
+      Function<Throwable, Boolean> circuitBreaker, CircuitBreaker breaker,
+      long deadline, RetryBudget budget, RetryMetrics metrics) {
     this.name = name;
     this.operation = operation;
     this.maxAttempts = maxAttempts;
-    this.delay = delay;
+    this.backoff = backoff;
     this.throwFirst = throwFirst;
     this.circuitBreaker = circuitBreaker;
+    this.breaker = breaker;
+    this.deadline = deadline;
+    this.budget = budget;
+    this.metrics = metrics;
   }
   
   /**
@@ -102,7 +118,7 @@ public class Retryable<T> implements Supplier<T> {
     if (operation == null) {
       throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
     }
-    return new Retryable<T>("retryable", operation, DEFAULT_RETRIES, DEFAULT_DELAY, false, null);
+    return new Retryable<T>("retryable", operation, DEFAULT_RETRIES, Backoff.fixed(DEFAULT_DELAY), false, null, null, 0L, null, new RetryMetrics());
   }
   
   /**
@@ -115,7 +131,7 @@ public class Retryable<T> implements Supplier<T> {
     if (name == null) {
       throw new IllegalArgumentException("You must provide a name, name was null.");
     }
-    return new Retryable<T>(name, operation, maxAttempts, delay, throwFirst, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
   }
   
   /**
@@ -128,7 +144,7 @@ public class Retryable<T> implements Supplier<T> {
     if (maxAttempts < 1) {
       throw new IllegalArgumentException("Can't try an amount less than 1 times. Use a number greater than 0.");
     }
-    return new Retryable<T>(name, operation, maxAttempts, delay, throwFirst, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
   }
   
   /**
@@ -142,7 +158,67 @@ public class Retryable<T> implements Supplier<T> {
     if (delay < 0) {
       throw new IllegalArgumentException("Can't wait for a negative time, provide a positive number or 0.");
     }
-    return new Retryable<T>(name, operation, maxAttempts, delay, throwFirst, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, Backoff.fixed(delay), throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * Sets how long to wait before each retry, such as an exponential backoff with jitter.
+   * It replaces the delay.
+   * @param backoff the waits between the attempts
+   * @return A new Retryable with this new configuration
+   */
+  public Retryable<T> backoff(Backoff backoff) {
+    if (backoff == null) {
+      throw new IllegalArgumentException("You must provide a backoff, backoff was null.");
+    }
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * Sets an overall deadline from the first attempt: a retry that would start after it is not done, and the
+   * exception is thrown instead.
+   * Default is no deadline.
+   * @param deadline the deadline in milliseconds
+   * @return A new Retryable with this new configuration
+   */
+  public Retryable<T> deadline(long deadline) {
+    if (deadline <= 0) {
+      throw new IllegalArgumentException("The deadline must be greater than 0.");
+    }
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * Limits the retries with a budget, to be shared between the Retryables of the same operation.
+   * When the budget is over the exception is thrown without retrying.
+   * @param budget the retry budget
+   * @return A new Retryable with this new configuration
+   */
+  public Retryable<T> budget(RetryBudget budget) {
+    if (budget == null) {
+      throw new IllegalArgumentException("You must provide a budget, budget was null.");
+    }
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * Counts the attempts and retries in the given metrics, to be shared between the Retryables of the same operation.
+   * Default is metrics of this Retryable only.
+   * @param metrics the counters
+   * @return A new Retryable with this new configuration
+   */
+  public Retryable<T> metrics(RetryMetrics metrics) {
+    if (metrics == null) {
+      throw new IllegalArgumentException("You must provide the metrics, metrics was null.");
+    }
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * @return the counters of the attempts and retries
+   */
+  public RetryMetrics metrics() {
+    return metrics;
   }
   
   /**
@@ -153,7 +229,7 @@ public class Retryable<T> implements Supplier<T> {
    * @return A new Retryable with this new configuration
    */
   public Retryable<T> throwFirst() {
-    return new Retryable<T>(name, operation, maxAttempts, delay, true, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, backoff, true, circuitBreaker, breaker, deadline, budget, metrics);
   }
   
   /**
@@ -164,7 +240,7 @@ public class Retryable<T> implements Supplier<T> {
    * @return A new Retryable with this new configuration
    */
   public Retryable<T> throwLast() {
-    return new Retryable<T>(name, operation, maxAttempts, delay, false, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, backoff, false, circuitBreaker, breaker, deadline, budget, metrics);
   }
   
   /**
@@ -175,7 +251,22 @@ public class Retryable<T> implements Supplier<T> {
    * @return A new Retryable with this new configuration
    */
   public Retryable<T> circuitBreaker(Function<Throwable, Boolean> circuitBreaker) {
-    return new Retryable<T>(name, operation, maxAttempts, delay, throwFirst, circuitBreaker);
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
+  }
+
+  /**
+   * Applies a stateful circuit breaker, shared with the other callers of the same operation.
+   * Each attempt goes through it, and when it is open the retries stop right away with a
+   * CircuitBreakerOpenException, instead of waiting out the attempts against a failing operation.
+   * The circuit breaker function, set before or after this, still applies to the other exceptions.
+   * @param breaker the circuit breaker
+   * @return A new Retryable with this new configuration
+   */
+  public Retryable<T> circuitBreaker(CircuitBreaker breaker) {
+    if (breaker == null) {
+      throw new IllegalArgumentException("You must provide a circuit breaker, breaker was null.");
+    }
+    return new Retryable<T>(name, operation, maxAttempts, backoff, throwFirst, circuitBreaker, breaker, deadline, budget, metrics);
   }
   
 
@@ -194,40 +285,64 @@ public class Retryable<T> implements Supplier<T> {
    * @return the provided result from the operation
    */
   public T retry() {
+    // All the state of the call is here, so that the same Retryable can be called concurrently
+    long start = deadline > 0L ? System.nanoTime() : 0L;
+    long wait = 0L;
+    RuntimeException caught = null;
     for (int i = 0; i < maxAttempts; i++) {
+      metrics.attempts.increment();
       // Attempt the operation and catch the exceptions
       try {
-        return operation.get();
+        T result = breaker == null ? operation.get() : breaker.call(operation);
+        if (budget != null) {
+          budget.onSuccess();
+        }
+        return result;
       } catch (RuntimeException ex) {
         LOGGER.warning(format(
             "The operation \"%s\" was attempted %d time/s, but fails with: \"%s\"",
             name,
             i + 1,
             ex.getMessage()));
-        manageException(ex);
+        caught = manageException(ex, caught);
+      }
+      if (i + 1 < maxAttempts) {
+        wait = backoff.delay(i + 1, wait);
+        checkRetry(start, wait, caught);
+        waitForRetry(wait, caught);
+        metrics.retries.increment();
       }
-      waitForRetry(caught);
     }
     // All failed, throw whatever we had.
     throw caught;
   }
+
+  private void checkRetry(long start, long wait, RuntimeException caught) {
+    if (deadline > 0L && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + wait > deadline) {
+      metrics.deadlineExceeded.increment();
+      LOGGER.warning(format("The operation \"%s\" is not retried, its deadline would be passed", name));
+      throw caught;
+    }
+    if (budget != null && !budget.tryRetry()) {
+      metrics.budgetExhausted.increment();
+      LOGGER.warning(format("The operation \"%s\" is not retried, its retry budget is over", name));
+      throw caught;
+    }
+  }
   
-  private void manageException(RuntimeException ex) {
-    if (circuitBreaker != null && circuitBreaker.apply(ex)) {
+  /**
+   * @return the exception to keep, between the new one and the one kept so far (null for none)
+   */
+  private RuntimeException manageException(RuntimeException ex, RuntimeException caught) {
+    boolean open = breaker != null && ex instanceof CircuitBreakerOpenException;
+    if (open || (circuitBreaker != null && circuitBreaker.apply(ex))) {
       // breaking the circuit will immediately throw the exception
       throw ex;
     }
-    if (throwFirst) {
-      if (firstException) {
-        caught = ex;
-      }
-    } else {
-      caught = ex;
-    }
-    firstException = false;
+    return throwFirst && caught != null ? caught : ex;
   }
   
-  private void waitForRetry(RuntimeException caught) {
+  private void waitForRetry(long delay, RuntimeException caught) {
     // Wait for a delay until the next try, if specified.
     if (delay > 0L) {
       try {
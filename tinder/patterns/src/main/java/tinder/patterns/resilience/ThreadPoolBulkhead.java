@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls to a dependency in threads of its own, so that the callers never run it: they get a
+ * CompletableFuture right away, and can stop waiting for it (with a timeout) while the call goes on in the bulkhead.
+ *
+ * The threads are a fixed number, created when needed and kept alive. The calls over them wait in a bounded queue,
+ * and when that is full too the result is a BulkheadFullException, right away.
+ * The threads are daemons, shutdown() stops them when the bulkhead is not used anymore.
+ *
+ * It decorates Suppliers as the other patterns, into Suppliers of a CompletableFuture, such as the ones of
+ * AsyncRetryable and Hedged, for example:
+ *   AsyncRetryable.of(bulkhead.decorate(RateLimit.asFailing(...)))
+ *
+ * @author Raffaele Ragni
+ */
+public final class ThreadPoolBulkhead {
+
+  private final String name;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder rejected = new LongAdder();
+
+  private ThreadPoolBulkhead(String name, int threads, int queueSize) {
+    this.name = name;
+    AtomicInteger counter = new AtomicInteger();
+    BlockingQueue<Runnable> queue = queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize);
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+      Thread thread = new Thread(r, "tinder-bulkhead-" + name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @param name the name of the dependency, for the threads and the exceptions
+   * @param threads the calls that can be going on at the same time
+   * @param queueSize the calls that can wait for a thread, 0 for none
+   * @return the bulkhead
+   */
+  public static ThreadPoolBulkhead of(String name, int threads, int queueSize) {
+    if (name == null) {
+      throw new IllegalArgumentException("You must provide a name, name was null.");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("There must be at least 1 thread.");
+    }
+    if (queueSize < 0) {
+      throw new IllegalArgumentException("The queue size can't be negative.");
+    }
+    return new ThreadPoolBulkhead(name, threads, queueSize);
+  }
+
+  /**
+   * @return the calls going on now
+   */
+  public int inUse() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return the calls waiting now
+   */
+  public int waiting() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return the calls refused because the bulkhead was full
+   */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Decorates the operation with this bulkhead.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the decorated operation
+   */
+  public <T> Supplier<CompletableFuture<T>> decorate(Supplier<T> operation) {
+    if (operation == null) {
+      throw new IllegalArgumentException("You must provide an operation for this class, operation was null.");
+    }
+    return () -> submit(operation);
+  }
+
+  /**
+   * Runs the operation in the bulkhead.
+   * @param <T> the type returned from the operation, if any
+   * @param operation the operation
+   * @return the result of the operation, or a BulkheadFullException when there was no place for it
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> operation) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        if (result.isDone()) {
+          // Cancelled while waiting
+          return;
+        }
+        try {
+          result.complete(operation.get());
+        } catch (RuntimeException ex) {
+          result.completeExceptionally(ex);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      rejected.increment();
+      result.completeExceptionally(new BulkheadFullException(name));
+    }
+    return result;
+  }
+
+  /**
+   * Stops the threads once the calls submitted already are over.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class AdaptiveLimitTest {
+
+  @Test
+  public void testConstructors() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AdaptiveLimit.of(1, 0, 10));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AdaptiveLimit.of(5, 10, 5));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AdaptiveLimit.of(20, 1, 10));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AdaptiveLimit.of(5, 1, 10).limited(null, () -> 1));
+  }
+
+  @Test
+  public void testAcquire() {
+    AdaptiveLimit limit = AdaptiveLimit.of(2, 1, 10);
+    Assertions.assertTrue(limit.tryAcquire());
+    Assertions.assertTrue(limit.tryAcquire());
+    Assertions.assertFalse(limit.tryAcquire());
+    Assertions.assertEquals(2, limit.inFlight());
+    limit.ignore();
+    Assertions.assertTrue(limit.tryAcquire());
+  }
+
+  @Test
+  public void testFollowsTheBackend() {
+    SyntheticBackend backend = new SyntheticBackend(10_000_000, 50);
+    AdaptiveLimit limit = AdaptiveLimit.of(10, 1, 1000);
+
+    // Grows up to around the capacity, and not much further
+    int[] limits = backend.run(limit, 500, 200);
+    Assertions.assertTrue(limits[199] >= 50 && limits[199] <= 80, "limits: " + Arrays.toString(limits));
+
+    // The backend degrades, and the limit follows it down
+    backend.capacity = 20;
+    limits = backend.run(limit, 500, 200);
+    Assertions.assertTrue(limits[199] >= 20 && limits[199] <= 40, "limits: " + Arrays.toString(limits));
+
+    // And back up when it recovers
+    backend.capacity = 50;
+    limits = backend.run(limit, 500, 200);
+    Assertions.assertTrue(limits[199] >= 50 && limits[199] <= 80, "limits: " + Arrays.toString(limits));
+  }
+
+  @Test
+  public void testDoesNotGrowUnused() {
+    SyntheticBackend backend = new SyntheticBackend(10_000_000, 1000);
+    AdaptiveLimit limit = AdaptiveLimit.of(100, 1, 1000);
+    backend.run(limit, 20, 200);
+    Assertions.assertEquals(100, limit.limit());
+  }
+
+  @Test
+  public void testDrops() {
+    AdaptiveLimit limit = AdaptiveLimit.of(100, 1, 1000);
+    AtomicInteger refused = new AtomicInteger();
+    Supplier<Integer> failing = limit.limited(() -> refused.incrementAndGet(), () -> {
+      throw new IllegalStateException("timeout");
+    });
+    for (int i = 0; i < 50; i++) {
+      Assertions.assertThrows(IllegalStateException.class, failing::get);
+    }
+    // A window of drops cuts the limit by a tenth
+    Assertions.assertEquals(90, limit.limit());
+    Assertions.assertEquals(0, limit.inFlight());
+    Assertions.assertEquals(0, refused.get());
+
+    AdaptiveLimit full = AdaptiveLimit.of(1, 1, 1);
+    full.tryAcquire();
+    Assertions.assertEquals(1, full.limited(() -> refused.incrementAndGet(), () -> 0).get().intValue());
+  }
+
+}
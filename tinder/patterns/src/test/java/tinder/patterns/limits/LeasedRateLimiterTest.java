@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class LeasedRateLimiterTest {
+
+  @Test
+  public void testConstructors() {
+    MemoryPermitStore store = new MemoryPermitStore();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LeasedRateLimiter.of(null, "k", 10, 1, TimeUnit.SECONDS, 1, Runnable::run));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LeasedRateLimiter.of(store, "k", 0, 1, TimeUnit.SECONDS, 1, Runnable::run));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LeasedRateLimiter.of(store, "k", 10, 0, TimeUnit.SECONDS, 1, Runnable::run));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LeasedRateLimiter.of(store, "k", 10, 1, TimeUnit.SECONDS, 11, Runnable::run));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> LeasedRateLimiter.of(store, "k", 10, 1, TimeUnit.SECONDS, 5, Runnable::run).tryAcquire(6));
+  }
+
+  @Test
+  public void testNodesShareTheLimit() {
+    MemoryPermitStore store = new MemoryPermitStore();
+    AtomicLong clock = new AtomicLong(10_000);
+    List<LeasedRateLimiter> nodes = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      nodes.add(new LeasedRateLimiter(store, "api", 100, 1000, 10, Runnable::run, clock::get));
+    }
+
+    // Way more calls than the limit, spread on the nodes
+    int admitted = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (nodes.get(i % nodes.size()).tryAcquire()) {
+        admitted++;
+      }
+    }
+    Assertions.assertEquals(100, admitted);
+    // A trip to the store per batch, and one per node to find out the budget is over
+    Assertions.assertTrue(store.calls.get() <= 100 / 10 + nodes.size(), "calls: " + store.calls.get());
+
+    // Over for the window: no more trips to the store, and the wait is until the next window
+    int calls = store.calls.get();
+    clock.set(10_400);
+    Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(600), nodes.get(0).tryAcquire(1));
+    Assertions.assertEquals(calls, store.calls.get());
+
+    // Next window, a new budget
+    clock.set(11_000);
+    Assertions.assertTrue(nodes.get(0).tryAcquire());
+  }
+
+  @Test
+  public void testStoreDown() {
+    MemoryPermitStore store = new MemoryPermitStore();
+    AtomicLong clock = new AtomicLong(10_000);
+    LeasedRateLimiter node = new LeasedRateLimiter(store, "api", 100, 1000, 10, Runnable::run, clock::get);
+
+    store.failing = true;
+    Assertions.assertFalse(node.tryAcquire());
+    Assertions.assertFalse(node.tryAcquire());
+    // Not called again for a tenth of the window
+    Assertions.assertEquals(1, store.calls.get());
+
+    store.failing = false;
+    clock.set(10_100);
+    Assertions.assertTrue(node.tryAcquire());
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Budgets kept in memory, for the nodes in the same jvm of the tests.
+ * @author Raffaele Ragni
+ */
+public class MemoryPermitStore implements PermitStore {
+
+  final Map<String, Long> used = new HashMap<>();
+  final AtomicInteger calls = new AtomicInteger();
+  volatile boolean failing;
+
+  @Override
+  public synchronized long lease(String key, long window, long permits, long limit) {
+    calls.incrementAndGet();
+    if (failing) {
+      throw new IllegalStateException("store is down");
+    }
+    String windowKey = key + "@" + window;
+    long current = used.getOrDefault(windowKey, 0L);
+    long granted = Math.min(permits, limit - current);
+    used.put(windowKey, current + granted);
+    return granted;
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * A single rate limit shared by 1, 8 and 64 threads: granted is a limit so high that all calls go through (the CAS
+ * of every permit), limited is one that rejects nearly all calls (a read of the state only).
+ *
+ * @author Raffaele Ragni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitBenchmark {
+
+  final TokenBucket granted = TokenBucket.of(1_000_000_000L, 1, TimeUnit.SECONDS);
+  final TokenBucket limited = TokenBucket.of(1000, 1, TimeUnit.SECONDS);
+
+  @Benchmark
+  @Threads(1)
+  public long granted1() {
+    return granted.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long granted8() {
+    return granted.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public long granted64() {
+    return granted.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long limited1() {
+    return limited.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long limited8() {
+    return limited.tryAcquire(1);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public long limited64() {
+    return limited.tryAcquire(1);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RateLimitBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
@@ -15,6 +15,19 @@
  */
 package tinder.patterns.limits;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -79,4 +92,162 @@ public class RateLimitTest {
     Assertions.assertTrue(took >= 500, "Time taken >= 500ms? Took: " + took + "ms");
   }
 
+  @Test
+  public void testErrorsDoNotCount() {
+    AtomicInteger calls = new AtomicInteger();
+    Supplier<Integer> fn = RateLimit.asFailing(1, 60_000, () -> 2, () -> {
+      if (calls.incrementAndGet() == 1) {
+        throw new IllegalStateException();
+      }
+      return 1;
+    });
+
+    Assertions.assertThrows(IllegalStateException.class, () -> fn.get());
+    Assertions.assertEquals(1, fn.get().intValue());
+    Assertions.assertEquals(2, fn.get().intValue());
+  }
+
+  @Test
+  public void testLimitNeverExceeded() throws InterruptedException {
+    // 100 calls per 100ms from 16 threads for 500ms: at most the 100 at once plus one every millisecond.
+    long maxCalls = 100;
+    long windowMS = 100;
+    AtomicLong executed = new AtomicLong();
+    Supplier<Boolean> fn = RateLimit.asFailing(maxCalls, windowMS, () -> false, () -> {
+      executed.incrementAndGet();
+      return true;
+    });
+
+    long start = System.nanoTime();
+    long end = start + TimeUnit.MILLISECONDS.toNanos(500);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      threads.add(new Thread(() -> {
+        while (System.nanoTime() - end < 0) {
+          fn.get();
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread t: threads) {
+      t.join();
+    }
+    long elapsedMS = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    long allowed = maxCalls + (elapsedMS + 1) * maxCalls / windowMS;
+    Assertions.assertTrue(executed.get() <= allowed, "executed " + executed.get() + ", allowed " + allowed);
+    // And it does not starve either
+    Assertions.assertTrue(executed.get() >= maxCalls * 5, "executed " + executed.get());
+  }
+
+  @Test
+  public void testBlockingIsFifo() throws InterruptedException {
+    List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger next = new AtomicInteger();
+    RateLimit<Integer> fn = RateLimit.asBlocking(1, 30, () -> {
+      int i = next.getAndIncrement();
+      order.add(i);
+      return i;
+    });
+    fn.get();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      Thread t = new Thread(fn::get);
+      threads.add(t);
+      t.start();
+      // Each one queues up after the previous
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+    for (Thread t: threads) {
+      t.join();
+    }
+    Assertions.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), order);
+  }
+
+  @Test
+  public void testTryGet() throws InterruptedException {
+    RateLimit<Integer> fn = RateLimit.asBlocking(1, 500, () -> 1);
+    Assertions.assertEquals(Optional.of(1), fn.tryGet(0, TimeUnit.MILLISECONDS));
+
+    // Not within the timeout: it does not wait at all
+    long start = System.nanoTime();
+    Assertions.assertEquals(Optional.empty(), fn.tryGet(10, TimeUnit.MILLISECONDS));
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+
+    Assertions.assertEquals(Optional.of(1), fn.tryGet(1, TimeUnit.SECONDS));
+    Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+  }
+
+  @Test
+  public void testTryGetInterrupted() throws InterruptedException {
+    AtomicInteger calls = new AtomicInteger();
+    RateLimit<Integer> fn = RateLimit.asBlocking(1, 60_000, calls::incrementAndGet);
+    fn.get();
+
+    AtomicInteger interrupted = new AtomicInteger();
+    Thread t = new Thread(() -> {
+      try {
+        fn.tryGet(1, TimeUnit.MINUTES);
+      } catch (InterruptedException ex) {
+        interrupted.incrementAndGet();
+      }
+    });
+    t.start();
+    TimeUnit.MILLISECONDS.sleep(50);
+    t.interrupt();
+    t.join();
+
+    Assertions.assertEquals(1, interrupted.get());
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testAsync() throws InterruptedException, ExecutionException {
+    AtomicInteger calls = new AtomicInteger();
+    RateLimit<Integer> fn = RateLimit.asBlocking(1, 100, calls::incrementAndGet);
+
+    long start = System.nanoTime();
+    CompletableFuture<Integer> first = fn.getAsync();
+    CompletableFuture<Integer> second = fn.getAsync();
+    CompletableFuture<Integer> cancelled = fn.getAsync();
+    CompletableFuture<Integer> third = fn.getAsync();
+    cancelled.cancel(false);
+
+    Assertions.assertEquals(1, first.get().intValue());
+    Assertions.assertEquals(2, second.get().intValue());
+    Assertions.assertEquals(3, third.get().intValue());
+    Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    Assertions.assertEquals(3, calls.get());
+
+    RateLimit<Integer> failing = RateLimit.asFailing(1, 60_000, () -> 2, () -> 1);
+    Assertions.assertEquals(1, failing.getAsync().get().intValue());
+    Assertions.assertEquals(2, failing.getAsync().get().intValue());
+  }
+
+  @Test
+  public void testAsyncFailures() throws InterruptedException, ExecutionException, TimeoutException {
+    AtomicInteger calls = new AtomicInteger();
+    RateLimit<Integer> fn = RateLimit.asBlocking(1, 100, calls::incrementAndGet);
+    Executor rejecting = task -> {
+      throw new RejectedExecutionException("shut down");
+    };
+
+    // Refused right away and when handed over by the timer: the futures fail instead of hanging
+    CompletableFuture<Integer> first = fn.getAsync(rejecting);
+    CompletableFuture<Integer> second = fn.getAsync(rejecting);
+    for (CompletableFuture<Integer> future: Arrays.asList(first, second)) {
+      ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+      Assertions.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+    }
+    Assertions.assertEquals(1, fn.getAsync().get(1, TimeUnit.SECONDS).intValue());
+
+    // Errors of the function fail the future too
+    RateLimit<Integer> error = RateLimit.asBlocking(1, 100, () -> {
+      throw new AssertionError("broken");
+    });
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> error.getAsync().get(1, TimeUnit.SECONDS));
+    Assertions.assertTrue(ex.getCause() instanceof AssertionError);
+  }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The rate limit algorithms under a load far over their limit of 100k permits per second, from 1 and 8 threads.
+ * Throughput is the cost of a check, and the admitted counter (per second) is the accuracy: it should stay close to
+ * the 100k limit, plus the one burst at the start of the iteration.
+ *
+ * @author Raffaele Ragni
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+  static final int LIMIT = 1000;
+  static final long WINDOW_MS = 10;
+
+  @Param({"tokenBucket", "slidingWindowLog", "slidingWindowCounter"})
+  String algorithm;
+
+  RateLimiter limiter;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    switch (algorithm) {
+      case "tokenBucket":
+        limiter = RateLimiter.tokenBucket(LIMIT, WINDOW_MS, TimeUnit.MILLISECONDS);
+        break;
+      case "slidingWindowLog":
+        limiter = RateLimiter.slidingWindowLog(LIMIT, WINDOW_MS, TimeUnit.MILLISECONDS);
+        break;
+      default:
+        limiter = RateLimiter.slidingWindowCounter(LIMIT, WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long admitted;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean single(Counters counters) {
+    return check(counters);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public boolean contended(Counters counters) {
+    return check(counters);
+  }
+
+  private boolean check(Counters counters) {
+    boolean admitted = limiter.tryAcquire();
+    if (admitted) {
+      counters.admitted++;
+    }
+    return admitted;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RateLimiterBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+
+}
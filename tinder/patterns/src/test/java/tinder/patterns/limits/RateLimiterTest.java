@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RateLimiterTest {
+
+  @Test
+  public void testConstructors() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.slidingWindowLog(0, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.slidingWindowLog(1, 0, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.slidingWindowCounter(0, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.slidingWindowCounter(1, 0, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.gcra(0, 1, TimeUnit.SECONDS, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RateLimiter.slidingWindowLog(2, 1, TimeUnit.SECONDS).tryAcquire(3));
+  }
+
+  @Test
+  public void testGcraBurst() {
+    // 100 per second, but only 2 at once
+    RateLimiter limiter = RateLimiter.gcra(100, 1, TimeUnit.SECONDS, 2);
+    Assertions.assertTrue(limiter.tryAcquire());
+    Assertions.assertTrue(limiter.tryAcquire());
+    long wait = limiter.tryAcquire(1);
+    Assertions.assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(10), "wait: " + wait);
+  }
+
+  @Test
+  public void testSlidingWindowLogBoundary() {
+    AtomicLong clock = new AtomicLong(0);
+    SlidingWindowLog limiter = new SlidingWindowLog(10, 1000, clock::get);
+
+    // All at the end of a window, and none allowed right after its boundary
+    clock.set(999);
+    Assertions.assertEquals(0, limiter.tryAcquire(10));
+    clock.set(1001);
+    Assertions.assertEquals(998, limiter.tryAcquire(1));
+    clock.set(1999);
+    Assertions.assertEquals(0, limiter.tryAcquire(5));
+    Assertions.assertEquals(0, limiter.tryAcquire(5));
+    Assertions.assertFalse(limiter.tryAcquire());
+  }
+
+  @Test
+  public void testSlidingWindowCounterBoundary() {
+    AtomicLong clock = new AtomicLong(0);
+    SlidingWindowCounter limiter = new SlidingWindowCounter(10, 1000, clock::get);
+
+    clock.set(999);
+    Assertions.assertEquals(0, limiter.tryAcquire(10));
+    // The previous window still counts almost fully
+    clock.set(1001);
+    Assertions.assertEquals(99, limiter.tryAcquire(1));
+    clock.set(1100);
+    Assertions.assertEquals(0, limiter.tryAcquire(1));
+    Assertions.assertEquals(100, limiter.tryAcquire(1));
+    // A window with nothing before it
+    clock.set(3000);
+    Assertions.assertEquals(0, limiter.tryAcquire(10));
+    Assertions.assertEquals(1000, limiter.tryAcquire(1));
+  }
+
+  @Test
+  public void testAccuracy() {
+    // A request every 3 units for 20 windows, then the most admitted in any sliding window
+    int limit = 50;
+    long window = 1000;
+    AtomicLong logClock = new AtomicLong(0);
+    List<Long> log = admitted(new SlidingWindowLog(limit, window, logClock::get), logClock, window);
+    AtomicLong counterClock = new AtomicLong(0);
+    List<Long> counter = admitted(new SlidingWindowCounter(limit, window, counterClock::get), counterClock, window);
+
+    Assertions.assertEquals(limit, maxInWindow(log, window));
+    // An estimate, but bound
+    Assertions.assertTrue(maxInWindow(counter, window) <= limit * 1.1, "counter: " + maxInWindow(counter, window));
+    // And neither of them starves: about the limit per window
+    Assertions.assertTrue(log.size() >= limit * 19, "log: " + log.size());
+    Assertions.assertTrue(counter.size() >= limit * 19, "counter: " + counter.size());
+  }
+
+  private static List<Long> admitted(RateLimiter limiter, AtomicLong clock, long window) {
+    List<Long> admitted = new ArrayList<>();
+    for (long t = 0; t < window * 20; t += 3) {
+      clock.set(t);
+      if (limiter.tryAcquire()) {
+        admitted.add(t);
+      }
+    }
+    return admitted;
+  }
+
+  private static int maxInWindow(List<Long> times, long window) {
+    int max = 0;
+    int from = 0;
+    for (int to = 0; to < times.size(); to++) {
+      while (times.get(to) - times.get(from) >= window) {
+        from++;
+      }
+      max = Math.max(max, to - from + 1);
+    }
+    return max;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+/**
+ * A backend that serves up to its capacity at the base latency, and queues the rest: past the capacity the latency
+ * grows with the calls in flight. The capacity can be changed, to have the backend degrade or recover.
+ * Time is simulated, in rounds where the clients send all they can and then all the calls complete.
+ * @author Raffaele Ragni
+ */
+public class SyntheticBackend {
+
+  final long baseLatencyNanos;
+  volatile int capacity;
+
+  public SyntheticBackend(long baseLatencyNanos, int capacity) {
+    this.baseLatencyNanos = baseLatencyNanos;
+    this.capacity = capacity;
+  }
+
+  long latency(int inFlight) {
+    return inFlight <= capacity ? baseLatencyNanos : baseLatencyNanos * inFlight / capacity;
+  }
+
+  /**
+   * Runs the rounds with as many clients calling through the limit.
+   * @return the limit after each round
+   */
+  int[] run(AdaptiveLimit limit, int clients, int rounds) {
+    int[] limits = new int[rounds];
+    for (int r = 0; r < rounds; r++) {
+      int admitted = 0;
+      while (admitted < clients && limit.tryAcquire()) {
+        admitted++;
+      }
+      long latency = latency(admitted);
+      for (int i = 0; i < admitted; i++) {
+        limit.release(latency);
+      }
+      limits[r] = limit.limit();
+    }
+    return limits;
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class TokenBucketTest {
+
+  @Test
+  public void testConstructors() {
+    IllegalArgumentException ex1 = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      TokenBucket.of(0, 1, TimeUnit.SECONDS);
+    });
+    Assertions.assertEquals("capacity must be greater than 0.", ex1.getMessage());
+
+    IllegalArgumentException ex2 = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      TokenBucket.of(1, 0, TimeUnit.SECONDS);
+    });
+    Assertions.assertEquals("period must be greater than 0.", ex2.getMessage());
+
+    IllegalArgumentException ex3 = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      TokenBucket.of(2, 1, TimeUnit.SECONDS).tryAcquire(3);
+    });
+    Assertions.assertEquals("permits must be between 1 and 2.", ex3.getMessage());
+  }
+
+  @Test
+  public void testBurstThenWait() {
+    TokenBucket bucket = TokenBucket.of(3, 1, TimeUnit.HOURS);
+    Assertions.assertTrue(bucket.isFull());
+    Assertions.assertEquals(3, bucket.available());
+
+    Assertions.assertTrue(bucket.tryAcquire());
+    Assertions.assertEquals(0, bucket.tryAcquire(2));
+    Assertions.assertEquals(0, bucket.available());
+    Assertions.assertFalse(bucket.isFull());
+
+    // Next permit is due in about 20 minutes
+    long wait = bucket.tryAcquire(1);
+    Assertions.assertTrue(wait > TimeUnit.MINUTES.toNanos(19) && wait <= TimeUnit.MINUTES.toNanos(20), "wait: " + wait);
+    Assertions.assertFalse(bucket.tryAcquire());
+  }
+
+  @Test
+  public void testRefill() throws InterruptedException {
+    TokenBucket bucket = TokenBucket.of(2, 100, TimeUnit.MILLISECONDS);
+    Assertions.assertTrue(bucket.tryAcquire());
+    Assertions.assertTrue(bucket.tryAcquire());
+    Assertions.assertFalse(bucket.tryAcquire());
+
+    TimeUnit.MILLISECONDS.sleep(150);
+    Assertions.assertTrue(bucket.isFull());
+    Assertions.assertTrue(bucket.tryAcquire());
+  }
+
+  @Test
+  public void testReserve() {
+    TokenBucket bucket = TokenBucket.of(2, 2, TimeUnit.HOURS);
+    Assertions.assertEquals(0, bucket.reserve(2, 0));
+
+    // Reservations queue one after the other
+    long first = bucket.reserve(1, Long.MAX_VALUE);
+    long second = bucket.reserve(1, Long.MAX_VALUE);
+    Assertions.assertTrue(first > TimeUnit.MINUTES.toNanos(59) && first <= TimeUnit.HOURS.toNanos(1), "first: " + first);
+    Assertions.assertTrue(second - first > TimeUnit.MINUTES.toNanos(59), "second: " + second);
+
+    // Too far away: nothing reserved
+    Assertions.assertEquals(-1, bucket.reserve(1, TimeUnit.HOURS.toNanos(1)));
+    bucket.release(1);
+    long third = bucket.reserve(1, Long.MAX_VALUE);
+    Assertions.assertTrue(third - second < TimeUnit.SECONDS.toNanos(1), "third: " + third);
+  }
+
+}
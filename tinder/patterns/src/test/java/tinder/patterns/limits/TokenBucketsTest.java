@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.limits;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class TokenBucketsTest {
+
+  @Test
+  public void testPerKey() {
+    TokenBuckets<String> buckets = TokenBuckets.of(1, 1, TimeUnit.HOURS);
+
+    Assertions.assertTrue(buckets.tryAcquire("a"));
+    Assertions.assertFalse(buckets.tryAcquire("a"));
+    Assertions.assertTrue(buckets.tryAcquire("b"));
+    Assertions.assertTrue(buckets.tryAcquire("a", 1) > 0);
+    Assertions.assertEquals(2, buckets.size());
+  }
+
+  @Test
+  public void testIdleKeysDropped() throws InterruptedException {
+    // A period long enough for all the keys to go in before the first sweep is due, even on a slow machine
+    TokenBuckets<Integer> buckets = TokenBuckets.of(1, 1, TimeUnit.SECONDS);
+    for (int i = 0; i < 10_000; i++) {
+      Assertions.assertTrue(buckets.tryAcquire(i));
+    }
+    Assertions.assertEquals(10_000, buckets.size());
+
+    // Once the period passes they are all full again, the next call sweeps them
+    TimeUnit.MILLISECONDS.sleep(1500);
+    Assertions.assertTrue(buckets.tryAcquire(-1));
+    Assertions.assertEquals(1, buckets.size());
+
+    // Keys are as new after the sweep
+    Assertions.assertTrue(buckets.tryAcquire(1));
+    buckets.sweep();
+    Assertions.assertEquals(2, buckets.size());
+  }
+
+}
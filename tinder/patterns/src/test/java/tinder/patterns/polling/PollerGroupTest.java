@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.polling;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import static tinder.patterns.polling.PollerTest.waitFor;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class PollerGroupTest {
+
+  @Test
+  public void testManyPollers() throws InterruptedException {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    AtomicInteger[] polls = new AtomicInteger[200];
+    try (PollerGroup group = PollerGroup.of("tenants", 2)) {
+      for (int i = 0; i < polls.length; i++) {
+        AtomicInteger counter = polls[i] = new AtomicInteger();
+        group.start("tenant-" + i, Poller.poller(() -> {
+          threads.add(Thread.currentThread().getName());
+          counter.incrementAndGet();
+          return Optional.<Long>empty();
+        }, l -> {}).min(20, TimeUnit.MILLISECONDS).max(20, TimeUnit.MILLISECONDS));
+      }
+      Assertions.assertEquals(200, group.keys().size());
+      waitFor(() -> {
+        for (AtomicInteger counter: polls) {
+          if (counter.get() < 5) {
+            return false;
+          }
+        }
+        return true;
+      });
+    }
+    // 200 pollers, 2 threads
+    Assertions.assertTrue(threads.size() <= 2);
+    Assertions.assertTrue(threads.stream().allMatch(t -> t.startsWith("tinder-pollers-tenants-")));
+  }
+
+  @Test
+  public void testPokeAndPause() throws InterruptedException {
+    AtomicInteger polls = new AtomicInteger();
+    Poller<Long> poller = Poller.poller(() -> {
+      polls.incrementAndGet();
+      return Optional.<Long>empty();
+    }, l -> {}).min(60).max(60);
+
+    try (PollerGroup group = PollerGroup.of("pokes", 1)) {
+      group.start("config", poller);
+      waitFor(() -> polls.get() == 1);
+      poller.poke();
+      waitFor(() -> polls.get() == 2);
+
+      group.pause("config");
+      Assertions.assertTrue(group.paused("config"));
+      poller.poke();
+      TimeUnit.MILLISECONDS.sleep(50);
+      Assertions.assertEquals(2, polls.get());
+
+      group.resume("config");
+      waitFor(() -> polls.get() == 3);
+
+      group.stop("config");
+      poller.poke();
+      TimeUnit.MILLISECONDS.sleep(50);
+      Assertions.assertEquals(3, polls.get());
+      Assertions.assertTrue(group.keys().isEmpty());
+    }
+  }
+
+  @Test
+  public void testMetrics() throws InterruptedException {
+    Poller<Long> poller = Poller.poller(new LimitedSupply(3), l -> {
+      try {
+        TimeUnit.MILLISECONDS.sleep(5);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }).min(0, TimeUnit.MILLISECONDS).max(60);
+
+    try (PollerGroup group = PollerGroup.of("metrics", 1)) {
+      group.start("queue", poller);
+      // Three hits, then an empty poll
+      waitFor(() -> group.metrics("queue").polls() == 4);
+      PollerMetrics metrics = group.metrics("queue");
+      Assertions.assertEquals(3, metrics.hits());
+      Assertions.assertEquals(3, metrics.items());
+      Assertions.assertEquals(0.75, metrics.hitRatio(), 0.001);
+      Assertions.assertTrue(metrics.consumerLatency(TimeUnit.MILLISECONDS) >= 5);
+    }
+  }
+
+  @Test
+  public void testFailure() throws InterruptedException {
+    AtomicInteger polls = new AtomicInteger();
+    try (PollerGroup group = PollerGroup.of("failures", 1)) {
+      group.start("broken", Poller.poller(() -> {
+        throw new IllegalStateException("broken");
+      }, l -> {}));
+      group.start("working", Poller.poller(() -> {
+        polls.incrementAndGet();
+        return Optional.<Long>empty();
+      }, l -> {}).min(1, TimeUnit.MILLISECONDS).max(1, TimeUnit.MILLISECONDS));
+
+      // The failed poller is stopped, the other goes on
+      waitFor(() -> !group.keys().contains("broken"));
+      waitFor(() -> polls.get() > 10);
+    }
+  }
+
+  @Test
+  public void testShutdown() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch unsubscribed = new CountDownLatch(1);
+    PollerGroup group = PollerGroup.of("shutdown", 1);
+    AtomicInteger polls = new AtomicInteger();
+    group.start("slow", Poller.poller(() -> {
+      polls.incrementAndGet();
+      started.countDown();
+      try {
+        TimeUnit.MILLISECONDS.sleep(100);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return Optional.<Long>empty();
+    }, l -> {}).wakeOn(w -> unsubscribed::countDown));
+
+    // The poll being done is finished, then the poller is closed
+    Assertions.assertTrue(started.await(1, TimeUnit.SECONDS));
+    Assertions.assertTrue(group.shutdown(1, TimeUnit.SECONDS));
+    Assertions.assertTrue(unsubscribed.await(1, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, polls.get());
+
+    IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class, () -> {
+      group.start("late", Poller.poller(new LimitedSupply(1), l -> {}));
+    });
+    Assertions.assertEquals("The poller group \"shutdown\" is shut down", ex.getMessage());
+  }
+
+  @Test
+  public void testValidations() {
+    IllegalArgumentException ex;
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      PollerGroup.of(null, 1);
+    });
+    Assertions.assertEquals("You must provide a name, name was null.", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      PollerGroup.of("group", 0);
+    });
+    Assertions.assertEquals("threads must be at least 1", ex.getMessage());
+
+    try (PollerGroup group = PollerGroup.of("group", 1)) {
+      group.start("one", Poller.poller(new LimitedSupply(1), l -> {}).max(60));
+
+      ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+        group.start("one", Poller.poller(new LimitedSupply(1), l -> {}));
+      });
+      Assertions.assertEquals("There is already a poller \"one\"", ex.getMessage());
+
+      ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+        group.pause("two");
+      });
+      Assertions.assertEquals("There is no poller \"two\"", ex.getMessage());
+    }
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.poller(new LimitedSupply(1), l -> {}).metrics(null);
+    });
+    Assertions.assertEquals("metrics is required", ex.getMessage());
+  }
+
+}
@@ -15,9 +15,25 @@
  */
 package tinder.patterns.polling;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import tinder.patterns.resilience.Backoff;
 
 /**
  *
@@ -47,6 +63,201 @@ public class PollerTest {
     thread.join();
   }
 
+  @Test
+  public void testPoke() throws InterruptedException {
+    AtomicInteger polls = new AtomicInteger();
+    Poller<Long> poller = Poller.poller(() -> {
+      polls.incrementAndGet();
+      return Optional.<Long>empty();
+    }, i -> {}).min(1).max(60);
+
+    Thread thread = new Thread(poller);
+    thread.start();
+    waitFor(() -> polls.get() == 1);
+
+    // Without the poke, the next poll would be in a second
+    long start = System.nanoTime();
+    poller.poke();
+    waitFor(() -> polls.get() == 2);
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+    thread.interrupt();
+    thread.join();
+  }
+
+  @Test
+  public void testPokeDuringPoll() throws InterruptedException {
+    // A poke that comes while polling makes it poll again right after
+    AtomicInteger polls = new AtomicInteger();
+    AtomicReference<Poller<Long>> self = new AtomicReference<>();
+    Poller<Long> poller = Poller.poller(() -> {
+      if (polls.incrementAndGet() == 1) {
+        self.get().poke();
+      }
+      return Optional.<Long>empty();
+    }, i -> {}).min(60).max(60);
+    self.set(poller);
+
+    Thread thread = new Thread(poller);
+    thread.start();
+    waitFor(() -> polls.get() == 2);
+    thread.interrupt();
+    thread.join();
+  }
+
+  @Test
+  public void testWakeupSignal() throws InterruptedException {
+    AtomicInteger polls = new AtomicInteger();
+    AtomicReference<Runnable> wakeup = new AtomicReference<>();
+    CountDownLatch closed = new CountDownLatch(1);
+    Poller<Long> poller = Poller.poller(() -> {
+      polls.incrementAndGet();
+      return Optional.<Long>empty();
+    }, i -> {})
+        .min(60).max(60)
+        .wakeOn(w -> {
+          wakeup.set(w);
+          return closed::countDown;
+        })
+        // A signal that is not available leaves the others and the waits working
+        .wakeOn(w -> {
+          throw new IllegalStateException("not available");
+        });
+
+    Thread thread = new Thread(poller);
+    thread.start();
+    waitFor(() -> polls.get() == 1 && wakeup.get() != null);
+    wakeup.get().run();
+    waitFor(() -> polls.get() == 2);
+
+    thread.interrupt();
+    thread.join();
+    Assertions.assertTrue(closed.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFileChanges() throws Exception {
+    Path folder = Files.createTempDirectory("tinder-poller");
+    Path file = folder.resolve("config.yaml");
+    CountDownLatch changed = new CountDownLatch(1);
+    try (AutoCloseable subscription = WakeupSignal.fileChanges(file).subscribe(changed::countDown)) {
+      // Other files are not signaled
+      Files.write(folder.resolve("other.yaml"), "other".getBytes());
+      Assertions.assertFalse(changed.await(200, TimeUnit.MILLISECONDS));
+      Files.write(file, "changed".getBytes());
+      // Some WatchService implementations poll, every 2 seconds when there is no native support
+      Assertions.assertTrue(changed.await(15, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testBackoff() throws InterruptedException {
+    // Straight to max after an empty poll
+    AtomicInteger polls = new AtomicInteger();
+    Thread thread = new Thread(Poller.poller(() -> {
+      polls.incrementAndGet();
+      return Optional.<Long>empty();
+    }, i -> {}).min(0, TimeUnit.MILLISECONDS).max(1, TimeUnit.SECONDS));
+    thread.start();
+    TimeUnit.MILLISECONDS.sleep(400);
+    thread.interrupt();
+    thread.join();
+    Assertions.assertEquals(1, polls.get());
+
+    // Waits of 10, 20, 40, 80, 160ms...
+    AtomicInteger backedOff = new AtomicInteger();
+    thread = new Thread(Poller.poller(() -> {
+      backedOff.incrementAndGet();
+      return Optional.<Long>empty();
+    }, i -> {}).min(0, TimeUnit.MILLISECONDS).max(1, TimeUnit.SECONDS).backoff(Backoff.exponential(10, 1000)));
+    thread.start();
+    TimeUnit.MILLISECONDS.sleep(400);
+    thread.interrupt();
+    thread.join();
+    Assertions.assertTrue(backedOff.get() >= 4 && backedOff.get() <= 7, "polls: " + backedOff.get());
+  }
+
+  @Test
+  public void testBatches() throws InterruptedException {
+    Queue<Integer> outbox = new ConcurrentLinkedQueue<>();
+    for (int i = 0; i < 25; i++) {
+      outbox.add(i);
+    }
+    AtomicInteger polls = new AtomicInteger();
+    List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+    Poller<Integer> poller = Poller.<Integer>batchPoller(10, size -> {
+      polls.incrementAndGet();
+      List<Integer> batch = new ArrayList<>();
+      Integer item;
+      while (batch.size() < size && (item = outbox.poll()) != null) {
+        batch.add(item);
+      }
+      return batch;
+    }, consumed::add).min(60).max(60);
+
+    // Two full batches go on right away, the third one is not full and the poller waits
+    Thread thread = new Thread(poller);
+    thread.start();
+    waitFor(() -> consumed.size() == 25);
+    TimeUnit.MILLISECONDS.sleep(50);
+    Assertions.assertEquals(3, polls.get());
+    thread.interrupt();
+    thread.join();
+  }
+
+  @Test
+  public void testLanes() throws InterruptedException {
+    AtomicInteger next = new AtomicInteger();
+    Map<Integer, List<Integer>> byKey = new ConcurrentHashMap<>();
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    Poller<Integer> poller = Poller.<Integer>batchPoller(50, size -> {
+      List<Integer> batch = new ArrayList<>();
+      while (batch.size() < size && next.get() < 200) {
+        batch.add(next.getAndIncrement());
+      }
+      return batch;
+    }, i -> {
+      threads.add(Thread.currentThread().getName());
+      byKey.computeIfAbsent(i % 10, k -> Collections.synchronizedList(new ArrayList<>())).add(i);
+    }).lanes(4, i -> i % 10).min(60).max(60);
+
+    Thread thread = new Thread(poller);
+    thread.start();
+    waitFor(() -> byKey.values().stream().mapToInt(List::size).sum() == 200);
+    thread.interrupt();
+    thread.join();
+
+    Assertions.assertEquals(4, threads.size());
+    for (List<Integer> items: byKey.values()) {
+      List<Integer> sorted = new ArrayList<>(items);
+      Collections.sort(sorted);
+      Assertions.assertEquals(sorted, items);
+    }
+  }
+
+  @Test
+  public void testLaneFailure() throws InterruptedException {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Poller<Integer> poller = Poller.<Integer>batchPoller(10, size -> {
+      List<Integer> batch = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        batch.add(i);
+      }
+      return batch;
+    }, i -> {
+      if (i == 5) {
+        throw new IllegalStateException("broken");
+      }
+    }).lanes(2, i -> i);
+
+    // As without lanes, the poller stops on what the consumer throws
+    Thread thread = new Thread(poller);
+    thread.setUncaughtExceptionHandler((t, ex) -> failure.set(ex));
+    thread.start();
+    thread.join(5000);
+    Assertions.assertEquals("broken", failure.get().getMessage());
+  }
+
   @Test
   public void testValidations() {
 
@@ -78,6 +289,43 @@ public class PollerTest {
           .max(9, TimeUnit.MILLISECONDS);
     });
     Assertions.assertEquals("max cannot be less than min", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.poller(new LimitedSupply(5), i -> {})
+          .wakeOn(null);
+    });
+    Assertions.assertEquals("signal is required", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.poller(new LimitedSupply(5), i -> {})
+          .backoff(null);
+    });
+    Assertions.assertEquals("backoff is required", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.poller(new LimitedSupply(5), i -> {})
+          .lanes(0, i -> i);
+    });
+    Assertions.assertEquals("lanes must be at least 1", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.poller(new LimitedSupply(5), i -> {})
+          .lanes(2, null);
+    });
+    Assertions.assertEquals("key is required", ex.getMessage());
+
+    ex = Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      Poller.batchPoller(0, size -> Collections.emptyList(), i -> {});
+    });
+    Assertions.assertEquals("batchSize must be at least 1", ex.getMessage());
+  }
+
+  static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(System.nanoTime() < deadline, "condition not met in time");
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
   }
 
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class AsyncRetryableTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AsyncRetryable.of(null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AsyncRetryable.of(() -> done(1)).times(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AsyncRetryable.of(() -> done(1)).delay(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> AsyncRetryable.of(() -> done(1)).executor(null));
+  }
+
+  @Test
+  public void testOKAtLastTry() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    // Failing both by throwing and by completing exceptionally
+    AsyncRetryable<Integer> retryable = AsyncRetryable.of(() -> {
+      int attempt = counter.incrementAndGet();
+      if (attempt == 1) {
+        throw new IllegalStateException("thrown");
+      }
+      return attempt < 3 ? failed("completed") : done(attempt);
+    }).times(3).delay(5);
+    Assertions.assertEquals(3, retryable.retry().get(5, TimeUnit.SECONDS).intValue());
+    Assertions.assertEquals(2, retryable.metrics().retries());
+  }
+
+  @Test
+  public void testFirstAndLastException() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () ->
+        AsyncRetryable.of(() -> failed("attempt " + counter.incrementAndGet()))
+            .times(3).throwFirst().retry().get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals("attempt 1", ex.getCause().getMessage());
+
+    ex = Assertions.assertThrows(ExecutionException.class, () ->
+        AsyncRetryable.of(() -> failed("attempt " + counter.incrementAndGet()))
+            .times(3).throwLast().delay(1).retry().get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals("attempt 6", ex.getCause().getMessage());
+  }
+
+  @Test
+  public void testCircuitBreaker() {
+    AtomicInteger counter = new AtomicInteger();
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () ->
+        AsyncRetryable.of(() -> failed("attempt " + counter.incrementAndGet()))
+            .times(3).delay(1).circuitBreaker(e -> true).retry().get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals("attempt 1", ex.getCause().getMessage());
+
+    CircuitBreaker breaker = CircuitBreaker.of("async").window(10, 2);
+    ex = Assertions.assertThrows(ExecutionException.class, () ->
+        AsyncRetryable.of(() -> failed("down")).times(5).circuitBreaker(breaker).retry().get(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(ex.getCause() instanceof CircuitBreakerOpenException);
+  }
+
+  @Test
+  public void testRejected() {
+    // The retry is refused by the executor: the future fails instead of never completing
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () ->
+        AsyncRetryable.of(() -> failed("down"))
+            .times(3).delay(1).executor(task -> {
+              throw new RejectedExecutionException("shut down");
+            }).retry().get(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+    Assertions.assertEquals("down", ex.getCause().getSuppressed()[0].getMessage());
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+    // Many operations waiting for their retries at the same time, and no thread waiting with them
+    int operations = 10_000;
+    int threadsBefore = Thread.activeCount();
+    List<CompletableFuture<Integer>> results = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      AtomicInteger counter = new AtomicInteger();
+      results.add(AsyncRetryable.of(() -> counter.incrementAndGet() < 3 ? failed("not yet") : done(1))
+          .times(3)
+          .delay(50)
+          .retry());
+    }
+    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // Two waits of 50ms each, with a blocking retry it would be 10.000 threads for that long
+    Assertions.assertTrue(elapsed < 10_000, "elapsed: " + elapsed);
+    Assertions.assertTrue(Thread.activeCount() - threadsBefore < 10, "threads: " + Thread.activeCount());
+  }
+
+  static <T> CompletableFuture<T> done(T value) {
+    return CompletableFuture.completedFuture(value);
+  }
+
+  static <T> CompletableFuture<T> failed(String message) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    result.completeExceptionally(new IllegalStateException(message));
+    return result;
+  }
+
+}
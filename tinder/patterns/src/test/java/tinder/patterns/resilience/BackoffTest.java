@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class BackoffTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Backoff.fixed(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Backoff.exponential(0, 10));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Backoff.exponential(10, 5));
+  }
+
+  @Test
+  public void testExponential() {
+    Backoff backoff = Backoff.exponential(100, 1000);
+    Assertions.assertEquals(100, backoff.delay(1, 0));
+    Assertions.assertEquals(200, backoff.delay(2, 100));
+    Assertions.assertEquals(800, backoff.delay(4, 400));
+    Assertions.assertEquals(1000, backoff.delay(5, 800));
+    Assertions.assertEquals(1000, backoff.delay(100, 1000));
+    Assertions.assertEquals(50, Backoff.fixed(50).delay(10, 50));
+  }
+
+  @Test
+  public void testFullJitter() {
+    Backoff backoff = Backoff.exponential(100, 1000).withFullJitter();
+    boolean spread = false;
+    for (int i = 0; i < 1000; i++) {
+      long delay = backoff.delay(3, 0);
+      Assertions.assertTrue(delay >= 0 && delay <= 400, "delay: " + delay);
+      spread |= delay < 200;
+    }
+    Assertions.assertTrue(spread);
+  }
+
+  @Test
+  public void testDecorrelatedJitter() {
+    Backoff backoff = Backoff.exponential(100, 1000).withDecorrelatedJitter();
+    long previous = 0;
+    for (int i = 1; i < 1000; i++) {
+      long delay = backoff.delay(i, previous);
+      Assertions.assertTrue(delay >= 100 && delay <= Math.min(1000, Math.max(100, previous) * 3), "delay: " + delay);
+      previous = delay;
+    }
+  }
+
+}
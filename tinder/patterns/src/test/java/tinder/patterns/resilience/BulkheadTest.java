@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tinder.patterns.limits.RateLimit;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class BulkheadTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Bulkhead.of(null, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Bulkhead.of("b", 0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Bulkhead.of("b", 1).queue(-1, 1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Bulkhead.of("b", 1).queue(1, -1, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Bulkhead.of("b", 1).decorate(null));
+  }
+
+  @Test
+  public void testFull() throws InterruptedException {
+    Bulkhead bulkhead = Bulkhead.of("full", 2);
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    Supplier<Integer> slow = bulkhead.decorate(() -> {
+      started.countDown();
+      await(release);
+      return 1;
+    });
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      threads.add(new Thread(slow::get));
+    }
+    threads.forEach(Thread::start);
+    started.await();
+
+    Assertions.assertEquals(2, bulkhead.inUse());
+    Assertions.assertThrows(BulkheadFullException.class, () -> bulkhead.call(() -> 1));
+    Assertions.assertEquals(1, bulkhead.rejected());
+
+    release.countDown();
+    for (Thread t: threads) {
+      t.join();
+    }
+    Assertions.assertEquals(0, bulkhead.inUse());
+    Assertions.assertEquals(1, bulkhead.call(() -> 1).intValue());
+  }
+
+  @Test
+  public void testQueue() throws InterruptedException {
+    Bulkhead bulkhead = Bulkhead.of("queue", 1).queue(1, 5, TimeUnit.SECONDS);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread running = new Thread(() -> bulkhead.call(() -> {
+      started.countDown();
+      await(release);
+      return 1;
+    }));
+    running.start();
+    started.await();
+
+    AtomicInteger waited = new AtomicInteger();
+    Thread waiting = new Thread(() -> waited.set(bulkhead.call(() -> 2)));
+    waiting.start();
+    while (bulkhead.waiting() == 0) {
+      Thread.yield();
+    }
+    // The queue is full too
+    Assertions.assertThrows(BulkheadFullException.class, () -> bulkhead.call(() -> 3));
+
+    release.countDown();
+    running.join();
+    waiting.join();
+    Assertions.assertEquals(2, waited.get());
+    Assertions.assertEquals(0, bulkhead.waiting());
+
+    // Not waiting beyond the max wait
+    Bulkhead brief = Bulkhead.of("short", 1).queue(1, 10, TimeUnit.MILLISECONDS);
+    Assertions.assertThrows(BulkheadFullException.class, () -> brief.call(() -> brief.call(() -> 1)));
+  }
+
+  @Test
+  public void testInterrupted() {
+    // The permit is still taken by an interrupted caller, and the interruption left for it
+    Bulkhead bulkhead = Bulkhead.of("interrupted", 1);
+    Thread.currentThread().interrupt();
+    try {
+      Assertions.assertEquals(1, bulkhead.call(() -> 1).intValue());
+      Assertions.assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test
+  public void testComposition() {
+    Bulkhead bulkhead = Bulkhead.of("composed", 4);
+    AtomicInteger calls = new AtomicInteger();
+    Supplier<Integer> limited = RateLimit.asFailing(2, 60_000, () -> {
+      throw new IllegalStateException("limited");
+    }, () -> calls.incrementAndGet());
+    Supplier<Integer> composed = Retryable.of(bulkhead.decorate(limited)).times(2);
+
+    Assertions.assertEquals(1, composed.get().intValue());
+    Assertions.assertEquals(2, composed.get().intValue());
+    Assertions.assertThrows(IllegalStateException.class, composed::get);
+    Assertions.assertEquals(0, bulkhead.inUse());
+  }
+
+  static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
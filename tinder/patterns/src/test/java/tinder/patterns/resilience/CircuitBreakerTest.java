@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tinder.patterns.resilience.CircuitBreaker.State;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class CircuitBreakerTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of(null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").window(0, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").window(10, 11));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").failureRate(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").slowCalls(0, TimeUnit.SECONDS, 50));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").openFor(0, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.of("cb").halfOpenCalls(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Retryable.of(() -> 1).circuitBreaker((CircuitBreaker) null));
+  }
+
+  @Test
+  public void testStates() {
+    AtomicLong clock = new AtomicLong();
+    List<String> changes = new ArrayList<>();
+    CircuitBreaker breaker = CircuitBreaker.of("states")
+        .window(10, 4)
+        .openFor(1, TimeUnit.SECONDS)
+        .halfOpenCalls(2)
+        .onStateChange((from, to) -> changes.add(from + ">" + to))
+        .clock(clock::get);
+    Supplier<Integer> ok = breaker.decorate(() -> 1);
+    Supplier<Integer> failing = breaker.decorate(() -> {throw new IllegalStateException("down");});
+
+    // Not enough calls yet for the failures to count
+    ok.get();
+    Assertions.assertThrows(IllegalStateException.class, failing::get);
+    Assertions.assertThrows(IllegalStateException.class, failing::get);
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+    Assertions.assertEquals(-1, breaker.failureRate());
+    Assertions.assertThrows(IllegalStateException.class, failing::get);
+    Assertions.assertEquals(State.OPEN, breaker.state());
+
+    // Open, it does not even call
+    Assertions.assertThrows(CircuitBreakerOpenException.class, ok::get);
+    Assertions.assertEquals(1, breaker.notPermittedCalls());
+
+    // Half open, with a failing probe it opens again
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertThrows(IllegalStateException.class, failing::get);
+    Assertions.assertEquals(State.OPEN, breaker.state());
+
+    // Half open, only 2 probes at once, and closed when both went fine
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertTrue(breaker.tryAcquirePermission());
+    Assertions.assertTrue(breaker.tryAcquirePermission());
+    Assertions.assertFalse(breaker.tryAcquirePermission());
+    breaker.onSuccess(0);
+    Assertions.assertEquals(State.HALF_OPEN, breaker.state());
+    breaker.onSuccess(0);
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+    Assertions.assertEquals(-1, breaker.failureRate());
+
+    Assertions.assertEquals(
+        "[CLOSED>OPEN, OPEN>HALF_OPEN, HALF_OPEN>OPEN, OPEN>HALF_OPEN, HALF_OPEN>CLOSED]", changes.toString());
+  }
+
+  @Test
+  public void testProbesNotReturned() {
+    AtomicLong clock = new AtomicLong();
+    CircuitBreaker breaker = CircuitBreaker.of("probes")
+        .window(1, 1)
+        .openFor(1, TimeUnit.SECONDS)
+        .halfOpenCalls(1)
+        .clock(clock::get);
+    breaker.onError(0, new IllegalStateException());
+    Assertions.assertEquals(State.OPEN, breaker.state());
+
+    // Errors are recorded as well, the probe taking one opens the circuit again
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertThrows(AssertionError.class, () -> breaker.call(() -> {throw new AssertionError();}));
+    Assertions.assertEquals(State.OPEN, breaker.state());
+
+    // A probe never recorded, then the circuit is open again after the open duration
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertTrue(breaker.tryAcquirePermission());
+    Assertions.assertFalse(breaker.tryAcquirePermission());
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertFalse(breaker.tryAcquirePermission());
+    Assertions.assertEquals(State.OPEN, breaker.state());
+
+    // And probing again after that
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertEquals(1, (int) breaker.call(() -> 1));
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+  }
+
+  @Test
+  public void testRollingWindow() {
+    CircuitBreaker breaker = CircuitBreaker.of("window").window(4, 4);
+    breaker.onError(0, new IllegalStateException());
+    breaker.onSuccess(0);
+    breaker.onSuccess(0);
+    breaker.onSuccess(0);
+    Assertions.assertEquals(25, breaker.failureRate());
+    // The failure goes out of the window
+    breaker.onSuccess(0);
+    Assertions.assertEquals(0, breaker.failureRate());
+    breaker.onError(0, new IllegalStateException());
+    breaker.onError(0, new IllegalStateException());
+    Assertions.assertEquals(State.OPEN, breaker.state());
+  }
+
+  @Test
+  public void testSlowCalls() {
+    CircuitBreaker breaker = CircuitBreaker.of("slow").window(4, 4).slowCalls(1, TimeUnit.SECONDS, 75);
+    long slow = TimeUnit.SECONDS.toNanos(2);
+    breaker.onSuccess(slow);
+    breaker.onSuccess(slow);
+    breaker.onSuccess(0);
+    breaker.onSuccess(0);
+    Assertions.assertEquals(50, breaker.slowCallRate());
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+    // These take the place of the first two, slow as well
+    breaker.onSuccess(slow);
+    breaker.onSuccess(slow);
+    Assertions.assertEquals(50, breaker.slowCallRate());
+    breaker.onSuccess(slow);
+    Assertions.assertEquals(State.OPEN, breaker.state());
+  }
+
+  @Test
+  public void testIgnoredErrors() {
+    CircuitBreaker breaker = CircuitBreaker.of("ignored").window(4, 1)
+        .recordOn(ex -> !(ex instanceof IllegalArgumentException));
+    breaker.onError(0, new IllegalArgumentException());
+    Assertions.assertEquals(-1, breaker.failureRate());
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+  }
+
+  @Test
+  public void testWithRetryable() {
+    CircuitBreaker breaker = CircuitBreaker.of("retried").window(10, 3);
+    AtomicInteger calls = new AtomicInteger();
+    Retryable<Integer> retryable = Retryable.<Integer>of(() -> {
+      calls.incrementAndGet();
+      throw new IllegalStateException("down");
+    }).times(5).circuitBreaker(breaker);
+
+    // Opens at the third attempt, and the fourth one stops the retries
+    Assertions.assertThrows(CircuitBreakerOpenException.class, retryable::get);
+    Assertions.assertEquals(3, calls.get());
+    // The next callers fail right away
+    Assertions.assertThrows(CircuitBreakerOpenException.class, retryable::get);
+    Assertions.assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testWithRetryableFunction() {
+    CircuitBreaker breaker = CircuitBreaker.of("retried").window(10, 3);
+    AtomicInteger calls = new AtomicInteger();
+    // The function set after the breaker does not replace it
+    Retryable<Integer> retryable = Retryable.<Integer>of(() -> {
+      calls.incrementAndGet();
+      throw new IllegalStateException("down");
+    }).times(5).circuitBreaker(breaker).circuitBreaker(ex -> ex instanceof IllegalArgumentException);
+
+    Assertions.assertThrows(CircuitBreakerOpenException.class, retryable::get);
+    Assertions.assertEquals(3, calls.get());
+
+    AtomicInteger otherCalls = new AtomicInteger();
+    Retryable<Integer> broken = Retryable.<Integer>of(() -> {
+      otherCalls.incrementAndGet();
+      throw new IllegalArgumentException("bad");
+    }).times(5).circuitBreaker(ex -> ex instanceof IllegalArgumentException).circuitBreaker(CircuitBreaker.of("other"));
+    Assertions.assertThrows(IllegalArgumentException.class, broken::get);
+    Assertions.assertEquals(1, otherCalls.get());
+  }
+
+  @Test
+  public void testConcurrentWindow() throws InterruptedException {
+    CircuitBreaker breaker = CircuitBreaker.of("concurrent").window(64, 64).failureRate(100);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int offset = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          if ((i + offset) % 2 == 0) {
+            breaker.onSuccess(0);
+          } else {
+            breaker.onError(0, new IllegalStateException());
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread t: threads) {
+      t.join();
+    }
+    // The counters always match the slots
+    int rate = breaker.failureRate();
+    Assertions.assertTrue(rate >= 0 && rate <= 100, "rate: " + rate);
+    Assertions.assertEquals(State.CLOSED, breaker.state());
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class HashedWheelTimerTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new HashedWheelTimer("invalid", 1, TimeUnit.MILLISECONDS, 100));
+  }
+
+  @Test
+  public void testIdle() throws InterruptedException {
+    HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 64);
+    for (int i = 0; i < 3; i++) {
+      // With nothing scheduled the thread parks, and the next task wakes it up
+      Assertions.assertTrue(waitForState("test-timer", Thread.State.WAITING));
+
+      CountDownLatch done = new CountDownLatch(2);
+      long start = System.nanoTime();
+      timer.schedule(done::countDown, 0, TimeUnit.MILLISECONDS);
+      // More than a full turn of the wheel
+      timer.schedule(done::countDown, 100, TimeUnit.MILLISECONDS);
+      Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+      Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+  }
+
+  private static boolean waitForState(String name, Thread.State state) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      for (Thread thread: Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().equals(name) && thread.getState() == state) {
+          return true;
+        }
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class HedgedTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Hedged.of(null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Hedged.of(() -> done(1)).delay(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Hedged.of(() -> done(1)).percentile(1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Hedged.of(() -> done(1)).maxRate(0));
+  }
+
+  @Test
+  public void testTailLatency() throws Exception {
+    // 10% of the responses 20 times slower
+    TailBackend backend = new TailBackend(10, 200, 0.1);
+    try {
+      long[] plain = latencies(() -> backend.request(), 300);
+      Hedged<Integer> hedged = Hedged.of(backend::request).delay(30).maxRate(20);
+      long[] withHedges = latencies(hedged, 300);
+
+      long plainP95 = plain[(int) (plain.length * 0.95)];
+      long hedgedP95 = withHedges[(int) (withHedges.length * 0.95)];
+      Assertions.assertTrue(plainP95 >= 200, "p95: " + plainP95);
+      Assertions.assertTrue(hedgedP95 < 100, "p95: " + hedgedP95);
+      // About the 10% slow ones, and the losers cancelled
+      Assertions.assertTrue(hedged.hedges() > 0 && hedged.hedges() <= 300 * 20 / 100, "hedges: " + hedged.hedges());
+      Assertions.assertTrue(hedged.hedgeWins() > 0);
+      Assertions.assertTrue(backend.cancelled.get() > 0);
+    } finally {
+      backend.shutdown();
+    }
+  }
+
+  @Test
+  public void testMaxRate() throws Exception {
+    // All slow, only the 10% is hedged
+    TailBackend backend = new TailBackend(50, 50, 0);
+    try {
+      Hedged<Integer> hedged = Hedged.of(backend::request).delay(1).maxRate(10);
+      latencies(hedged, 200);
+      Assertions.assertTrue(hedged.hedges() <= 20, "hedges: " + hedged.hedges());
+      Assertions.assertEquals(200 + hedged.hedges(), backend.requests.get());
+    } finally {
+      backend.shutdown();
+    }
+  }
+
+  @Test
+  public void testPercentile() throws Exception {
+    TailBackend backend = new TailBackend(20, 20, 0);
+    try {
+      Hedged<Integer> hedged = Hedged.of(backend::request).delay(500).percentile(0.95);
+      Assertions.assertEquals(500, hedged.currentDelay());
+      latencies(hedged, 150);
+      // Within the bucket of the latency, and the timer tick
+      long delay = hedged.currentDelay();
+      Assertions.assertTrue(delay >= 15 && delay <= 40, "delay: " + delay);
+    } finally {
+      backend.shutdown();
+    }
+  }
+
+  @Test
+  public void testPercentileTail() throws Exception {
+    // 20% of the responses 6 times slower, so the p90 is in the tail
+    TailBackend backend = new TailBackend(10, 60, 0.2);
+    try {
+      Hedged<Integer> hedged = Hedged.of(backend::request).delay(30).percentile(0.9).maxRate(100);
+      latencies(hedged, 200);
+      // The hedged calls still count as slow, otherwise only the fast responses are recorded, and the delay goes down
+      // to the normal time, hedging most of the calls
+      long delay = hedged.currentDelay();
+      Assertions.assertTrue(delay >= 30, "delay: " + delay);
+      Assertions.assertTrue(hedged.hedges() <= 200 / 2, "hedges: " + hedged.hedges());
+    } finally {
+      backend.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailures() {
+    AtomicInteger counter = new AtomicInteger();
+    Hedged<Integer> hedged = Hedged.of(() -> {
+      counter.incrementAndGet();
+      CompletableFuture<Integer> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalStateException("down"));
+      return failed;
+    }).delay(1);
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> hedged.call().get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals("down", ex.getCause().getMessage());
+    // Failures are not hedged
+    Assertions.assertEquals(1, counter.get());
+  }
+
+  @Test
+  public void testRejected() throws Exception {
+    CompletableFuture<Integer> primary = new CompletableFuture<>();
+    AtomicInteger refused = new AtomicInteger();
+    // Every call can be hedged, and the executor refuses them
+    Hedged<Integer> hedged = Hedged.of(() -> primary).delay(1).maxRate(100).executor(command -> {
+      refused.incrementAndGet();
+      throw new RejectedExecutionException("full");
+    });
+    CompletableFuture<Integer> result = hedged.call();
+    for (int i = 0; i < 5000 && refused.get() == 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+    Assertions.assertEquals(1, refused.get());
+    Assertions.assertFalse(result.isDone());
+    Assertions.assertEquals(0, hedged.hedges());
+
+    // The refused hedge is not waited for
+    primary.completeExceptionally(new IllegalStateException("down"));
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals("down", ex.getCause().getMessage());
+  }
+
+  /**
+   * @return the sorted latencies of the calls, started 1ms apart
+   */
+  static long[] latencies(Supplier<CompletableFuture<Integer>> operation, int calls) throws Exception {
+    List<CompletableFuture<Long>> results = new ArrayList<>();
+    for (int i = 0; i < calls; i++) {
+      long start = System.nanoTime();
+      results.add(operation.get().thenApply(v -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+      // Spread over time, for the rate limit of the hedges to follow them
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+    long[] latencies = new long[calls];
+    for (int i = 0; i < calls; i++) {
+      latencies[i] = results.get(i).get(10, TimeUnit.SECONDS);
+    }
+    Arrays.sort(latencies);
+    return latencies;
+  }
+
+  static <T> CompletableFuture<T> done(T value) {
+    return CompletableFuture.completedFuture(value);
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class RetryBudgetTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(-1, 0, 10, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(10, -1, 10, TimeUnit.SECONDS));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(10, 0, 10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testBudget() {
+    AtomicLong clock = new AtomicLong();
+    RetryBudget budget = new RetryBudget(20, 0, TimeUnit.SECONDS.toNanos(10), clock::get);
+    Assertions.assertFalse(budget.tryRetry());
+
+    // 20% of 10 successes
+    for (int i = 0; i < 10; i++) {
+      budget.onSuccess();
+    }
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertFalse(budget.tryRetry());
+
+    // Once the ttl is over, those calls don't count anymore
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    for (int i = 0; i < 5; i++) {
+      budget.onSuccess();
+    }
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertFalse(budget.tryRetry());
+  }
+
+  @Test
+  public void testMinimum() {
+    AtomicLong clock = new AtomicLong();
+    RetryBudget budget = new RetryBudget(0, 1, TimeUnit.SECONDS.toNanos(3), clock::get);
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertTrue(budget.tryRetry());
+    Assertions.assertFalse(budget.tryRetry());
+  }
+
+}
@@ -15,7 +15,10 @@
  */
 package tinder.patterns.resilience;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -231,4 +234,94 @@ public class RetryableTest {
     Assertions.assertEquals("last exception!", ex.getMessage());
   }
   
+  @Test
+  public void testBackoffAndMetrics() {
+    RetryMetrics metrics = new RetryMetrics();
+    Assertions.assertThrows(RuntimeException.class, () -> {
+      Retryable.of(() -> {throw new RuntimeException("surprise!");})
+          .times(3)
+          .backoff(Backoff.exponential(1, 4).withFullJitter())
+          .metrics(metrics)
+          .retry();
+    });
+    Assertions.assertEquals(3, metrics.attempts());
+    Assertions.assertEquals(2, metrics.retries());
+  }
+
+  @Test
+  public void testDeadline() {
+    Retryable<Object> retryable = Retryable.of(() -> {throw new RuntimeException("surprise!");})
+        .times(10)
+        .delay(50)
+        .deadline(120);
+    long start = System.nanoTime();
+    RuntimeException ex = Assertions.assertThrows(RuntimeException.class, retryable::retry);
+    Assertions.assertEquals("surprise!", ex.getMessage());
+    Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    Assertions.assertEquals(3, retryable.metrics().attempts());
+    Assertions.assertEquals(1, retryable.metrics().deadlineExceeded());
+  }
+
+  @Test
+  public void testBudget() {
+    RetryBudget budget = RetryBudget.of(10, 0, 10, TimeUnit.SECONDS);
+    for (int i = 0; i < 20; i++) {
+      Retryable.of(() -> true).budget(budget).retry();
+    }
+    final long[] counter = new long[] {0L};
+    Retryable<Object> retryable = Retryable.of(() -> {
+      counter[0]++;
+      throw new RuntimeException("surprise!");
+    }).times(5).budget(budget);
+
+    // 10% of 20 calls: only 2 retries for the failing one
+    Assertions.assertThrows(RuntimeException.class, retryable::retry);
+    Assertions.assertEquals(3, counter[0]);
+    Assertions.assertEquals(1, retryable.metrics().budgetExhausted());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> retryable.budget(null));
+  }
+
+  @Test
+  public void testShared() throws InterruptedException {
+    // One Retryable called by many threads, each with operations failing a different number of times
+    AtomicInteger errors = new AtomicInteger();
+    ThreadLocal<int[]> failures = ThreadLocal.withInitial(() -> new int[] {0});
+    Retryable<Integer> retryable = Retryable.of(() -> {
+      int[] left = failures.get();
+      if (left[0] > 0) {
+        left[0]--;
+        throw new RuntimeException("failure " + left[0]);
+      }
+      return 1;
+    }).times(3).throwFirst();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 2_000; i++) {
+          int fails = i % 4;
+          failures.get()[0] = fails;
+          try {
+            retryable.get();
+            if (fails >= 3) {
+              errors.incrementAndGet();
+            }
+          } catch (RuntimeException ex) {
+            // Always the first exception of this very call
+            if (fails < 3 || !ex.getMessage().equals("failure " + (fails - 1))) {
+              errors.incrementAndGet();
+            }
+            failures.get()[0] = 0;
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread t: threads) {
+      t.join();
+    }
+    Assertions.assertEquals(0, errors.get());
+    Assertions.assertEquals(8 * 2_000 * (1 + 2 + 3 + 3) / 4, retryable.metrics().attempts());
+  }
+
 }
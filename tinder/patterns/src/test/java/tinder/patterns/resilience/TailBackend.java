@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A backend answering most of the requests in the normal time, and a few of them (at random) much later.
+ * Cancelled requests are not answered, and are counted.
+ * @author Raffaele Ragni
+ */
+public class TailBackend {
+
+  final long normalMillis;
+  final long slowMillis;
+  final double slowRate;
+  final AtomicInteger requests = new AtomicInteger();
+  final AtomicInteger cancelled = new AtomicInteger();
+  final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+
+  public TailBackend(long normalMillis, long slowMillis, double slowRate) {
+    this.normalMillis = normalMillis;
+    this.slowMillis = slowMillis;
+    this.slowRate = slowRate;
+  }
+
+  CompletableFuture<Integer> request() {
+    requests.incrementAndGet();
+    long latency = ThreadLocalRandom.current().nextDouble() < slowRate ? slowMillis : normalMillis;
+    CompletableFuture<Integer> response = new CompletableFuture<>();
+    ScheduledFuture<?> task = scheduler.schedule(() -> response.complete(1), latency, TimeUnit.MILLISECONDS);
+    response.whenComplete((value, ex) -> {
+      if (response.isCancelled()) {
+        task.cancel(false);
+        cancelled.incrementAndGet();
+      }
+    });
+    return response;
+  }
+
+  void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.patterns.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+public class ThreadPoolBulkheadTest {
+
+  @Test
+  public void testValidations() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ThreadPoolBulkhead.of(null, 1, 0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ThreadPoolBulkhead.of("b", 0, 0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> ThreadPoolBulkhead.of("b", 1, -1));
+  }
+
+  @Test
+  public void testFull() throws Exception {
+    ThreadPoolBulkhead bulkhead = ThreadPoolBulkhead.of("pool", 1, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      CompletableFuture<Integer> running = bulkhead.submit(() -> {
+        BulkheadTest.await(release);
+        return Thread.currentThread().getName().startsWith("tinder-bulkhead-pool-") ? 1 : 0;
+      });
+      CompletableFuture<Integer> queued = bulkhead.submit(() -> 2);
+      CompletableFuture<Integer> rejected = bulkhead.submit(() -> 3);
+
+      ExecutionException ex = Assertions.assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+      Assertions.assertTrue(ex.getCause() instanceof BulkheadFullException);
+      Assertions.assertEquals(1, bulkhead.rejected());
+      Assertions.assertEquals(1, bulkhead.waiting());
+
+      release.countDown();
+      Assertions.assertEquals(1, running.get(5, TimeUnit.SECONDS).intValue());
+      Assertions.assertEquals(2, queued.get(5, TimeUnit.SECONDS).intValue());
+    } finally {
+      bulkhead.shutdown();
+    }
+  }
+
+  @Test
+  public void testWithAsyncRetryable() throws Exception {
+    ThreadPoolBulkhead bulkhead = ThreadPoolBulkhead.of("retried", 2, 0);
+    AtomicInteger counter = new AtomicInteger();
+    try {
+      int result = AsyncRetryable.of(bulkhead.decorate(() -> {
+        if (counter.incrementAndGet() < 3) {
+          throw new IllegalStateException("not yet");
+        }
+        return counter.get();
+      })).times(3).delay(1).retry().get(5, TimeUnit.SECONDS);
+      Assertions.assertEquals(3, result);
+    } finally {
+      bulkhead.shutdown();
+    }
+  }
+
+}
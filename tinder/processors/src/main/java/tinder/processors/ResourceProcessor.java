@@ -15,20 +15,49 @@
  */
 package tinder.processors;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import io.javalin.Context;
 import io.javalin.Javalin;
+import io.javalin.core.HandlerType;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
@@ -40,6 +69,8 @@ import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -47,6 +78,7 @@ import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import static javax.tools.Diagnostic.Kind.ERROR;
 import javax.tools.JavaFileObject;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
@@ -55,9 +87,22 @@ import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import org.jdbi.v3.core.result.ResultIterable;
+import tinder.core.AsyncResults;
+import tinder.core.Cached;
+import tinder.core.ContentNegotiation;
+import tinder.core.JsonBinding;
+import tinder.core.JsonStreaming;
+import tinder.core.RateLimited;
+import tinder.core.RequestBody;
 import tinder.core.ResourceEvents;
+import tinder.core.ResponseCache;
+import tinder.core.RouteRateLimit;
+import tinder.core.Timeout;
 import tinder.core.TypeConverter;
+import tinder.core.routing.Router;
 
 /**
  *
@@ -72,6 +117,30 @@ public class ResourceProcessor extends AbstractProcessor {
   private static final String PARAM_CONVERTER = "converter";
   private static final String PARAM_CTX = "ctx";
   private static final String PARAM_JAVALIN = "javalin";
+  private static final String PARAM_ROUTER = "router";
+  private static final String PARAM_PATHPARAMS = "params";
+
+  // Return types written as a sequence of items.
+  private static final List<Class<?>> STREAMED_TYPES = Arrays.asList(Stream.class, Iterator.class, ResultIterable.class);
+
+  // Types that have a known factory from string: for these the generated code calls it directly
+  // instead of going through the converter at every request.
+  private static final Map<String, String> DIRECT_CONVERSIONS = new HashMap<>();
+  static {
+    for (Class<?> c: Arrays.asList(Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class)) {
+      DIRECT_CONVERSIONS.put(c.getName(), "$T.valueOf($L)");
+    }
+    for (Class<?> c: Arrays.asList(BigDecimal.class, BigInteger.class)) {
+      DIRECT_CONVERSIONS.put(c.getName(), "new $T($L)");
+    }
+    DIRECT_CONVERSIONS.put(UUID.class.getName(), "$T.fromString($L)");
+    for (Class<?> c: Arrays.asList(Instant.class, Duration.class, LocalDate.class, LocalTime.class, LocalDateTime.class, OffsetDateTime.class, ZonedDateTime.class)) {
+      DIRECT_CONVERSIONS.put(c.getName(), "$T.parse($L)");
+    }
+  }
+
+  // All the routes of the compilation, to find the clashes between resources already at compile time.
+  private final Map<String, Element> routes = new HashMap<>();
 
   @Override
   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
@@ -120,13 +189,22 @@ public class ResourceProcessor extends AbstractProcessor {
         .addParameter(Javalin.class, PARAM_JAVALIN)
         .addParameter(TypeName.get(element.asType()), PARAM_SOURCECLASS);
 
+    // Same routes, but on the router: it matches them with a tree instead of going through all of them.
+    MethodSpec.Builder routeMethod = MethodSpec.methodBuilder("route")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .addParameter(Router.class, PARAM_ROUTER)
+        .addParameter(TypeName.get(element.asType()), PARAM_SOURCECLASS);
+
     // Determine the root path if there is any, the annotation shouldbe there.
     String rootPath = "";
     if (element.getAnnotation(Path.class) != null) {
       rootPath = Optional.ofNullable(element.getAnnotation(Path.class).value()).orElse("");
     }
 
+    Constants constants = new Constants();
+
     bindMethod = bindMethod.addStatement("$T $L = new $T(){}", TypeConverter.class, PARAM_CONVERTER, TypeConverter.class);
+    routeMethod = routeMethod.addStatement("$T $L = new $T(){}", TypeConverter.class, PARAM_CONVERTER, TypeConverter.class);
 
     for (Element e : elements.getAllMembers((TypeElement) element)) {
       if (e.getAnnotation(Path.class) != null) {
@@ -145,19 +223,19 @@ public class ResourceProcessor extends AbstractProcessor {
         finalPath = finalPath.replaceAll("\\{([^\\}]*)\\}", ":$1");
 
         if (e.getAnnotation(GET.class) != null) {
-          methodRoute(bindMethod, e, "GET", finalPath);
+          methodRoute(bindMethod, routeMethod, constants, e, "GET", finalPath);
         }
         if (e.getAnnotation(POST.class) != null) {
-          methodRoute(bindMethod, e, "POST", finalPath);
+          methodRoute(bindMethod, routeMethod, constants, e, "POST", finalPath);
         }
         if (e.getAnnotation(PUT.class) != null) {
-          methodRoute(bindMethod, e, "PUT", finalPath);
+          methodRoute(bindMethod, routeMethod, constants, e, "PUT", finalPath);
         }
         if (e.getAnnotation(PATCH.class) != null) {
-          methodRoute(bindMethod, e, "PATCH", finalPath);
+          methodRoute(bindMethod, routeMethod, constants, e, "PATCH", finalPath);
         }
         if (e.getAnnotation(DELETE.class) != null) {
-          methodRoute(bindMethod, e, "DELETE", finalPath);
+          methodRoute(bindMethod, routeMethod, constants, e, "DELETE", finalPath);
         }
 
       }
@@ -169,26 +247,150 @@ public class ResourceProcessor extends AbstractProcessor {
       bindMethod = bindMethod
           .addComment("Call the init of the resource when all is connected")
           .addStatement("$L.init()", PARAM_SOURCECLASS);
+      routeMethod = routeMethod
+          .addComment("Call the init of the resource when all is connected")
+          .addStatement("$L.init()", PARAM_SOURCECLASS);
     }
 
+    constants.addTo(restClass);
     restClass.addMethod(bindMethod.build());
+    restClass.addMethod(routeMethod.build());
   }
 
-  private MethodSpec.Builder methodRoute(
-      MethodSpec.Builder bindMethod, Element method, String httpMethod, String path) {
+  private void methodRoute(
+      MethodSpec.Builder bindMethod, MethodSpec.Builder routeMethod, Constants constants,
+      Element method, String httpMethod, String path) {
+
+    checkRouteClash(method, httpMethod, path);
 
-    bindMethod = bindMethod
+    bindMethod
         .addCode("\n")
         .addComment(httpMethod.toUpperCase() + " " + path)
-        .addCode("$L.$L($S, ($L) -> {\n", PARAM_JAVALIN, httpMethod.toLowerCase(), path, PARAM_CTX)
+        .addCode("$L.$L($S, $L($L) -> {\n", PARAM_JAVALIN, httpMethod.toLowerCase(), path,
+            wrappers(method, httpMethod, CodeBlock.of("$L.attribute($T.class)", PARAM_JAVALIN, MetricRegistry.class)), PARAM_CTX)
         .addCode(CodeBlock.builder()
-            .add(callBlock(method))
+            .add(callBlock(method, null, constants))
             .build())
-        .addCode("});\n\n");
-    return bindMethod;
+        .addCode("})$L;\n\n", closing(method));
+
+    // Path parameters are taken by position, known from here. Except when the method wants the context:
+    // it may read them by name, so it gets a plain handler.
+    routeMethod
+        .addCode("\n")
+        .addComment(httpMethod.toUpperCase() + " " + path);
+    CodeBlock wrappers = wrappers(method, httpMethod, CodeBlock.of("$L.attribute($T.class)", PARAM_ROUTER, MetricRegistry.class));
+    if (hasContextParameter(method)) {
+      routeMethod
+          .addCode("$L.add($T.$L, $S, $L($T $L) -> {\n", PARAM_ROUTER, HandlerType.class, httpMethod, path, wrappers, Context.class, PARAM_CTX)
+          .addCode(callBlock(method, null, constants));
+    } else {
+      routeMethod
+          .addCode("$L.add($T.$L, $S, $L($L, $L) -> {\n", PARAM_ROUTER, HandlerType.class, httpMethod, path, wrappers, PARAM_CTX, PARAM_PATHPARAMS)
+          .addCode(callBlock(method, pathParamNames(path), constants));
+    }
+    routeMethod.addCode("})$L;\n\n", closing(method));
+  }
+
+  /**
+   * The handler is wrapped by the rate limit first, so that also the cached responses count in the limit.
+   */
+  private CodeBlock wrappers(Element method, String httpMethod, CodeBlock metricRegistry) {
+    return CodeBlock.builder()
+        .add(rateLimit(method))
+        .add(cache(method, httpMethod, metricRegistry))
+        .build();
   }
 
-  private CodeBlock callBlock(Element method) {
+  /**
+   * The opening of the RouteRateLimit wrapping the handler of a @RateLimited method, empty when not limited.
+   */
+  private CodeBlock rateLimit(Element method) {
+    RateLimited limited = method.getAnnotation(RateLimited.class);
+    if (limited == null) {
+      return CodeBlock.of("");
+    }
+    if (limited.value() <= 0 || limited.period() <= 0) {
+      processingEnv.getMessager().printMessage(ERROR, "@RateLimited needs a positive value and period", method);
+    }
+    if (limited.key() == RateLimited.Key.HEADER && limited.header().isEmpty()) {
+      processingEnv.getMessager().printMessage(ERROR, "@RateLimited with the HEADER key needs the header", method);
+    }
+    return CodeBlock.of("$T.of($LL, $LL, $T.$L, $S).limited(", RouteRateLimit.class,
+        limited.value(), limited.unit().toMillis(limited.period()), RateLimited.Key.class, limited.key(), limited.header());
+  }
+
+  /**
+   * The opening of the ResponseCache wrapping the handler of a @Cached method, empty when not cached.
+   * Only GET methods with a plain result can be cached: async and streamed responses are not kept in memory.
+   */
+  private CodeBlock cache(Element method, String httpMethod, CodeBlock metricRegistry) {
+    Cached cached = method.getAnnotation(Cached.class);
+    if (cached == null) {
+      return CodeBlock.of("");
+    }
+    TypeMirror returnType = ((ExecutableElement) method).getReturnType();
+    if (!"GET".equals(httpMethod)) {
+      processingEnv.getMessager().printMessage(ERROR, "@Cached is only for GET methods", method);
+    } else if (returnType.getKind() == TypeKind.VOID
+        || isAssignableTo(returnType, CompletionStage.class) || isStreamed(returnType)) {
+      processingEnv.getMessager().printMessage(ERROR, "@Cached needs a plain result, not void, async or streamed", method);
+    }
+    // The response changes with the Accept header when there is more than one media type to choose from
+    Set<String> headers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    headers.addAll(Arrays.asList(cached.headers()));
+    String[] produces = mediaTypes(method, Produces.class, Produces::value);
+    if (produces != null && (produces.length != 1 || produces[0].contains(","))) {
+      headers.add("Accept");
+    }
+    CodeBlock.Builder args = CodeBlock.builder()
+        .add("$L, $S, $LL, $L", metricRegistry,
+            method.getEnclosingElement().getSimpleName() + "." + method.getSimpleName(),
+            cached.unit().toMillis(cached.ttl()), cached.maxEntries());
+    headers.forEach(h -> args.add(", $S", h));
+    return CodeBlock.of("$T.of($L).cached(", ResponseCache.class, args.build());
+  }
+
+  private static String closing(Element method) {
+    return (method.getAnnotation(RateLimited.class) == null ? "" : ")")
+        + (method.getAnnotation(Cached.class) == null ? "" : ")");
+  }
+
+  /**
+   * Two routes on the same method and path would shadow each other at runtime, from any resource they come.
+   */
+  private void checkRouteClash(Element method, String httpMethod, String path) {
+    String key = httpMethod + " " + path.replaceAll(":[^/]*", ":").replaceAll("/+$", "");
+    Element previous = routes.putIfAbsent(key, method);
+    if (previous != null && !previous.equals(method)) {
+      processingEnv.getMessager().printMessage(ERROR,
+          "route " + httpMethod + " " + path + " is already defined by "
+              + previous.getEnclosingElement().getSimpleName() + "." + previous.getSimpleName(),
+          method);
+    }
+  }
+
+  private static List<String> pathParamNames(String path) {
+    List<String> result = new ArrayList<>();
+    for (String segment: path.split("/")) {
+      if (segment.startsWith(":")) {
+        result.add(segment.substring(1));
+      }
+    }
+    return result;
+  }
+
+  private boolean hasContextParameter(Element method) {
+    Types types = processingEnv.getTypeUtils();
+    TypeMirror contextType = processingEnv.getElementUtils().getTypeElement(Context.class.getName()).asType();
+    return ((ExecutableElement) method).getParameters().stream()
+        .anyMatch(p -> types.isSameType(p.asType(), contextType));
+  }
+
+  /**
+   * @param pathParams names of the path parameters in order, to take them by position. Null to read them from
+   *    the context
+   */
+  private CodeBlock callBlock(Element method, List<String> pathParams, Constants constants) {
 
     Elements elements = processingEnv.getElementUtils();
     Types types = processingEnv.getTypeUtils();
@@ -229,34 +431,266 @@ public class ResourceProcessor extends AbstractProcessor {
         blockStrings.addStatement("$T str$L = $L.header($S)", String.class, name, PARAM_CTX, headerParam.value());
       } else if (queryParam != null) {
         blockStrings.addStatement("$T str$L = $L.queryParam($S)", String.class, name, PARAM_CTX, queryParam.value());
+      } else if (pathParam != null && pathParams != null && pathParams.contains(pathParam.value())) {
+        blockStrings.addStatement("$T str$L = $L[$L]", String.class, name, PARAM_PATHPARAMS, pathParams.indexOf(pathParam.value()));
       } else if (pathParam != null) {
         blockStrings.addStatement("$T str$L = $L.pathParam($S)", String.class, name, PARAM_CTX, pathParam.value());
       } else {
         // No annotation, we go from body. There should be only one of these.
-        blockStrings.addStatement("$T str$L = $L.body()", String.class, name, PARAM_CTX);
+        // It is bound straight from the request stream, no string in between.
+        String consumes = negotiation(method, constants, mediaTypes(method, Consumes.class, Consumes::value));
+        blockVars.addStatement("$T $L = $L", TypeName.get(paramType), name, bodyBinding(paramType, consumes, constants));
+        continue;
       }
-      blockVars.addStatement("$T $L = $L.fromString(str$L, $T.class)",
-          ClassName.get(paramType), name, PARAM_CONVERTER, name, ClassName.get(paramType));
+      blockVars.addStatement("$T $L = $L", ClassName.get(paramType), name, conversion(paramType, "str" + name));
 
     }
 
     result.add(blockStrings.build());
     result.add(blockVars.build());
+    CodeBlock invocation = CodeBlock.of("$L.$L($L)", PARAM_SOURCECLASS, method.getSimpleName(), paramNames == null ? "" : paramNames);
     if (isReturnVoid) {
-      if (paramNames == null) {
-        result.addStatement("$L.$L()", PARAM_SOURCECLASS, method.getSimpleName());
+      result.addStatement("$L", invocation);
+    } else if (isAssignableTo(execType.getReturnType(), CompletionStage.class)) {
+      // The request thread is released, the response is written when the stage completes.
+      String produces = negotiation(method, constants, mediaTypes(method, Produces.class, Produces::value));
+      if (produces != null) {
+        result.addStatement("$T.respond($L, $L, $LL, $L)", AsyncResults.class, PARAM_CTX, invocation, timeoutMillis(method), produces);
       } else {
-        result.addStatement("$L.$L($L)", PARAM_SOURCECLASS, method.getSimpleName(), paramNames);
+        result.addStatement("$T.respond($L, $L, $LL)", AsyncResults.class, PARAM_CTX, invocation, timeoutMillis(method));
+      }
+    } else if (isStreamed(execType.getReturnType())) {
+      // Sequences are written one item at a time, not collected into memory first.
+      String[] produces = mediaTypes(method, Produces.class, Produces::value);
+      if (!isStreamable(produces)) {
+        processingEnv.getMessager().printMessage(ERROR,
+            "Streamed results are written only as " + JsonStreaming.CONTENT_TYPE_JSON + " or " + JsonStreaming.CONTENT_TYPE_NDJSON, method);
       }
+      result.addStatement("$T.write($L, $L, $L)", JsonStreaming.class, PARAM_CTX, invocation, producesNewlineDelimited(produces));
     } else {
-      if (paramNames == null) {
-        result.addStatement("$L.json($L.$L())", PARAM_CTX, PARAM_SOURCECLASS, method.getSimpleName());
+      // Plain values are json with the writer of their type, unless the media types are declared
+      String produces = negotiation(method, constants, mediaTypes(method, Produces.class, Produces::value));
+      if (produces != null) {
+        result.addStatement("$L.write($L, $L)", produces, PARAM_CTX, invocation);
+      } else if (isResolved(execType.getReturnType())) {
+        result.addStatement("$L.write($L, $L)", jsonBinding(execType.getReturnType(), constants), PARAM_CTX, invocation);
       } else {
-        result.addStatement("$L.json($L.$L($L))", PARAM_CTX, PARAM_SOURCECLASS, method.getSimpleName(), paramNames);
+        // Types generated in this same round (such as the immutables) are not known yet, the mapper looks them up
+        result.addStatement("$L.json($L)", PARAM_CTX, invocation);
       }
     }
 
     return result.unindent().build();
   }
 
+  /**
+   * Streams, iterators and jdbi results are written as a sequence with JsonStreaming.
+   */
+  private boolean isStreamed(TypeMirror returnType) {
+    return STREAMED_TYPES.stream().anyMatch(c -> isAssignableTo(returnType, c));
+  }
+
+  private boolean isAssignableTo(TypeMirror type, Class<?> target) {
+    // Types generated in this same round (such as the immutables) are still error types, and those are
+    // assignable to anything.
+    if (type.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    Elements elements = processingEnv.getElementUtils();
+    Types types = processingEnv.getTypeUtils();
+    return types.isAssignable(types.erasure(type), types.erasure(elements.getTypeElement(target.getName()).asType()));
+  }
+
+  private long timeoutMillis(Element method) {
+    Timeout timeout = method.getAnnotation(Timeout.class);
+    return timeout == null ? 0 : timeout.unit().toMillis(timeout.value());
+  }
+
+  private static boolean producesNewlineDelimited(String[] mediaTypes) {
+    return mediaTypes != null && Arrays.stream(mediaTypes)
+        .anyMatch(value -> value.contains(JsonStreaming.CONTENT_TYPE_NDJSON));
+  }
+
+  /**
+   * JsonStreaming has no content negotiation, the declared types can only be the ones it writes.
+   */
+  private static boolean isStreamable(String[] mediaTypes) {
+    return mediaTypes == null || Arrays.stream(mediaTypes)
+        .flatMap(value -> Arrays.stream(value.split(",")))
+        .map(type -> type.split(";")[0].trim().toLowerCase())
+        .allMatch(type -> type.isEmpty()
+            || type.equals(JsonStreaming.CONTENT_TYPE_JSON) || type.equals(JsonStreaming.CONTENT_TYPE_NDJSON));
+  }
+
+  /**
+   * The media types of the method, or of its class when the method has none.
+   */
+  private <A extends Annotation> String[] mediaTypes(Element method, Class<A> annotationType, Function<A, String[]> value) {
+    A annotation = method.getAnnotation(annotationType);
+    if (annotation == null) {
+      annotation = method.getEnclosingElement().getAnnotation(annotationType);
+    }
+    return annotation == null ? null : value.apply(annotation);
+  }
+
+  /**
+   * The constant with the content negotiation of the media types, null when there are no types declared.
+   */
+  private String negotiation(Element method, Constants constants, String[] mediaTypes) {
+    if (mediaTypes == null) {
+      return null;
+    }
+    try {
+      ContentNegotiation.of(mediaTypes);
+    } catch (IllegalArgumentException ex) {
+      processingEnv.getMessager().printMessage(ERROR, ex.getMessage(), method);
+      return null;
+    }
+    String name = "MEDIA_" + String.join("_", mediaTypes).toUpperCase().replaceAll("[^A-Z0-9]+", "_");
+    CodeBlock types = Arrays.stream(mediaTypes)
+        .map(t -> CodeBlock.of("$S", t))
+        .collect(CodeBlock.joining(", "));
+    return constants.add(TypeName.get(ContentNegotiation.class), name,
+        CodeBlock.of("$T.of($L)", ContentNegotiation.class, types));
+  }
+
+  /**
+   * The expression binding the request body into the parameter type.
+   * Strings, InputStream and ReadableByteChannel get the raw body, everything else is deserialized from json.
+   * With @Consumes the body is read in the format of its content type instead, streams and channels excluded.
+   */
+  private CodeBlock bodyBinding(TypeMirror paramType, String consumes, Constants constants) {
+    TypeName typeName = TypeName.get(paramType);
+    CodeBlock body = CodeBlock.of("$T.of($L)", RequestBody.class, PARAM_CTX);
+    boolean raw = typeName.equals(ClassName.get(InputStream.class)) || typeName.equals(ClassName.get(ReadableByteChannel.class));
+    if (consumes != null && !raw) {
+      body = CodeBlock.of("$L", consumes);
+      if (typeName instanceof ParameterizedTypeName) {
+        return CodeBlock.of("$L.read($L, $L)", body, PARAM_CTX, typeReference(typeName, constants));
+      }
+      return CodeBlock.of("$L.read($L, $T.class)", body, PARAM_CTX, typeName);
+    }
+    if (typeName.equals(ClassName.get(String.class))) {
+      return CodeBlock.of("$L.string($L)", body, PARAM_CTX);
+    }
+    if (typeName.equals(ClassName.get(InputStream.class))) {
+      return CodeBlock.of("$L.stream($L)", body, PARAM_CTX);
+    }
+    if (typeName.equals(ClassName.get(ReadableByteChannel.class))) {
+      return CodeBlock.of("$L.channel($L)", body, PARAM_CTX);
+    }
+    if (isResolved(paramType)) {
+      return CodeBlock.of("$L.read($L)", jsonBinding(paramType, constants), PARAM_CTX);
+    }
+    if (typeName instanceof ParameterizedTypeName) {
+      return CodeBlock.of("$L.json($L, $L)", body, PARAM_CTX, typeReference(typeName, constants));
+    }
+    return CodeBlock.of("$L.json($L, $T.class)", body, PARAM_CTX, typeName);
+  }
+
+  /**
+   * The constant with the json reader and writer of the type, for types already known to the compiler.
+   */
+  private String jsonBinding(TypeMirror type, Constants constants) {
+    TypeName typeName = TypeName.get(type).box();
+    CodeBlock initializer;
+    if (typeName instanceof ParameterizedTypeName) {
+      initializer = CodeBlock.of("$T.of(new $T<$T>(){})", JsonBinding.class, TypeReference.class, typeName);
+    } else {
+      initializer = CodeBlock.of("$T.of($T.class)", JsonBinding.class, typeName);
+    }
+    return constants.add(ParameterizedTypeName.get(ClassName.get(JsonBinding.class), typeName),
+        "JSON_" + constantName(typeName), initializer);
+  }
+
+  /**
+   * The constant with the type reference of a generic type, made once instead of at each request.
+   */
+  private static String typeReference(TypeName typeName, Constants constants) {
+    return constants.add(ParameterizedTypeName.get(ClassName.get(TypeReference.class), typeName),
+        "TYPE_" + constantName(typeName),
+        CodeBlock.of("new $T<$T>(){}", TypeReference.class, typeName));
+  }
+
+  /**
+   * The type as part of a constant name: simple names, upper case.
+   */
+  private static String constantName(TypeName typeName) {
+    return typeName.toString()
+        .replaceAll("[a-z0-9_]+\\.", "")
+        .replace("[]", "_ARRAY")
+        .toUpperCase()
+        .replaceAll("[^A-Z0-9]+", "_")
+        .replaceAll("^_|_$", "");
+  }
+
+  /**
+   * @return if the type and all its type arguments are already known to the compiler
+   */
+  private static boolean isResolved(TypeMirror type) {
+    switch (type.getKind()) {
+      case ERROR:
+      case TYPEVAR:
+      case WILDCARD:
+        return false;
+      case DECLARED:
+        return ((DeclaredType) type).getTypeArguments().stream().allMatch(ResourceProcessor::isResolved);
+      case ARRAY:
+        return isResolved(((ArrayType) type).getComponentType());
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * The expression converting the string variable into the parameter type.
+   * Strings pass as they are, known types and enums get a direct call, everything else goes through the converter.
+   */
+  private CodeBlock conversion(TypeMirror paramType, String stringVariable) {
+    TypeName typeName = ClassName.get(paramType);
+    if (typeName.equals(ClassName.get(String.class))) {
+      return CodeBlock.of("$L", stringVariable);
+    }
+    String format = DIRECT_CONVERSIONS.get(typeName.toString());
+    Element typeElement = processingEnv.getTypeUtils().asElement(paramType);
+    if (format == null && typeElement != null && typeElement.getKind() == ElementKind.ENUM) {
+      format = "$T.valueOf($L)";
+    }
+    if (format == null) {
+      return CodeBlock.of("$L.fromString($L, $T.class)", PARAM_CONVERTER, stringVariable, typeName);
+    }
+    return CodeBlock.builder()
+        .add("$L == null ? null : ", stringVariable)
+        .add(format, typeName, stringVariable)
+        .build();
+  }
+
+  /**
+   * Static fields of the generated class, shared by all the routes using the same value.
+   * Names are made from the values, the same value always gets the same field.
+   */
+  private static final class Constants {
+
+    private final Map<String, FieldSpec> fields = new LinkedHashMap<>();
+
+    String add(TypeName type, String name, CodeBlock initializer) {
+      String result = name;
+      // Different values ending up with the same name get a counter
+      for (int i = 2; fields.containsKey(result); i++) {
+        if (fields.get(result).initializer.equals(initializer)) {
+          return result;
+        }
+        result = name + "_" + i;
+      }
+      fields.put(result, FieldSpec.builder(type, result, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+          .initializer(initializer)
+          .build());
+      return result;
+    }
+
+    void addTo(TypeSpec.Builder restClass) {
+      fields.values().forEach(restClass::addField);
+    }
+  }
+
 }
@@ -18,6 +18,7 @@ package tinder.processors;
 import com.google.testing.compile.Compilation;
 import static com.google.testing.compile.Compiler.javac;
 import com.google.testing.compile.JavaFileObjects;
+import java.io.IOException;
 import javax.tools.JavaFileObject;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
@@ -57,4 +58,207 @@ public class ResourceProcessorTest {
     assertTrue(compilation.status() == Compilation.Status.FAILURE);
   }
 
+  @Test
+  public void testDirectConversions() throws IOException {
+
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget5.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget5").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("Long id = strid == null ? null : Long.valueOf(strid);"));
+    assertTrue(generated.contains("UUID uuid = struuid == null ? null : UUID.fromString(struuid);"));
+    assertTrue(generated.contains("TimeUnit unit = strunit == null ? null : TimeUnit.valueOf(strunit);"));
+    assertTrue(generated.contains("Instant since = strsince == null ? null : Instant.parse(strsince);"));
+    assertTrue(generated.contains("String name = strname;"));
+    // Custom types still go through the converter
+    assertTrue(generated.contains("converter.fromString(strcustom, ResourceProcessorTarget5.Custom.class)"));
+  }
+
+  @Test
+  public void testBodyBinding() throws IOException {
+
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget6.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget6").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("JSON_MAP_STRING_OBJECT = JsonBinding.of(new TypeReference<Map<String, Object>>(){});"));
+    assertTrue(generated.contains("Map<String, Object> body = JSON_MAP_STRING_OBJECT.read(ctx);"));
+    assertTrue(generated.contains("List<String> body = JSON_LIST_STRING.read(ctx);"));
+    assertTrue(generated.contains("String body = RequestBody.of(ctx).string(ctx);"));
+    assertTrue(generated.contains("InputStream body = RequestBody.of(ctx).stream(ctx);"));
+    assertTrue(generated.contains("ReadableByteChannel body = RequestBody.of(ctx).channel(ctx);"));
+    assertTrue(generated.contains("JSON_LONG = JsonBinding.of(Long.class);"));
+    assertTrue(generated.contains("Long body = JSON_LONG.read(ctx);"));
+    assertTrue(!generated.contains("ctx.body()"));
+  }
+
+  @Test
+  public void testStreamedResponses() throws IOException {
+
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget7.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget7").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("JsonStreaming.write(ctx, source.stream(), false);"));
+    assertTrue(generated.contains("JsonStreaming.write(ctx, source.lines(), true);"));
+    assertTrue(generated.contains("JsonStreaming.write(ctx, source.rows(), false);"));
+    // Plain collections are still serialized as a whole
+    assertTrue(generated.contains("JSON_LIST_STRING.write(ctx, source.list());"));
+  }
+
+  @Test
+  public void testAsync() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget8.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget8").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("AsyncResults.respond(ctx, source.stage(), 0L);"));
+    assertTrue(generated.contains("AsyncResults.respond(ctx, source.future(), 2000L);"));
+    // Async results are negotiated as the plain ones
+    assertTrue(generated.contains("AsyncResults.respond(ctx, source.negotiated(), 0L, MEDIA_APPLICATION_JSON_APPLICATION_CBOR);"));
+  }
+
+  @Test
+  public void testRouter() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget9.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget9").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("router.add(HandlerType.GET, \"/items/:group/:id\", (ctx, params) -> {"));
+    // Path parameters by position
+    assertTrue(generated.contains("String strid = params[1];"));
+    assertTrue(generated.contains("String strgroup = params[0];"));
+    // Methods taking the context read them by name
+    assertTrue(generated.contains("router.add(HandlerType.DELETE, \"/items/:id\", (Context ctx) -> {"));
+    assertTrue(generated.contains("String strid = ctx.pathParam(\"id\");"));
+  }
+
+  @Test
+  public void testRouteClash() throws IOException {
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(
+            JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget9.java")),
+            JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTargetClash.java")));
+    assertTrue(compilation.status() == Compilation.Status.FAILURE);
+  }
+
+  @Test
+  public void testContentNegotiation() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget10.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget10").get()
+        .getCharContent(true).toString();
+    // The class types apply when the method has none
+    assertTrue(generated.contains("MEDIA_APPLICATION_JSON_APPLICATION_X_MSGPACK = ContentNegotiation.of(\"application/json\", \"application/x-msgpack\");"));
+    assertTrue(generated.contains("MEDIA_APPLICATION_JSON_APPLICATION_X_MSGPACK.write(ctx, source.map());"));
+    assertTrue(generated.contains("String input = MEDIA_TEXT_PLAIN.read(ctx, String.class);"));
+    assertTrue(generated.contains("MEDIA_TEXT_PLAIN.write(ctx, source.echo(input));"));
+    // Generic types get their type reference once
+    assertTrue(generated.contains("TYPE_LIST_STRING = new TypeReference<List<String>>(){};"));
+    assertTrue(generated.contains("List<String> input = MEDIA_APPLICATION_JSON_APPLICATION_CBOR.read(ctx, TYPE_LIST_STRING);"));
+    // Streams stay raw
+    assertTrue(generated.contains("InputStream input = RequestBody.of(ctx).stream(ctx);"));
+  }
+
+  @Test
+  public void testUnsupportedMediaType() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTargetBadMedia.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.FAILURE);
+    assertTrue(compilation.errors().stream().anyMatch(e -> e.getMessage(null).contains("Media type not supported: application/xml")));
+    // Streams are not negotiated
+    assertTrue(compilation.errors().stream().anyMatch(e -> e.getMessage(null).startsWith("Streamed results are written only as")));
+  }
+
+  @Test
+  public void testCached() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget11.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget11").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("router.add(HandlerType.GET, \"/list/:id\", ResponseCache.of(router.attribute(MetricRegistry.class), \"ResourceProcessorTarget11.list\", 10000L, 50, \"X-Tenant\").cached((ctx, params) -> {"));
+    assertTrue(generated.contains("javalin.get(\"/list/:id\", ResponseCache.of(javalin.attribute(MetricRegistry.class), \"ResourceProcessorTarget11.list\", 10000L, 50, \"X-Tenant\").cached((ctx) -> {"));
+    // More than one media type: the response depends on Accept
+    assertTrue(generated.contains("\"ResourceProcessorTarget11.negotiated\", 500L, 1000, \"Accept\")"));
+    assertTrue(generated.contains("ResponseCache.of(router.attribute(MetricRegistry.class), \"ResourceProcessorTarget11.context\", 1000L, 1000).cached((Context ctx) -> {"));
+  }
+
+  @Test
+  public void testBadCached() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTargetBadCached.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.FAILURE);
+    assertTrue(compilation.errors().size() == 2);
+  }
+
+  @Test
+  public void testRateLimited() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTarget12.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.SUCCESS);
+
+    String generated = compilation.generatedSourceFile("tinder.processors.ResourceResourceProcessorTarget12").get()
+        .getCharContent(true).toString();
+    assertTrue(generated.contains("router.add(HandlerType.POST, \"/login\", RouteRateLimit.of(5L, 60000L, RateLimited.Key.IP, \"\").limited((ctx, params) -> {"));
+    // The limit comes before the cache
+    assertTrue(generated.contains("RouteRateLimit.of(10L, 1000L, RateLimited.Key.HEADER, \"X-Api-Key\").limited(ResponseCache.of("));
+    assertTrue(generated.contains("}));"));
+  }
+
+  @Test
+  public void testBadRateLimited() throws IOException {
+    JavaFileObject tocompile = JavaFileObjects.forResource(ResourceProcessorTest.class.getResource("ResourceProcessorTargetBadRateLimited.java"));
+
+    Compilation compilation = javac()
+        .withProcessors(new ResourceProcessor())
+        .compile(tocompile);
+    assertTrue(compilation.status() == Compilation.Status.FAILURE);
+    assertTrue(compilation.errors().size() == 2);
+  }
+
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+@Produces({"application/json", "application/x-msgpack"})
+public class ResourceProcessorTarget10 {
+
+  @GET
+  @Path("/map")
+  public Map<String, String> map() {
+    return null;
+  }
+
+  @POST
+  @Path("/echo")
+  @Consumes("text/plain")
+  @Produces("text/plain")
+  public String echo(String input) {
+    return input;
+  }
+
+  @POST
+  @Path("/list")
+  @Consumes("application/json, application/cbor")
+  public List<String> list(List<String> input) {
+    return input;
+  }
+
+  @POST
+  @Path("/raw")
+  @Consumes("application/cbor")
+  public String raw(InputStream input) {
+    return "";
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import io.javalin.Context;
+import java.util.List;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import tinder.core.Cached;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget11 {
+
+  @GET
+  @Path("/list/{id}")
+  @Cached(ttl = 10, maxEntries = 50, headers = "X-Tenant")
+  public List<String> list(@PathParam("id") String id, @HeaderParam("X-Tenant") String tenant) {
+    return null;
+  }
+
+  @GET
+  @Path("/negotiated")
+  @Produces({"application/json", "application/cbor"})
+  @Cached(ttl = 500, unit = java.util.concurrent.TimeUnit.MILLISECONDS)
+  public String negotiated() {
+    return "";
+  }
+
+  @GET
+  @Path("/context")
+  @Cached(ttl = 1)
+  public String context(Context ctx) {
+    return "";
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import tinder.core.Cached;
+import tinder.core.RateLimited;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget12 {
+
+  @POST
+  @Path("/login")
+  @RateLimited(value = 5, period = 1, unit = TimeUnit.MINUTES, key = RateLimited.Key.IP)
+  public void login() {
+  }
+
+  @GET
+  @Path("/report")
+  @RateLimited(value = 10, key = RateLimited.Key.HEADER, header = "X-Api-Key")
+  @Cached(ttl = 10)
+  public String report() {
+    return "";
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget5 {
+
+  public static class Custom {
+    public static Custom valueOf(String s) {
+      return new Custom();
+    }
+  }
+
+  @GET
+  @Path("/get/{id}/{uuid}")
+  public String test(
+      @PathParam("id") Long id,
+      @PathParam("uuid") UUID uuid,
+      @QueryParam("unit") TimeUnit unit,
+      @QueryParam("since") Instant since,
+      @QueryParam("custom") Custom custom,
+      @HeaderParam("X-Name") String name) {
+    return "";
+  }
+
+}
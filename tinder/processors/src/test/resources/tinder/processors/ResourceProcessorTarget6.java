@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget6 {
+
+  @POST
+  @Path("/map")
+  public void map(Map<String, Object> body) {
+  }
+
+  @POST
+  @Path("/list")
+  public void list(List<String> body) {
+  }
+
+  @POST
+  @Path("/text")
+  public String text(String body) {
+    return body;
+  }
+
+  @PUT
+  @Path("/stream")
+  public void stream(InputStream body) {
+  }
+
+  @PUT
+  @Path("/channel")
+  public void channel(ReadableByteChannel body) {
+  }
+
+  @PUT
+  @Path("/number")
+  public void number(Long body) {
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import org.jdbi.v3.core.result.ResultIterable;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget7 {
+
+  @GET
+  @Path("/stream")
+  public Stream<String> stream() {
+    return Stream.empty();
+  }
+
+  @GET
+  @Path("/lines")
+  @Produces("application/x-ndjson")
+  public Iterator<String> lines() {
+    return null;
+  }
+
+  @GET
+  @Path("/rows")
+  public ResultIterable<String> rows() {
+    return null;
+  }
+
+  @GET
+  @Path("/list")
+  public List<String> list() {
+    return null;
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import tinder.core.Resource;
+import tinder.core.Timeout;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTarget8 {
+
+  @GET
+  @Path("/stage")
+  public CompletionStage<String> stage() {
+    return CompletableFuture.completedFuture("ok");
+  }
+
+  @GET
+  @Path("/future")
+  @Timeout(value = 2, unit = TimeUnit.SECONDS)
+  public CompletableFuture<String> future() {
+    return CompletableFuture.completedFuture("ok");
+  }
+
+  @GET
+  @Path("/negotiated")
+  @Produces({"application/json", "application/cbor"})
+  public CompletionStage<String> negotiated() {
+    return CompletableFuture.completedFuture("ok");
+  }
+
+}
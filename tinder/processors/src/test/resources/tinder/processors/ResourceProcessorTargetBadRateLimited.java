@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Raffaele Ragni.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tinder.processors;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import tinder.core.RateLimited;
+import tinder.core.Resource;
+
+/**
+ *
+ * @author Raffaele Ragni
+ */
+@Resource
+@Path("/")
+public class ResourceProcessorTargetBadRateLimited {
+
+  @GET
+  @Path("/nokey")
+  @RateLimited(value = 10, key = RateLimited.Key.HEADER)
+  public String nokey() {
+    return "";
+  }
+
+  @GET
+  @Path("/zero")
+  @RateLimited(0)
+  public String zero() {
+    return "";
+  }
+
+}
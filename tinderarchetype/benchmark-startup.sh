@@ -0,0 +1,63 @@
+#!/bin/bash
+#
+# Measures startup time (until the first successful /healthcheck) and resident memory of the app.
+#
+# Build first with: mvn clean package -Pcds  (and -Pnative for the native executable)
+# Usage: ./benchmark-startup.sh [runs]
+#
+# Each variant is started [runs] times (default 5), the time is taken from the launch of the process until
+# /healthcheck answers 200, then the RSS of the process is read and the process is killed.
+
+RUNS=${1:-5}
+URL=http://localhost:8080/healthcheck
+JAR=target/original-app.jar
+JSA=target/app.jsa
+NATIVE=target/app
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+# $1: name of the variant, rest: the command to launch
+measure() {
+  local name=$1
+  shift
+  local total_ms=0
+  local total_rss=0
+  for i in $(seq 1 "$RUNS"); do
+    local start
+    start=$(now_ms)
+    "$@" > /dev/null 2>&1 &
+    local pid=$!
+    until curl -sf -o /dev/null "$URL"; do
+      if ! kill -0 $pid 2> /dev/null; then
+        echo "$name: process died during startup" >&2
+        return 1
+      fi
+      sleep 0.01
+    done
+    local elapsed=$(($(now_ms) - start))
+    local rss
+    rss=$(awk '/VmRSS/ { print $2 }' /proc/$pid/status)
+    kill $pid
+    wait $pid 2> /dev/null
+    total_ms=$((total_ms + elapsed))
+    total_rss=$((total_rss + rss))
+  done
+  printf "%-12s %10d ms %10d KB\n" "$name" $((total_ms / RUNS)) $((total_rss / RUNS))
+}
+
+if [ ! -f "$JAR" ]; then
+  echo "$JAR not found, build it first with: mvn clean package -Pcds" >&2
+  exit 1
+fi
+
+printf "%-12s %13s %13s\n" "variant" "startup" "rss"
+measure "jar" java -Xshare:off -jar "$JAR"
+measure "jar+cds" java -Xshare:auto -jar "$JAR"
+if [ -f "$JSA" ]; then
+  measure "jar+appcds" java -XX:SharedArchiveFile="$JSA" -jar "$JAR"
+fi
+if [ -x "$NATIVE" ]; then
+  measure "native" "$NATIVE"
+fi
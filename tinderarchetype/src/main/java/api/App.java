@@ -5,50 +5,86 @@ import api.resources.Example;
 import api.services.ConfigReloader;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import io.javalin.Javalin;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import javax.inject.Inject;
 import javax.inject.Named;
 import liquibase.exception.LiquibaseException;
 import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import tinder.core.auth.AuthenticationFilter;
 import tinder.core.auth.AuthenticationResources;
+import tinder.core.modules.metrics.StartupTimeline;
 
 public class App {
 
+  private static final Logger LOG = LoggerFactory.getLogger(App.class);
+
   @Inject Jdbi jdbi;
   @Inject Example example;
   @Inject ConfigReloader configReloader;
   @Inject @Named("jwt_secret") String secret;
   @Inject HealthCheckRegistry healthCheckRegistry;
   @Inject Javalin javalin;
+  @Inject StartupTimeline startupTimeline;
 
   @Inject
   public App() {
   }
 
   public static void main(String[] args) {
+    // Training run for the class data sharing archive, see the cds profile in the pom.
+    if (Boolean.getBoolean("tinder.training")) {
+      training();
+      return;
+    }
     DaggerAppComponent.create().app();
   }
 
-  @Inject public void postConstruct() {
+  /**
+   * Goes through the startup and one request, then quits.
+   * Exits with 1 when any of it fails, so that the build does not archive a broken run.
+   */
+  static void training() {
     try {
+      DaggerAppComponent.create().app();
+      HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:8080/healthcheck").openConnection();
+      int status = connection.getResponseCode();
+      connection.disconnect();
+      if (status != HttpURLConnection.HTTP_OK) {
+        LOG.error("Training run failed, the healthcheck answered {}", status);
+        System.exit(1);
+      }
+    } catch (RuntimeException | IOException ex) {
+      LOG.error("Training run failed", ex);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
 
-      // Add the extra parts after all endpoints are installed
+  @Inject public void postConstruct() {
 
-      healthCheckRegistry.register("jdbi", new APIHealthCheck(jdbi));
+    // Add the extra parts after all endpoints are installed
 
-      AuthenticationFilter filter = new AuthenticationFilter(javalin, jdbi);
-      filter.addJWTBasedFilter("/auth/*", secret);
+    healthCheckRegistry.register("jdbi", new APIHealthCheck(jdbi));
 
-      javalin.start();
+    AuthenticationFilter filter = new AuthenticationFilter(javalin, jdbi);
+    filter.addJWTBasedFilter("/auth/*", secret);
 
-      AuthenticationResources ar = new AuthenticationResources(javalin, jdbi);
+    javalin.start();
 
-      ar.upgradeByLiquibase();
-      ar.addRegisterResource();
-      ar.addJWTLoginResource(secret);
+    AuthenticationResources ar = new AuthenticationResources(javalin, jdbi);
 
-    } catch (LiquibaseException ex) {
-      throw new RuntimeException(ex);
-    }
+    startupTimeline.phase("liquibase", () -> {
+      try {
+        ar.upgradeByLiquibase();
+      } catch (LiquibaseException ex) {
+        throw new RuntimeException(ex);
+      }
+    });
+    ar.addRegisterResource();
+    ar.addJWTLoginResource(secret);
   }
 }
@@ -11,6 +11,7 @@ import org.jdbi.v3.core.Jdbi;
 import tinder.core.modules.ImmutableTinderConfiguration;
 import tinder.core.modules.TinderConfiguration;
 import tinder.core.modules.TinderModule;
+import tinder.core.modules.metrics.StartupTimeline;
 import tinder.core.modules.metrics.StatsDHelper;
 
 @Module
@@ -23,6 +24,8 @@ public class AppModule extends TinderModule {
         .httpSSLOnly(false)
         .httpSSLKeystorePath(AppModule.class.getResource("/keystore.jks").toString())
         .httpSSLKeystorePassword("changeit")
+        // Lazy and parallel initialization of the subsystems, see startupTimeline() for the timings.
+        .useFastStartup(true)
         .build());
   }
 
@@ -53,7 +56,13 @@ public class AppModule extends TinderModule {
   @Provides
   @Singleton
   public StatsDHelper getStatsDHelper() {
-    return new StatsDHelper(statsDClient());
+    return new StatsDHelper(this::statsDClient);
+  }
+
+  @Provides
+  @Singleton
+  public StartupTimeline getStartupTimeline() {
+    return startupTimeline();
   }
 
   @Provides
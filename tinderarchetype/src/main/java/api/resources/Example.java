@@ -15,9 +15,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import tinder.core.Cached;
 import tinder.core.Resource;
 import tinder.core.ResourceEvents;
 import tinder.core.modules.metrics.StatsDHelper;
+import tinder.core.routing.Router;
 
 @Resource
 @Path("/")
@@ -28,7 +30,7 @@ public class Example implements ResourceEvents {
 
   @Inject
   public Example(Javalin javalin) {
-    ResourceExample.bind(javalin, this);
+    ResourceExample.route(Router.of(javalin), this);
   }
 
   @POST
@@ -56,6 +58,7 @@ public class Example implements ResourceEvents {
   @GET
   @Path("/dbtest")
   @Produces("application/json")
+  @Cached(ttl = 5)
   @ApiOperation(value = "Returns a simple select 1",
     notes = "Just a select",
     response = String.class)
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tinder.patterns.polling.Poller;
 import tinder.patterns.polling.ValueChangedProducer;
+import tinder.patterns.polling.WakeupSignal;
 
 public class ConfigReloader {
 
@@ -23,7 +24,9 @@ public class ConfigReloader {
       .poller(
         ValueChangedProducer.map(this::checkFile),
         this::reloadConfig)
-      .min(1).max(60);
+      .min(1).max(60)
+      // The file watch makes a change seen right away, the waits are for when it is missed
+      .wakeOn(WakeupSignal.fileChanges(Paths.get(CONFIG_PATH)));
 
     LOG.debug("Starting config reloader thread.");
     Thread thread = new Thread(poller);